@@ -0,0 +1,81 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exceptions;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Represents a compilation exception, thrown when a Java Class cannot be compiled.
+ *
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class CompilationException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The diagnostics reported by the compiler.
+     *
+     * @since 1.0
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> Diagnostics;
+
+    /**
+     * Initializes a new instance of the CompilationException class.
+     *
+     * @param message The exception message.
+     * @param diagnostics The diagnostics reported by the compiler.
+     *
+     * @since 1.0
+     */
+    public CompilationException(String message, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        super(message);
+        Diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * Returns the diagnostics which are errors, one per line, in the form "Line N: message".
+     *
+     * @return The errors.
+     *
+     * @since 1.0
+     */
+    public String GetErrors() {
+        StringBuilder errors = new StringBuilder();
+        for(Diagnostic<? extends JavaFileObject> diagnostic : Diagnostics) {
+            if(diagnostic.getKind() != Diagnostic.Kind.ERROR)
+                continue;
+
+            if(errors.length() > 0)
+                errors.append("\n");
+            errors.append("Line ").append(diagnostic.getLineNumber()).append(": ").append(diagnostic.getMessage(null));
+        }
+        return errors.toString();
+    }
+}
@@ -23,6 +23,8 @@
 package Exom;
 
 import Exom.Exceptions.InvalidFlagException;
+import Exom.Exomyte.EXMY;
+import Exom.Exomyte.Preloader;
 import Exom.Modules.*;
 import Exom.Objects.Command.CommandArgs;
 import Exom.Utils.*;
@@ -79,6 +81,14 @@ public class Exom {
      */
     public static long Chronometer;
 
+    /**
+     * The preloader of the EXCMs in the working directory, started by the preload and warm-up flags. Null if the EXCMs
+     * are not preloaded.
+     *
+     * @since 1.0
+     */
+    public static Preloader Preloading;
+
     /**
      * The main method.
      *
@@ -153,6 +163,7 @@ public class Exom {
                 return;
             }
 
+            Preload();
             Commands.Initialize();
             if(!Commands.Handle(cmdArgs[0], new CommandArgs(Arrays.copyOfRange(cmdArgs, 1, cmdArgs.length), System.in, System.out)))
                 Terminate(1);
@@ -185,6 +196,7 @@ public class Exom {
             Info("Initializing script engines...");
             ScriptEngines.Initialize();
             Info("Exom initialized successfully.");
+            Preload();
 
             if(!Flag.NoChronometer)
                 Info("\n", "Initialization took " + StopChronometer(), "");
@@ -240,6 +252,17 @@ public class Exom {
         }
     }
 
+    /**
+     * Starts preloading the EXCMs in the working directory on background threads, if the preload or warm-up flag is
+     * set.
+     *
+     * @since 1.0
+     */
+    public static void Preload() {
+        if((Flag.Preload || Flag.WarmUp) && Preloading == null)
+            Preloading = Preloader.Shared(EXMY.NamespaceOf(""), "handler.exch", Flag.WarmUp);
+    }
+
     /**
      * Terminates the application with a status code.
      *
@@ -0,0 +1,1052 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+
+import Exom.Modules.ScriptEngines;
+
+/**
+ * Represents a compiled EXMY Script condition.
+ * 
+ * A condition is a template whose rendered text is a JavaScript expression. Comparisons, boolean logic, arithmetic
+ * and string equality are evaluated natively, with the variables of the template bound as operands. Conditions that
+ * cannot be evaluated natively are compiled to a JavaScript script once, and evaluated with the variables passed as
+ * bindings. When a variable value would change the meaning of the expression (for example, a value which is not a
+ * literal), the rendered text is evaluated as JavaScript, as before.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Condition {
+
+	/**
+	 * The maximum number of conditions kept in the cache.
+	 *
+	 * @since 1.0
+	 */
+	public static int CacheCapacity = 1024;
+	/**
+	 * The compiled conditions, by line, from the least recently used.
+	 */
+	private static final Map<String, Condition> Cache = Collections.synchronizedMap(new LinkedHashMap<String, Condition>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Condition> eldest) {
+			return size() > CacheCapacity;
+		}
+	});
+
+	/**
+	 * The character which marks a variable in the text of the expression.
+	 */
+	private static final char PLACEHOLDER = '\uFFFF';
+	/**
+	 * The prefix of the JavaScript bindings of the variables.
+	 */
+	private static final String BINDING = "__exmy";
+	/**
+	 * A variable value which is a JavaScript number literal.
+	 */
+	private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+	/**
+	 * A string which is a JavaScript decimal number.
+	 */
+	private static final Pattern DECIMAL = Pattern.compile("[+-]?(([0-9]+\\.?[0-9]*|\\.[0-9]+)([eE][+-]?[0-9]+)?|Infinity)");
+
+	/**
+	 * The template of the condition.
+	 */
+	private final Template template;
+	/**
+	 * The template segments of the variables, by variable index.
+	 */
+	private final int[] segments;
+	/**
+	 * The text of the expression, with a PLACEHOLDER for each variable.
+	 */
+	private final String text;
+	/**
+	 * Whether or not each variable is inside a string literal. Null if the template has a syntax error.
+	 */
+	private boolean[] quoted;
+	/**
+	 * The quote of the string literal of each variable which is inside a string literal.
+	 */
+	private char[] quotes;
+	/**
+	 * Whether or not each variable is directly after a '+' or '-' character.
+	 */
+	private boolean[] signed;
+	/**
+	 * The natively compiled expression. Null if the expression is not supported.
+	 */
+	private final Node root;
+	/**
+	 * The JavaScript source of the expression, with a binding for each variable. Null if the variables cannot be bound.
+	 */
+	private final String source;
+	/**
+	 * The compiled JavaScript script.
+	 */
+	private CompiledScript script;
+	/**
+	 * The bindings of the compiled JavaScript script.
+	 */
+	private Bindings bindings;
+	/**
+	 * Whether or not the JavaScript source was compiled.
+	 */
+	private boolean compiled;
+
+	/**
+	 * The position of the parser in the text.
+	 */
+	private int position;
+
+	/**
+	 * Initializes a new instance of the Condition class, and compiles the template.
+	 * 
+	 * @param template The template of the condition.
+	 */
+	private Condition(Template template) {
+		this.template = template;
+
+		List<Integer> vars = new ArrayList<Integer>();
+		StringBuilder skeleton = new StringBuilder();
+		boolean valid = true;
+
+		for(int u = 0; u < template.Types.length; u++) {
+			switch(template.Types[u]) {
+				case Template.LITERAL:
+					if(template.Texts[u].indexOf(PLACEHOLDER) >= 0)
+						valid = false;
+					skeleton.append(template.Texts[u]);
+					break;
+				case Template.RAM:
+				case Template.FILE:
+					vars.add(u);
+					skeleton.append(PLACEHOLDER);
+					break;
+				default:
+					valid = false;
+			}
+		}
+
+		segments = new int[vars.size()];
+		for(int u = 0; u < segments.length; u++)
+			segments[u] = vars.get(u);
+		text = skeleton.toString();
+
+		if(valid)
+			source = Scan();
+		else source = null;
+
+		Node node = null;
+		if(quoted != null) {
+			try {
+				position = 0;
+				node = ParseOr();
+				SkipWhitespace();
+				if(position < text.length())
+					throw new Unsupported();
+			}
+			catch(Unsupported ex) {
+				node = null;
+			}
+		}
+		root = node;
+	}
+
+	/**
+	 * Returns the compiled condition of a line. Conditions are cached by line.
+	 * 
+	 * @param line The line.
+	 * 
+	 * @return The compiled condition.
+	 *
+	 * @since 1.0
+	 */
+	public static Condition Compile(String line) {
+		return Compile(line, null);
+	}
+
+	/**
+	 * Returns the compiled condition of a line, whose template was already compiled. Conditions are cached by line.
+	 * 
+	 * @param line The line.
+	 * @param template The compiled template of the line. If null, the line is compiled.
+	 * 
+	 * @return The compiled condition.
+	 *
+	 * @since 1.0
+	 */
+	public static Condition Compile(String line, Template template) {
+		Condition condition = Cache.get(line);
+		if(condition == null) {
+			condition = new Condition(template != null ? template : Template.Compile(line));
+			Cache.put(line, condition);
+		}
+		return condition;
+	}
+
+	/**
+	 * Returns the template of the condition.
+	 * 
+	 * @return The template.
+	 *
+	 * @since 1.0
+	 */
+	public Template GetTemplate() {
+		return template;
+	}
+
+	/**
+	 * Evaluates the condition.
+	 * 
+	 * @param ram The map of RAM Variables.
+	 * @param file The map of File Variables.
+	 * 
+	 * @return The value of the condition.
+	 * 
+	 * @throws ScriptException If the JavaScript evaluation fails.
+	 * @throws NullPointerException If the condition has a syntax error, or a variable does not exist.
+	 * @throws ClassCastException If the condition is not a boolean.
+	 *
+	 * @since 1.0
+	 */
+	public boolean Evaluate(Map<String, String> ram, Map<String, String> file) throws ScriptException {
+		if(quoted == null)
+			return Eval(ram, file);
+
+		String[] values = new String[segments.length];
+		for(int u = 0; u < segments.length; u++) {
+			int segment = segments[u];
+			values[u] = SlotMap.Get(template.Types[segment] == Template.RAM ? ram : file, template.Slots[segment]);
+			if(values[u] == null)
+				throw new NullPointerException("Syntax error: \"" + template.Texts[segment] + "\" is not a variable");
+		}
+
+		if(root != null) {
+			Object[] operands = new Object[values.length];
+			boolean supported = true;
+			for(int u = 0; u < values.length && supported; u++) {
+				operands[u] = quoted[u] ? Quoted(u, values[u]) : Operand(u, values[u]);
+				supported = operands[u] != null;
+			}
+
+			Object result = supported ? root.Evaluate(operands) : null;
+			if(result instanceof Boolean)
+				return (Boolean) result;
+		}
+		else if(source != null) {
+			Object result = EvalCompiled(values);
+			if(result instanceof Boolean)
+				return (Boolean) result;
+		}
+
+		return Eval(ram, file);
+	}
+
+	/**
+	 * Evaluates the rendered condition as JavaScript.
+	 * 
+	 * @param ram The map of RAM Variables.
+	 * @param file The map of File Variables.
+	 * 
+	 * @return The value of the condition.
+	 * 
+	 * @throws ScriptException 
+	 */
+	private boolean Eval(Map<String, String> ram, Map<String, String> file) throws ScriptException {
+		String exp = template.Render(ram, file);
+		ScriptEngines.Initialize();
+		synchronized(ScriptEngines.JavaScript) {
+			return (boolean) ScriptEngines.JavaScript.eval(exp);
+		}
+	}
+
+	/**
+	 * Evaluates the compiled JavaScript script, with the variables as bindings. The JavaScript engine is not thread
+	 * safe, so it is locked while it runs.
+	 * 
+	 * @param values The values of the variables.
+	 * 
+	 * @return The value of the condition, or null if the variables cannot be bound.
+	 * 
+	 * @throws ScriptException 
+	 */
+	private Object EvalCompiled(String[] values) throws ScriptException {
+		ScriptEngines.Initialize();
+		synchronized(ScriptEngines.JavaScript) {
+			if(!compiled) {
+				compiled = true;
+				if(ScriptEngines.JavaScript instanceof Compilable) {
+					try {
+						script = ((Compilable) ScriptEngines.JavaScript).compile(source);
+						bindings = ScriptEngines.JavaScript.createBindings();
+					}
+					catch(ScriptException ex) {
+						script = null;
+					}
+				}
+			}
+			if(script == null)
+				return null;
+
+			for(int u = 0; u < values.length; u++) {
+				Object value = quoted[u] ? Quoted(u, values[u]) : Operand(u, values[u]);
+				if(value == null)
+					return null;
+				bindings.put(BINDING + u, value);
+			}
+
+			return script.eval(bindings);
+		}
+	}
+
+	/**
+	 * Scans the text of the expression for string literals, and builds the JavaScript source with a binding for each
+	 * variable.
+	 * 
+	 * @return The JavaScript source, or null if a variable is not a complete token.
+	 */
+	private String Scan() {
+		boolean[] isQuoted = new boolean[segments.length];
+		char[] quoteChars = new char[segments.length];
+		boolean[] isSigned = new boolean[segments.length];
+		StringBuilder js = new StringBuilder();
+
+		char quote = 0;
+		int start = 0;
+		boolean parts = false;
+		int var = 0;
+
+		for(int u = 0; u < text.length(); u++) {
+			char c = text.charAt(u);
+
+			if(quote != 0) {
+				if(c == '\\' && u + 1 < text.length() && text.charAt(u + 1) != PLACEHOLDER) {
+					js.append(c).append(text.charAt(++u));
+				}
+				else if(c == PLACEHOLDER) {
+					isQuoted[var] = true;
+					quoteChars[var] = quote;
+					js.append(quote).append(" + ").append(BINDING).append(var++).append(" + ").append(quote);
+					parts = true;
+				}
+				else if(c == quote) {
+					js.append(c);
+					if(parts) {
+						js.insert(start, '(');
+						js.append(')');
+					}
+					quote = 0;
+				}
+				else js.append(c);
+			}
+			else if(c == PLACEHOLDER) {
+				if(IsWordPart(u - 1) || IsWordPart(u + 1))
+					return null;
+				isSigned[var] = u > 0 && (text.charAt(u - 1) == '+' || text.charAt(u - 1) == '-');
+				js.append(BINDING).append(var++);
+			}
+			else {
+				if(IsReference(u))
+					return null;
+				if(c == '\"' || c == '\'') {
+					quote = c;
+					start = js.length();
+					parts = false;
+				}
+				js.append(c);
+			}
+		}
+
+		quoted = isQuoted;
+		quotes = quoteChars;
+		signed = isSigned;
+
+		return quote == 0 ? js.toString() : null;
+	}
+
+	/**
+	 * Returns whether or not a character of the text is part of an identifier, a number or a variable.
+	 * 
+	 * @param index The index of the character.
+	 * 
+	 * @return Whether or not the character is part of a word.
+	 */
+	private boolean IsWordPart(int index) {
+		if(index < 0 || index >= text.length())
+			return false;
+		char c = text.charAt(index);
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.' || c == '\\' || c == PLACEHOLDER;
+	}
+
+	/**
+	 * Returns whether or not a character of the text starts an assignment or an increment, which could use the
+	 * binding of a variable as a reference. A literal value cannot be a reference.
+	 * 
+	 * @param index The index of the character.
+	 * 
+	 * @return Whether or not the character starts an assignment or an increment.
+	 */
+	private boolean IsReference(int index) {
+		char c = text.charAt(index);
+		char next = index + 1 < text.length() ? text.charAt(index + 1) : 0;
+		if((c == '+' || c == '-') && next == c)
+			return true;
+		if(c != '=')
+			return false;
+
+		char previous = index > 0 ? text.charAt(index - 1) : 0;
+		if(previous == '<' || previous == '>')
+			return index > 1 && text.charAt(index - 2) == previous;
+		return next != '=' && previous != '=' && previous != '!';
+	}
+
+	/**
+	 * Returns the operand value of a variable which is not inside a string literal.
+	 * 
+	 * @param var The index of the variable.
+	 * @param value The value of the variable.
+	 * 
+	 * @return The operand value, or null if the value is not a boolean or number literal.
+	 */
+	private Object Operand(int var, String value) {
+		if(value.equals("true"))
+			return Boolean.TRUE;
+		if(value.equals("false"))
+			return Boolean.FALSE;
+		if(!NUMBER.matcher(value).matches() || (signed[var] && value.charAt(0) == '-'))
+			return null;
+		return Double.parseDouble(value);
+	}
+
+	/**
+	 * Returns the string value of a variable which is inside a string literal.
+	 * 
+	 * @param var The index of the variable.
+	 * @param value The value of the variable.
+	 * 
+	 * @return The string value, or null if the value contains characters which would change the string literal.
+	 */
+	private String Quoted(int var, String value) {
+		for(int u = 0; u < value.length(); u++) {
+			char c = value.charAt(u);
+			if(c == quotes[var] || c == '\\' || c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029')
+				return null;
+		}
+		return value;
+	}
+
+	/**
+	 * Parses a logical OR expression.
+	 */
+	private Node ParseOr() throws Unsupported {
+		Node left = ParseAnd();
+		while(Match("||"))
+			left = new Node(Node.OR, left, ParseAnd());
+		return left;
+	}
+
+	/**
+	 * Parses a logical AND expression.
+	 */
+	private Node ParseAnd() throws Unsupported {
+		Node left = ParseEquality();
+		while(Match("&&"))
+			left = new Node(Node.AND, left, ParseEquality());
+		return left;
+	}
+
+	/**
+	 * Parses an equality expression.
+	 */
+	private Node ParseEquality() throws Unsupported {
+		Node left = ParseRelational();
+		while(true) {
+			if(Match("==="))
+				left = new Node(Node.STRICT_EQUAL, left, ParseRelational());
+			else if(Match("!=="))
+				left = new Node(Node.STRICT_NOT_EQUAL, left, ParseRelational());
+			else if(Match("=="))
+				left = new Node(Node.EQUAL, left, ParseRelational());
+			else if(Match("!="))
+				left = new Node(Node.NOT_EQUAL, left, ParseRelational());
+			else return left;
+		}
+	}
+
+	/**
+	 * Parses a relational expression.
+	 */
+	private Node ParseRelational() throws Unsupported {
+		Node left = ParseAdditive();
+		while(true) {
+			if(Match("<="))
+				left = new Node(Node.LESS_EQUAL, left, ParseAdditive());
+			else if(Match(">="))
+				left = new Node(Node.GREATER_EQUAL, left, ParseAdditive());
+			else if(Match("<"))
+				left = new Node(Node.LESS, left, ParseAdditive());
+			else if(Match(">"))
+				left = new Node(Node.GREATER, left, ParseAdditive());
+			else return left;
+		}
+	}
+
+	/**
+	 * Parses an additive expression.
+	 */
+	private Node ParseAdditive() throws Unsupported {
+		Node left = ParseMultiplicative();
+		while(true) {
+			if(Match("+"))
+				left = new Node(Node.ADD, left, ParseMultiplicative());
+			else if(Match("-"))
+				left = new Node(Node.SUBTRACT, left, ParseMultiplicative());
+			else return left;
+		}
+	}
+
+	/**
+	 * Parses a multiplicative expression.
+	 */
+	private Node ParseMultiplicative() throws Unsupported {
+		Node left = ParseUnary();
+		while(true) {
+			if(Match("*"))
+				left = new Node(Node.MULTIPLY, left, ParseUnary());
+			else if(Match("/"))
+				left = new Node(Node.DIVIDE, left, ParseUnary());
+			else if(Match("%"))
+				left = new Node(Node.REMAINDER, left, ParseUnary());
+			else return left;
+		}
+	}
+
+	/**
+	 * Parses a unary expression.
+	 */
+	private Node ParseUnary() throws Unsupported {
+		if(Match("!"))
+			return new Node(Node.NOT, ParseUnary(), null);
+		if(Match("-"))
+			return new Node(Node.NEGATE, ParseUnary(), null);
+		if(Match("+"))
+			return new Node(Node.PLUS, ParseUnary(), null);
+		return ParsePrimary();
+	}
+
+	/**
+	 * Parses a literal, a variable, or a parenthesized expression.
+	 */
+	private Node ParsePrimary() throws Unsupported {
+		SkipWhitespace();
+		if(position >= text.length())
+			throw new Unsupported();
+
+		char c = text.charAt(position);
+
+		if(c == '(') {
+			++position;
+			Node node = ParseOr();
+			if(!Match(")"))
+				throw new Unsupported();
+			return node;
+		}
+		if(c == PLACEHOLDER) {
+			int var = 0;
+			for(int u = 0; u < position; u++) {
+				if(text.charAt(u) == PLACEHOLDER)
+					++var;
+			}
+			++position;
+
+			Node node = new Node(Node.VARIABLE, null, null);
+			node.Variable = var;
+			return node;
+		}
+		if(c == '\"' || c == '\'')
+			return ParseString(c);
+		if((c >= '0' && c <= '9') || c == '.')
+			return ParseNumber();
+		if(Character.isLetter(c) || c == '_' || c == '$') {
+			int start = position;
+			while(position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_' || text.charAt(position) == '$'))
+				++position;
+			String word = text.substring(start, position);
+
+			Node node = new Node(Node.CONSTANT, null, null);
+			if(word.equals("true"))
+				node.Value = Boolean.TRUE;
+			else if(word.equals("false"))
+				node.Value = Boolean.FALSE;
+			else throw new Unsupported();
+			return node;
+		}
+
+		throw new Unsupported();
+	}
+
+	/**
+	 * Parses a number literal.
+	 */
+	private Node ParseNumber() throws Unsupported {
+		int start = position;
+		double value;
+
+		if(text.startsWith("0x", position) || text.startsWith("0X", position)) {
+			position += 2;
+			while(position < text.length() && Character.digit(text.charAt(position), 16) >= 0)
+				++position;
+			if(position == start + 2)
+				throw new Unsupported();
+			value = new java.math.BigInteger(text.substring(start + 2, position), 16).doubleValue();
+		}
+		else {
+			while(position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.'))
+				++position;
+			if(position < text.length() && (text.charAt(position) == 'e' || text.charAt(position) == 'E')) {
+				++position;
+				if(position < text.length() && (text.charAt(position) == '+' || text.charAt(position) == '-'))
+					++position;
+				while(position < text.length() && Character.isDigit(text.charAt(position)))
+					++position;
+			}
+
+			String literal = text.substring(start, position);
+			if(literal.length() > 1 && literal.charAt(0) == '0' && Character.isDigit(literal.charAt(1)))
+				throw new Unsupported();
+			if(!DECIMAL.matcher(literal).matches())
+				throw new Unsupported();
+			value = Double.parseDouble(literal);
+		}
+
+		if(IsWordPart(position))
+			throw new Unsupported();
+
+		Node node = new Node(Node.CONSTANT, null, null);
+		node.Value = value;
+		return node;
+	}
+
+	/**
+	 * Parses a string literal, which may contain variables.
+	 */
+	private Node ParseString(char quote) throws Unsupported {
+		List<Object> parts = new ArrayList<Object>();
+		StringBuilder literal = new StringBuilder();
+		int var = 0;
+		for(int u = 0; u < position; u++) {
+			if(text.charAt(u) == PLACEHOLDER)
+				++var;
+		}
+
+		++position;
+		while(true) {
+			if(position >= text.length())
+				throw new Unsupported();
+
+			char c = text.charAt(position++);
+			if(c == quote)
+				break;
+			if(c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029')
+				throw new Unsupported();
+
+			if(c == PLACEHOLDER) {
+				if(literal.length() > 0) {
+					parts.add(literal.toString());
+					literal.setLength(0);
+				}
+				parts.add(var++);
+			}
+			else if(c == '\\') {
+				if(position >= text.length())
+					throw new Unsupported();
+				char e = text.charAt(position++);
+				switch(e) {
+					case 'n': literal.append('\n'); break;
+					case 't': literal.append('\t'); break;
+					case 'r': literal.append('\r'); break;
+					case 'b': literal.append('\b'); break;
+					case 'f': literal.append('\f'); break;
+					case 'v': literal.append('\u000B'); break;
+					case '\\': literal.append('\\'); break;
+					case '\'': literal.append('\''); break;
+					case '\"': literal.append('\"'); break;
+					default:
+						if(Character.isLetterOrDigit(e) || e == PLACEHOLDER || e == '\n' || e == '\r')
+							throw new Unsupported();
+						literal.append(e);
+				}
+			}
+			else literal.append(c);
+		}
+		if(literal.length() > 0 || parts.isEmpty())
+			parts.add(literal.toString());
+
+		Node node = new Node(Node.STRING, null, null);
+		node.Parts = parts.toArray();
+		return node;
+	}
+
+	/**
+	 * Skips whitespace, and consumes an operator if it is next.
+	 * 
+	 * @param operator The operator.
+	 * 
+	 * @return Whether or not the operator was consumed.
+	 */
+	private boolean Match(String operator) throws Unsupported {
+		SkipWhitespace();
+		if(!text.startsWith(operator, position))
+			return false;
+
+		int end = position + operator.length();
+		if(end < text.length()) {
+			char next = text.charAt(end);
+			char last = operator.charAt(operator.length() - 1);
+			if((last == '+' || last == '-') && next == last)
+				throw new Unsupported();
+			if((last == '&' && next == '&') || (last == '|' && next == '|') || (last == '/' && (next == '/' || next == '*')))
+				throw new Unsupported();
+			if((operator.equals("<") || operator.equals(">")) && (next == '<' || next == '>' || next == '='))
+				return false;
+			if(operator.equals("!") && next == '=')
+				return false;
+			if((operator.equals("&&") || operator.equals("||")) && next == '=')
+				throw new Unsupported();
+			if((operator.equals("*") || operator.equals("/") || operator.equals("%") || operator.equals("+") || operator.equals("-")) && next == '=')
+				throw new Unsupported();
+		}
+		if(operator.equals("&") || operator.equals("|"))
+			throw new Unsupported();
+
+		position = end;
+		return true;
+	}
+
+	/**
+	 * Skips whitespace.
+	 */
+	private void SkipWhitespace() {
+		while(position < text.length()) {
+			char c = text.charAt(position);
+			if(c != PLACEHOLDER && (Character.isWhitespace(c) || c == '\u00A0' || c == '\uFEFF'))
+				++position;
+			else break;
+		}
+	}
+
+	/**
+	 * Returns whether or not a value is true, as JavaScript would convert it to a boolean.
+	 */
+	private static boolean ToBoolean(Object value) {
+		if(value instanceof Boolean)
+			return (Boolean) value;
+		if(value instanceof Double) {
+			double d = (Double) value;
+			return d != 0 && !Double.isNaN(d);
+		}
+		return !((String) value).isEmpty();
+	}
+
+	/**
+	 * Converts a value to a number, as JavaScript would.
+	 */
+	private static double ToNumber(Object value) {
+		if(value instanceof Double)
+			return (Double) value;
+		if(value instanceof Boolean)
+			return (Boolean) value ? 1 : 0;
+
+		String s = ((String) value);
+		int start = 0;
+		int end = s.length();
+		while(start < end && IsJavaScriptWhitespace(s.charAt(start)))
+			++start;
+		while(end > start && IsJavaScriptWhitespace(s.charAt(end - 1)))
+			--end;
+		s = s.substring(start, end);
+
+		if(s.isEmpty())
+			return 0;
+		if(s.length() > 2 && s.charAt(0) == '0' && (s.charAt(1) == 'x' || s.charAt(1) == 'X')) {
+			for(int u = 2; u < s.length(); u++) {
+				if(Character.digit(s.charAt(u), 16) < 0)
+					return Double.NaN;
+			}
+			return new java.math.BigInteger(s.substring(2), 16).doubleValue();
+		}
+		if(!DECIMAL.matcher(s).matches())
+			return Double.NaN;
+		if(s.endsWith("Infinity"))
+			return s.charAt(0) == '-' ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		return Double.parseDouble(s);
+	}
+
+	/**
+	 * Returns whether or not a character is JavaScript whitespace or a line terminator.
+	 */
+	private static boolean IsJavaScriptWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u000B' || c == '\f' || c == '\u00A0' || c == '\uFEFF'
+				|| c == '\u2028' || c == '\u2029' || Character.getType(c) == Character.SPACE_SEPARATOR;
+	}
+
+	/**
+	 * Converts a value to a string, as JavaScript would. Returns null if the value is a number which is not a safe
+	 * integer.
+	 */
+	private static String ToString(Object value) {
+		if(value instanceof String)
+			return (String) value;
+		if(value instanceof Boolean)
+			return value.toString();
+
+		double d = (Double) value;
+		if(Double.isNaN(d))
+			return "NaN";
+		if(Double.isInfinite(d))
+			return d > 0 ? "Infinity" : "-Infinity";
+		if(d == Math.rint(d) && Math.abs(d) < 9007199254740992.0)
+			return Long.toString((long) d);
+		return null;
+	}
+
+	/**
+	 * Returns whether or not two values are loosely equal (==), as JavaScript would compare them.
+	 */
+	private static boolean LooseEquals(Object a, Object b) {
+		if(a.getClass() == b.getClass())
+			return StrictEquals(a, b);
+		if(a instanceof Boolean)
+			return LooseEquals(ToNumber(a), b);
+		if(b instanceof Boolean)
+			return LooseEquals(a, ToNumber(b));
+		return ToNumber(a) == ToNumber(b);
+	}
+
+	/**
+	 * Returns whether or not two values are strictly equal (===), as JavaScript would compare them.
+	 */
+	private static boolean StrictEquals(Object a, Object b) {
+		if(a.getClass() != b.getClass())
+			return false;
+		if(a instanceof Double)
+			return ((Double) a).doubleValue() == ((Double) b).doubleValue();
+		return a.equals(b);
+	}
+
+	/**
+	 * Returns whether or not a value is less than another, as JavaScript would compare them.
+	 */
+	private static boolean Less(Object a, Object b) {
+		if(a instanceof String && b instanceof String)
+			return ((String) a).compareTo((String) b) < 0;
+		return ToNumber(a) < ToNumber(b);
+	}
+
+	/**
+	 * Returns whether or not a value is less than or equal to another, as JavaScript would compare them.
+	 */
+	private static boolean LessEqual(Object a, Object b) {
+		if(a instanceof String && b instanceof String)
+			return ((String) a).compareTo((String) b) <= 0;
+		return ToNumber(a) <= ToNumber(b);
+	}
+
+	/**
+	 * Represents a node of a natively compiled expression.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	private static class Node {
+
+		static final int CONSTANT = 0;
+		static final int VARIABLE = 1;
+		static final int STRING = 2;
+		static final int OR = 3;
+		static final int AND = 4;
+		static final int EQUAL = 5;
+		static final int NOT_EQUAL = 6;
+		static final int STRICT_EQUAL = 7;
+		static final int STRICT_NOT_EQUAL = 8;
+		static final int LESS = 9;
+		static final int GREATER = 10;
+		static final int LESS_EQUAL = 11;
+		static final int GREATER_EQUAL = 12;
+		static final int ADD = 13;
+		static final int SUBTRACT = 14;
+		static final int MULTIPLY = 15;
+		static final int DIVIDE = 16;
+		static final int REMAINDER = 17;
+		static final int NOT = 18;
+		static final int NEGATE = 19;
+		static final int PLUS = 20;
+
+		/**
+		 * The operation of the node.
+		 */
+		final int Op;
+		/**
+		 * The operands of the node.
+		 */
+		final Node Left;
+		final Node Right;
+		/**
+		 * The value of a constant.
+		 */
+		Object Value;
+		/**
+		 * The index of a variable.
+		 */
+		int Variable;
+		/**
+		 * The parts of a string literal: strings, and the indexes of the variables inside it.
+		 */
+		Object[] Parts;
+
+		Node(int op, Node left, Node right) {
+			Op = op;
+			Left = left;
+			Right = right;
+		}
+
+		/**
+		 * Evaluates the node.
+		 * 
+		 * @param values The operand values of the variables.
+		 * 
+		 * @return The value of the node: a Boolean, a Double or a String. Null if the node cannot be evaluated
+		 * natively with these values.
+		 */
+		Object Evaluate(Object[] values) {
+			switch(Op) {
+				case CONSTANT:
+					return Value;
+				case VARIABLE:
+					return values[Variable];
+				case STRING: {
+					if(Parts.length == 1 && Parts[0] instanceof String)
+						return Parts[0];
+					StringBuilder sb = new StringBuilder();
+					for(Object part : Parts) {
+						if(part instanceof String)
+							sb.append((String) part);
+						else sb.append((String) values[(Integer) part]);
+					}
+					return sb.toString();
+				}
+			}
+
+			Object left = Left.Evaluate(values);
+			if(left == null)
+				return null;
+
+			switch(Op) {
+				case OR:
+					return ToBoolean(left) ? left : Right.Evaluate(values);
+				case AND:
+					return !ToBoolean(left) ? left : Right.Evaluate(values);
+				case NOT:
+					return !ToBoolean(left);
+				case NEGATE:
+					return -ToNumber(left);
+				case PLUS:
+					return ToNumber(left);
+			}
+
+			Object right = Right.Evaluate(values);
+			if(right == null)
+				return null;
+
+			switch(Op) {
+				case EQUAL:
+					return LooseEquals(left, right);
+				case NOT_EQUAL:
+					return !LooseEquals(left, right);
+				case STRICT_EQUAL:
+					return StrictEquals(left, right);
+				case STRICT_NOT_EQUAL:
+					return !StrictEquals(left, right);
+				case LESS:
+					return Less(left, right);
+				case GREATER:
+					return Less(right, left);
+				case LESS_EQUAL:
+					return LessEqual(left, right);
+				case GREATER_EQUAL:
+					return LessEqual(right, left);
+				case ADD:
+					if(left instanceof String || right instanceof String) {
+						String l = ToString(left);
+						String r = ToString(right);
+						return l == null || r == null ? null : l + r;
+					}
+					return ToNumber(left) + ToNumber(right);
+				case SUBTRACT:
+					return ToNumber(left) - ToNumber(right);
+				case MULTIPLY:
+					return ToNumber(left) * ToNumber(right);
+				case DIVIDE:
+					return ToNumber(left) / ToNumber(right);
+				default:
+					return ToNumber(left) % ToNumber(right);
+			}
+		}
+	}
+
+	/**
+	 * Thrown when an expression cannot be compiled natively. Values which cannot be evaluated natively are reported
+	 * with null instead, since they are found while the condition runs.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	private static class Unsupported extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -0,0 +1,411 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import Exom.Objects.NamedObject;
+
+/**
+ * Represents an Exom Command Bundle, which packs many EXCMs in one file.
+ * 
+ * The file starts with a table of contents, which holds the name, offset and length of each EXCM. The file is memory
+ * mapped when it is opened, and each EXCM is defined the first time it is used. All the EXCMs of a bundle are defined
+ * by the same class loader, so they can use each other.
+ * 
+ * An EXCB can be used as the Namespace of an EXMY Script, instead of a directory of EXCM files.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXCB {
+
+	/**
+	 * The EXCB magic bytes.
+	 *
+	 * @since 1.0
+	 */
+	public static final byte[] MAGIC = "EXCB".getBytes(StandardCharsets.US_ASCII);
+	/**
+	 * The version of the EXCB format.
+	 *
+	 * @since 1.0
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * The type of the Execute method of EXCMs.
+	 */
+	private static final MethodType EXECUTE = MethodType.methodType(String.class, String.class);
+	/**
+	 * The opened bundles, by canonical path.
+	 */
+	private static final Map<String, EXCB> Opened = new HashMap<String, EXCB>();
+
+	/**
+	 * The canonical path to the bundle.
+	 *
+	 * @since 1.0
+	 */
+	public final String Location;
+
+	/**
+	 * The contents of the file.
+	 */
+	private final ByteBuffer data;
+	/**
+	 * The offset and length of each EXCM, by name.
+	 */
+	private final Map<String, long[]> index;
+	/**
+	 * The last modification time of the file, in nanoseconds, when it was opened.
+	 */
+	private final long modified;
+	/**
+	 * The size of the file when it was opened.
+	 */
+	private final long size;
+	/**
+	 * The class loader which defines the EXCMs.
+	 */
+	private final BundleLoader loader;
+	/**
+	 * The methods of the EXCMs which were used, by name, method and descriptor.
+	 */
+	private final Map<String, MethodHandle> methods;
+
+	/**
+	 * Initializes a new instance of the EXCB class, and reads the table of contents.
+	 */
+	private EXCB(Path file, BasicFileAttributes attributes) throws IOException {
+		Location = file.toString();
+		modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		size = attributes.size();
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			data = mapped;
+		}
+
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			data.get(magic);
+			if(!Arrays.equals(magic, MAGIC))
+				throw new IOException("The file '" + Location + "' is not an EXCB");
+			if(data.get() != VERSION)
+				throw new IOException("The EXCB '" + Location + "' has an unsupported version");
+
+			int count = data.getInt();
+			index = new HashMap<String, long[]>(count * 2);
+			for(int u = 0; u < count; u++) {
+				byte[] name = new byte[data.getShort() & 0xFFFF];
+				data.get(name);
+				long offset = data.getLong();
+				int length = data.getInt();
+				if(length < 0 || offset + length > data.capacity())
+					throw new IOException("The EXCB '" + Location + "' is corrupted");
+				index.put(new String(name, StandardCharsets.UTF_8), new long[] { offset, length });
+			}
+
+			// The classes follow the table of contents.
+			int header = data.position();
+			for(long[] entry : index.values()) {
+				if(entry[0] < header)
+					throw new IOException("The EXCB '" + Location + "' is corrupted");
+			}
+		}
+		catch(RuntimeException ex) {
+			throw new IOException("The EXCB '" + Location + "' is corrupted", ex);
+		}
+
+		loader = new BundleLoader();
+		methods = new ConcurrentHashMap<String, MethodHandle>();
+	}
+
+	/**
+	 * Opens an EXCB. Bundles stay open, and are opened again when their file changes.
+	 * 
+	 * @param file The path to the EXCB.
+	 * 
+	 * @return The bundle.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static EXCB Open(String file) throws IOException {
+		Path path = Paths.get(file).toRealPath();
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		synchronized(Opened) {
+			EXCB bundle = Opened.get(path.toString());
+			if(bundle == null || bundle.modified != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) || bundle.size != attributes.size()) {
+				bundle = new EXCB(path, attributes);
+				Opened.put(bundle.Location, bundle);
+			}
+			return bundle;
+		}
+	}
+
+	/**
+	 * Writes an EXCB.
+	 * 
+	 * @param file The path to the EXCB.
+	 * @param excms The compiled EXCMs, by name. The name of each EXCM must be the name of its class.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Write(String file, List<NamedObject<byte[]>> excms) throws IOException {
+		List<NamedObject<byte[]>> sorted = new ArrayList<NamedObject<byte[]>>(excms);
+		Collections.sort(sorted, (a, b) -> a.Name.compareTo(b.Name));
+
+		int header = MAGIC.length + 1 + 4;
+		for(NamedObject<byte[]> excm : sorted)
+			header += 2 + excm.Name.getBytes(StandardCharsets.UTF_8).length + 8 + 4;
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.writeInt(sorted.size());
+
+		long offset = header;
+		for(NamedObject<byte[]> excm : sorted) {
+			byte[] name = excm.Name.getBytes(StandardCharsets.UTF_8);
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeLong(offset);
+			out.writeInt(excm.Value.length);
+			offset += excm.Value.length;
+		}
+		for(NamedObject<byte[]> excm : sorted)
+			out.write(excm.Value);
+		out.flush();
+
+		File target = new File(file).getAbsoluteFile();
+		File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+		try {
+			Files.write(temp.toPath(), buffer.toByteArray());
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(IOException ex) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes an EXCB with the EXCM files of a list of paths. Directories are searched for .excm files.
+	 * 
+	 * @param file The path to the EXCB.
+	 * @param paths The EXCM files and directories.
+	 * 
+	 * @return The number of EXCMs in the bundle.
+	 * 
+	 * @throws IOException If a path does not exist, or an EXCM cannot be read.
+	 *
+	 * @since 1.0
+	 */
+	public static int Write(String file, String... paths) throws IOException {
+		Map<String, NamedObject<byte[]>> excms = new TreeMap<String, NamedObject<byte[]>>();
+
+		for(String path : paths) {
+			File source = new File(path);
+			File[] files = source.isDirectory() ? source.listFiles((dir, name) -> name.toLowerCase().endsWith(".excm")) : new File[] { source };
+			if(files == null || !source.exists())
+				throw new IOException("The file '" + path + "' does not exist.");
+
+			for(File excm : files) {
+				String name = excm.getName();
+				int dot = name.lastIndexOf('.');
+				if(dot >= 0)
+					name = name.substring(0, dot);
+				excms.put(name, new NamedObject<byte[]>(name, Files.readAllBytes(excm.toPath())));
+			}
+		}
+
+		Write(file, new ArrayList<NamedObject<byte[]>>(excms.values()));
+		return excms.size();
+	}
+
+	/**
+	 * Returns the names of the EXCMs in the bundle.
+	 * 
+	 * @return The names, sorted.
+	 *
+	 * @since 1.0
+	 */
+	public List<String> GetNames() {
+		List<String> names = new ArrayList<String>(index.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns whether or not the bundle contains an EXCM.
+	 * 
+	 * @param name The name of the EXCM.
+	 * 
+	 * @return Whether or not the bundle contains the EXCM.
+	 *
+	 * @since 1.0
+	 */
+	public boolean Contains(String name) {
+		return index.containsKey(name);
+	}
+
+	/**
+	 * Loads an EXCM from the bundle. The EXCM is defined the first time it is loaded.
+	 * 
+	 * @param name The name of the EXCM.
+	 * 
+	 * @return The class of the EXCM.
+	 * 
+	 * @throws ClassNotFoundException If the bundle does not contain the EXCM.
+	 *
+	 * @since 1.0
+	 */
+	public Class<?> Load(String name) throws ClassNotFoundException {
+		if(!index.containsKey(name))
+			throw new ClassNotFoundException(name);
+		return loader.loadClass(name);
+	}
+
+	/**
+	 * Runs an EXCM from the bundle.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param args The arguments to execute with.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws ClassNotFoundException If the bundle does not contain the EXCM.
+	 * @throws NoSuchMethodException 
+	 * @throws InvocationTargetException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public String Run(String name, String args) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+		MethodHandle execute = GetExecute(name);
+		try {
+			return (String) execute.invokeExact(args);
+		}
+		catch(Throwable ex) {
+			throw new InvocationTargetException(ex);
+		}
+	}
+
+	/**
+	 * Returns a handle to the Execute method of an EXCM from the bundle. The handle is looked up once, and cached.
+	 * 
+	 * @param name The name of the EXCM.
+	 * 
+	 * @return The method handle.
+	 * 
+	 * @throws ClassNotFoundException If the bundle does not contain the EXCM.
+	 * @throws NoSuchMethodException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public MethodHandle GetExecute(String name) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+		return GetMethod(name, "Execute", EXECUTE);
+	}
+
+	/**
+	 * Returns a handle to a public static method of an EXCM from the bundle. The handle is looked up once, and cached.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param method The name of the method.
+	 * @param type The type of the method.
+	 * 
+	 * @return The method handle.
+	 * 
+	 * @throws ClassNotFoundException If the bundle does not contain the EXCM.
+	 * @throws NoSuchMethodException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public MethodHandle GetMethod(String name, String method, MethodType type) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+		String key = name + "." + method + type.toMethodDescriptorString();
+		MethodHandle handle = methods.get(key);
+		if(handle == null) {
+			handle = MethodHandles.publicLookup().findStatic(Load(name), method, type);
+			methods.put(key, handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Represents the class loader of a bundle, which defines the EXCMs from the mapped file.
+	 */
+	private class BundleLoader extends ClassLoader {
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			long[] entry = index.get(name);
+			if(entry == null)
+				throw new ClassNotFoundException(name);
+
+			ByteBuffer bytes = data.duplicate();
+			bytes.position((int) entry[0]);
+			bytes.limit((int) (entry[0] + entry[1]));
+			return defineClass(name, bytes, null);
+		}
+	}
+}
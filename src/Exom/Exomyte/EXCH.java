@@ -23,8 +23,15 @@
 package Exom.Exomyte;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Contains methods used for Exom Command Handler interaction.
@@ -35,11 +42,24 @@ import java.util.Map;
 */
 public class EXCH {
 
-	//public static Map<String, String> x;
+	/**
+	 * The version of the EXCH files generated by Generate. EXCH files generated before versions were added have no
+	 * Version field, and are treated as version 1.
+	 *
+	 * @since 1.0
+	 */
+	public static final int Version = 2;
+	/**
+	 * The type of the Handle method of EXCHs.
+	 */
+	private static final MethodType HANDLE = MethodType.methodType(String[].class, String.class);
 	
 	/**
 	 * Generates an EXCH file.
 	 * 
+	 * The generated handler keeps its aliases in static final tables, and finds the alias of a command by switching on
+	 * the length of its first word, so handling a command only allocates the result.
+	 * 
 	 * @param name The name of the EXCH.
 	 * @param list The list of aliases.
 	 * @param path The path where to generate the EXCH file.
@@ -50,49 +70,147 @@ public class EXCH {
 	 * @since 1.0
 	*/
 	public static void Generate(String name, Map<String, String> list, String path) throws IllegalArgumentException, IOException {
-		String source = "import java.util.Map;\n" + 
-				"import java.util.HashMap;\n" +
-				"public class " + name + "\n" + 
+		List<String> keys = new ArrayList<String>(new TreeMap<String, String>(list).keySet());
+		StringBuilder source = new StringBuilder();
+
+		source.append("import java.util.Map;\n" + 
+				"import java.util.HashMap;\n" + 
+				"public class ").append(name).append("\n" + 
 				"{\n" + 
+				"	public static final int Version = ").append(Version).append(";\n" + 
+				"\n" + 
+				"	private static final String[] Keys = {");
+		for(int u = 0; u < keys.size(); u++)
+			source.append(u > 0 ? ", " : " ").append(Literal(keys.get(u)));
+		source.append(" };\n" + 
+				"	private static final String[] Values = {");
+		for(int u = 0; u < keys.size(); u++)
+			source.append(u > 0 ? ", " : " ").append(Literal(list.get(keys.get(u))));
+		source.append(" };\n" + 
+				"\n" + 
 				"	public static Map<String, String> GetMap()\n" + 
 				"	{\n" + 
-				"		Map<String, String> x = new HashMap<String, String>();";
-		for(Map.Entry<String, String> entry : list.entrySet()) {
-			source += "\n		x.put(\"" + entry.getKey() + "\", \"" + entry.getValue() + "\");";
-		}
-		
-		source += "\n		return x;\n" + 
+				"		Map<String, String> x = new HashMap<String, String>();\n" + 
+				"		for (int u = 0; u < Keys.length; u++)\n" + 
+				"			x.put(Keys[u], Values[u]);\n" + 
+				"		return x;\n" + 
 				"	}\n" + 
-				"	\n" + 
+				"\n" + 
 				"	public static String[] Handle(String command)\n" + 
 				"	{\n" + 
-				"		String[] split = command.split(\" \");\n" + 
+				"		int end = command.indexOf(' ');\n" + 
+				"		if (end < 0)\n" + 
+				"			end = command.length();\n" + 
 				"\n" + 
-				"		String args = \"\";\n" + 
+				"		int index = Find(command, end);\n" + 
+				"		if (index < 0)\n" + 
+				"			return null;\n" + 
 				"\n" + 
-				"		for (int u = 1; u < split.length; u++)\n" + 
-				"		{\n" + 
-				"			if (u > 1)\n" + 
-				"				args += \" \" + split[u];\n" + 
-				"		else args += split[u];\n" + 
-				"		}\n" + 
-				"		\n" + 
-				"		Map<String, String> dictionary = GetMap();\n" + 
-				"		\n" + 
-				"		for(Map.Entry<String, String> entry : dictionary.entrySet()) \n" + 
-				"		{\n" + 
-				"			String key = entry.getKey();\n" + 
-				"			String value = entry.getValue();\n" + 
+				"		int last = command.length();\n" + 
+				"		while (last > end && command.charAt(last - 1) == ' ')\n" + 
+				"			--last;\n" + 
 				"\n" + 
-				"			if(split[0].toLowerCase().equals(key))\n" + 
-				"				return new String[] { value, args };\n" + 
-				"		}\n" + 
-				"		\n" + 
-				"		return null;\n" + 
+				"		return new String[] { Values[index], last > end ? command.substring(end + 1, last) : \"\" };\n" + 
 				"	}\n" + 
-				"}";
+				"\n" + 
+				"	private static int Find(String command, int length)\n" + 
+				"	{\n" + 
+				"		switch (length)\n" + 
+				"		{");
+
+		// Commands are lowercased before they are compared, so aliases with uppercase letters never match.
+		Map<Integer, List<Integer>> lengths = new TreeMap<Integer, List<Integer>>();
+		for(int u = 0; u < keys.size(); u++) {
+			String key = keys.get(u);
+			if(!key.equals(key.toLowerCase()) || key.indexOf(' ') >= 0)
+				continue;
+			
+			List<Integer> indexes = lengths.get(key.length());
+			if(indexes == null) {
+				indexes = new ArrayList<Integer>();
+				lengths.put(key.length(), indexes);
+			}
+			indexes.add(u);
+		}
+		for(Map.Entry<Integer, List<Integer>> entry : lengths.entrySet()) {
+			source.append("\n			case ").append(entry.getKey()).append(":");
+			for(int index : entry.getValue()) {
+				source.append("\n				if (command.regionMatches(true, 0, Keys[").append(index).append("], 0, length))\n" + 
+						"					return ").append(index).append(";");
+			}
+			source.append("\n				break;");
+		}
+
+		source.append("\n		}\n" + 
+				"		return -1;\n" + 
+				"	}\n" + 
+				"}");
 		
-		Exom.Utils.ClassUtils.Compile(source, path, name, "exch");
+		Exom.Utils.ClassUtils.Compile(source.toString(), path, name, "exch");
+	}
+	
+	/**
+	 * Regenerates an EXCH file with the current version of Generate. The aliases are read from the file itself.
+	 * 
+	 * @param exch The EXCH file.
+	 * 
+	 * @return True if the file was regenerated, false if it already has the current version.
+	 * 
+	 * @throws IOException 
+	 * @throws ClassNotFoundException 
+	 * @throws NoSuchMethodException 
+	 * @throws InvocationTargetException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	@SuppressWarnings("unchecked")
+	public static boolean Regenerate(String exch) throws IOException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+		Class<?> handler = Exom.Utils.ClassUtils.Load(exch);
+		try {
+			if(handler.getField("Version").getInt(null) >= Version)
+				return false;
+		}
+		catch(NoSuchFieldException ex) { }
+
+		Map<String, String> list = (Map<String, String>) handler.getMethod("GetMap").invoke(null);
+		Path folder = Paths.get(exch).toAbsolutePath().getParent();
+
+		Generate(handler.getName(), list, folder.toString());
+		return true;
+	}
+
+	/**
+	 * Returns a Java string literal. Control characters use escape sequences instead of unicode escapes, since javac
+	 * translates unicode escapes before it reads the literal, and a line terminator would end it.
+	 * 
+	 * @param value The value of the literal.
+	 * 
+	 * @return The literal.
+	 */
+	private static String Literal(String value) {
+		StringBuilder literal = new StringBuilder("\"");
+		for(int u = 0; u < value.length(); u++) {
+			char c = value.charAt(u);
+			if(c == '"' || c == '\\')
+				literal.append('\\').append(c);
+			else if(c == '\n')
+				literal.append("\\n");
+			else if(c == '\r')
+				literal.append("\\r");
+			else if(c == '\t')
+				literal.append("\\t");
+			else if(c == '\b')
+				literal.append("\\b");
+			else if(c == '\f')
+				literal.append("\\f");
+			else if(c < ' ' || c == 0x7F)
+				literal.append(String.format("\\%03o", (int) c));
+			else if(c > 0x7F)
+				literal.append(String.format("\\u%04x", (int) c));
+			else literal.append(c);
+		}
+		return literal.append('"').toString();
 	}
 	
 	/**
@@ -111,6 +229,12 @@ public class EXCH {
 	 * @since 1.0
 	*/
 	public static String[] GetEXCM(String exch, String command) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		return (String[]) Exom.Utils.ClassUtils.Run(exch, "Handle", new String[] { command }, new Class<?>[] { String.class });
+		MethodHandle handle = Exom.Utils.ClassUtils.GetMethod(exch, "Handle", HANDLE);
+		try {
+			return (String[]) handle.invokeExact(command);
+		}
+		catch(Throwable ex) {
+			throw new InvocationTargetException(ex);
+		}
 	}
 }
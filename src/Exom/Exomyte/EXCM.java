@@ -22,8 +22,14 @@
 
 package Exom.Exomyte;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Contains methods used for Exom Command Module interaction.
@@ -34,6 +40,15 @@ import java.lang.reflect.InvocationTargetException;
  */
 public class EXCM {
 
+	/**
+	 * The type of the Execute method of EXCMs.
+	 */
+	private static final MethodType EXECUTE = MethodType.methodType(String.class, String.class);
+	/**
+	 * The type of the ExecuteStream method of streaming EXCMs.
+	 */
+	private static final MethodType EXECUTE_STREAM = MethodType.methodType(void.class, String.class, InputStream.class, OutputStream.class);
+
 	/**
 	 * Generates an EXCM file.
 	 * 
@@ -51,7 +66,25 @@ public class EXCM {
 	 * @since 1.0
 	 */
 	public static void Generate(String name, String description, String parameters, String usage, String imports, String code, String path) throws IllegalArgumentException, IOException {
-		String source = imports + "\npublic class " + name + "\n" + 
+		Exom.Utils.ClassUtils.Compile(GetSource(name, description, parameters, usage, imports, code), path, name, "excm");
+	}
+	
+	/**
+	 * Returns the Java source of an EXCM, as compiled by Generate.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param description The description of the EXCM.
+	 * @param parameters The parameter information.
+	 * @param usage The usage information.
+	 * @param imports The code containing all necessary imports.
+	 * @param code The code of the EXCM.
+	 * 
+	 * @return The Java source.
+	 *
+	 * @since 1.0
+	 */
+	public static String GetSource(String name, String description, String parameters, String usage, String imports, String code) {
+		return imports + "\npublic class " + name + "\n" + 
 				"{\n" + 
 				"	public static String GetDescription()\n" + 
 				"	{\n" + 
@@ -79,9 +112,189 @@ public class EXCM {
 				"			return \"Exception:\" + ex;\n" +
 				"		}\n" +
 				"	}\n" + 
-				"}";	
-			
-		Exom.Utils.ClassUtils.Compile(source, path, name, "excm");
+				"}";
+	}
+	
+	/**
+	 * Generates a streaming EXCM file. The code reads its input from the InputStream 'in', and writes its output to
+	 * the OutputStream 'out', so the EXCM can run in a pipeline without holding the whole payload in memory.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param description The description of the EXCM.
+	 * @param parameters The parameter information.
+	 * @param usage The usage information.
+	 * @param imports The code containing all necessary imports.
+	 * @param code The code of the EXCM.
+	 * @param path The path where to generate the EXCM.
+	 * 
+	 * @throws IOException 
+	 * @throws IllegalArgumentException 
+	 *
+	 * @since 1.0
+	 */
+	public static void GenerateStream(String name, String description, String parameters, String usage, String imports, String code, String path) throws IllegalArgumentException, IOException {
+		Exom.Utils.ClassUtils.Compile(GetStreamSource(name, description, parameters, usage, imports, code), path, name, "excm");
+	}
+	
+	/**
+	 * Returns the Java source of a streaming EXCM, as compiled by GenerateStream. The EXCM also has an Execute
+	 * method, which runs the code with an empty input and returns the output, so it can run as a command.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param description The description of the EXCM.
+	 * @param parameters The parameter information.
+	 * @param usage The usage information.
+	 * @param imports The code containing all necessary imports.
+	 * @param code The code of the EXCM.
+	 * 
+	 * @return The Java source.
+	 *
+	 * @since 1.0
+	 */
+	public static String GetStreamSource(String name, String description, String parameters, String usage, String imports, String code) {
+		return imports + "\npublic class " + name + "\n" + 
+				"{\n" + 
+				"	public static String GetDescription()\n" + 
+				"	{\n" + 
+				"		return \"" + description + "\";\n" + 
+				"	}\n" + 
+				"	\n" + 
+				"	public static String GetParameters()\n" + 
+				"	{\n" + 
+				"		return \"" + parameters + "\";\n" + 
+				"	}\n" + 
+				"	\n" + 
+				"	public static String GetUsage()\n" + 
+				"	{\n" + 
+				"		return \"" + usage + "\";\n" + 
+				"	}\n" + 
+				"	\n" + 
+				"	public static void ExecuteStream(String args, java.io.InputStream in, java.io.OutputStream out) throws java.lang.Exception\n" + 
+				"	{\n" + 
+				"		" + code + "\n" + 
+				"	}\n" + 
+				"	\n" + 
+				"	public static String Execute(String args) throws java.lang.Exception\n" + 
+				"	{\n" + 
+				"		java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();\n" +
+				"		try\n" +
+				"		{\n" +
+				"			ExecuteStream(args, new java.io.ByteArrayInputStream(new byte[0]), out);\n" +
+				"		}\n" +
+				"		catch(java.lang.Exception ex)\n" +
+				"		{\n" +
+				"			return \"Exception:\" + ex;\n" +
+				"		}\n" +
+				"		return new String(out.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);\n" +
+				"	}\n" + 
+				"}";
+	}
+	
+	/**
+	 * Loads an EXCM from a namespace, which is either a directory of EXCM files or an EXCB, without running it. The
+	 * class and its Execute method are cached, so the next run of the EXCM does not load them.
+	 * 
+	 * @param namespace The directory (ending with a separator) or the EXCB file.
+	 * @param name The name of the EXCM.
+	 * 
+	 * @return The class of the EXCM.
+	 * 
+	 * @throws IOException If the EXCB cannot be opened.
+	 * @throws ClassNotFoundException 
+	 * @throws NoSuchMethodException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public static Class<?> Load(String namespace, String name) throws IOException, ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+		if(namespace.toLowerCase().endsWith(".excb")) {
+			EXCB bundle = EXCB.Open(namespace);
+			bundle.GetExecute(name);
+			return bundle.Load(name);
+		}
+		
+		Exom.Utils.ClassUtils.GetMethod(namespace + name + ".excm", "Execute", EXECUTE);
+		return Exom.Utils.ClassUtils.Load(namespace + name + ".excm");
+	}
+	
+	/**
+	 * Runs an EXCM from a namespace, which is either a directory of EXCM files or an EXCB.
+	 * 
+	 * @param namespace The directory (ending with a separator) or the EXCB file.
+	 * @param name The name of the EXCM.
+	 * @param args The arguments to execute with.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws IOException If the EXCB cannot be opened.
+	 * @throws ClassNotFoundException 
+	 * @throws NoSuchMethodException 
+	 * @throws InvocationTargetException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public static String Run(String namespace, String name, String args) throws IOException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+		if(namespace.toLowerCase().endsWith(".excb"))
+			return EXCB.Open(namespace).Run(name, args);
+		return Run(namespace + name + ".excm", args);
+	}
+	
+	/**
+	 * Runs an EXCM from a namespace on a stream. Streaming EXCMs read the input and write the output as they go.
+	 * Other EXCMs receive the whole input after their arguments, separated by a space, and their response is written
+	 * to the output as UTF-8.
+	 * 
+	 * @param namespace The directory (ending with a separator) or the EXCB file.
+	 * @param name The name of the EXCM.
+	 * @param args The arguments to execute with.
+	 * @param in The input of the EXCM.
+	 * @param out The output of the EXCM.
+	 * 
+	 * @throws IOException If the EXCB cannot be opened, or the streams fail.
+	 * @throws ClassNotFoundException 
+	 * @throws NoSuchMethodException 
+	 * @throws InvocationTargetException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public static void RunStream(String namespace, String name, String args, InputStream in, OutputStream out) throws IOException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+		boolean bundle = namespace.toLowerCase().endsWith(".excb");
+		
+		MethodHandle execute;
+		try {
+			execute = bundle ? EXCB.Open(namespace).GetMethod(name, "ExecuteStream", EXECUTE_STREAM)
+					: Exom.Utils.ClassUtils.GetMethod(namespace + name + ".excm", "ExecuteStream", EXECUTE_STREAM);
+		}
+		catch(NoSuchMethodException ex) {
+			execute = null;
+		}
+		
+		if(execute != null) {
+			try {
+				execute.invokeExact(args, in, out);
+			}
+			catch(IOException ex) {
+				throw ex;
+			}
+			catch(Throwable ex) {
+				throw new InvocationTargetException(ex);
+			}
+			return;
+		}
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int read;
+		while((read = in.read(chunk)) != -1)
+			buffer.write(chunk, 0, read);
+		
+		String input = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+		if(!input.isEmpty())
+			args = args.isEmpty() ? input : args + " " + input;
+		
+		out.write(Run(namespace, name, args).getBytes(StandardCharsets.UTF_8));
 	}
 	
 	/**
@@ -100,7 +313,13 @@ public class EXCM {
 	 * @since 1.0
 	 */
 	public static String Run(String excm, String args) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-		return (String) Exom.Utils.ClassUtils.Run(excm, "Execute", new Object[] { args }, new Class<?>[] { String.class });
+		MethodHandle execute = Exom.Utils.ClassUtils.GetMethod(excm, "Execute", EXECUTE);
+		try {
+			return (String) execute.invokeExact(args);
+		}
+		catch(Throwable ex) {
+			throw new InvocationTargetException(ex);
+		}
 	}
 	
 	/**
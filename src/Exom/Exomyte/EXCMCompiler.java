@@ -0,0 +1,485 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Exom.Exceptions.CompilationException;
+import Exom.Utils.ClassUtils;
+import Exom.Utils.Cryptography.Hash;
+
+/**
+ * Compiles many EXCMs and EXCHs at once, with a few compiler tasks spread over a bounded pool of threads.
+ * 
+ * The hash of the source of each compiled unit is written to a manifest in its folder. Units whose source did not
+ * change since they were last compiled, and whose compiled file still exists, are skipped.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXCMCompiler {
+
+	/**
+	 * The default number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public static int DefaultThreads = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The name of the manifest which holds the source hashes of the units compiled to a folder.
+	 *
+	 * @since 1.0
+	 */
+	public static final String MANIFEST = "manifest.exmf";
+
+	/**
+	 * The number of threads.
+	 */
+	private final int threads;
+
+	/**
+	 * Initializes a new instance of the EXCMCompiler class, with the default number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public EXCMCompiler() {
+		this(DefaultThreads);
+	}
+	/**
+	 * Initializes a new instance of the EXCMCompiler class.
+	 * 
+	 * @param threads The number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public EXCMCompiler(int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the units of the Java sources in a list of paths. Directories are searched recursively for .java files,
+	 * which are sorted by path. Each source is compiled next to itself; "Name.exch.java" is compiled to "Name.exch",
+	 * and any other "Name.java" to "Name.excm".
+	 * 
+	 * @param paths The files and directories.
+	 * 
+	 * @return The units.
+	 * 
+	 * @throws IOException If a path does not exist, or a source cannot be read.
+	 *
+	 * @since 1.0
+	 */
+	public static List<Unit> Find(String... paths) throws IOException {
+		List<File> sources = new ArrayList<File>();
+
+		for(String path : paths) {
+			File file = new File(path);
+			if(file.isDirectory())
+				Find(file, sources);
+			else if(file.isFile())
+				sources.add(file);
+			else throw new IOException("The file '" + path + "' does not exist.");
+		}
+
+		List<Unit> units = new ArrayList<Unit>();
+		for(File source : sources) {
+			String name = source.getName();
+			if(name.toLowerCase().endsWith(".java"))
+				name = name.substring(0, name.length() - 5);
+
+			String ext = "excm";
+			int dot = name.indexOf('.');
+			if(dot >= 0) {
+				ext = name.substring(dot + 1);
+				name = name.substring(0, dot);
+			}
+
+			String folder = source.getAbsoluteFile().getParent();
+			units.add(new Unit(name, new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8), folder, ext));
+		}
+		return units;
+	}
+
+	/**
+	 * Adds the .java files of a directory, and of its subdirectories, to a list.
+	 * 
+	 * @param directory The directory.
+	 * @param sources The list.
+	 */
+	private static void Find(File directory, List<File> sources) {
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		Arrays.sort(files);
+
+		for(File file : files) {
+			if(file.isDirectory())
+				Find(file, sources);
+			else if(file.getName().toLowerCase().endsWith(".java"))
+				sources.add(file);
+		}
+	}
+
+	/**
+	 * Compiles units in parallel, skipping the units whose source did not change, and waits for all of them to
+	 * finish. A unit which fails does not stop the others.
+	 * 
+	 * @param units The units to compile.
+	 * @param force Whether or not to compile the units whose source did not change.
+	 * 
+	 * @return The results of the units, in the same order as the units.
+	 * 
+	 * @throws InterruptedException 
+	 *
+	 * @since 1.0
+	 */
+	public List<Result> Compile(List<Unit> units, boolean force) throws InterruptedException {
+		Result[] results = new Result[units.size()];
+		String[] hashes = new String[units.size()];
+		Map<String, Map<String, String>> manifests = new TreeMap<String, Map<String, String>>();
+		List<List<Integer>> tasks = new ArrayList<List<Integer>>();
+		int next = 0;
+
+		for(int u = 0; u < units.size(); u++) {
+			Unit unit = units.get(u);
+			Map<String, String> manifest = manifests.get(unit.Path);
+			if(manifest == null) {
+				manifest = ReadManifest(unit.Path);
+				manifests.put(unit.Path, manifest);
+			}
+
+			try {
+				hashes[u] = Hash.SHA256(unit.Source.getBytes(StandardCharsets.UTF_8));
+			}
+			catch(Exception ex) {
+				results[u] = new Result(unit, Result.FAILED, ex);
+				continue;
+			}
+
+			if(!force && hashes[u].equals(manifest.get(unit.FileName())) && new File(unit.Path, unit.FileName()).isFile()) {
+				results[u] = new Result(unit, Result.SKIPPED, null);
+				continue;
+			}
+
+			// The units are spread over the tasks in turn. Units with the same class name are compiled by different tasks.
+			List<Integer> task = null;
+			if(tasks.size() >= threads) {
+				for(int t = 0; t < tasks.size() && task == null; t++) {
+					int index = (next + t) % tasks.size();
+					if(!HasName(tasks.get(index), units, unit.Name)) {
+						task = tasks.get(index);
+						next = index + 1;
+					}
+				}
+			}
+			if(task == null) {
+				task = new ArrayList<Integer>();
+				tasks.add(task);
+			}
+			task.add(u);
+		}
+
+		if(!tasks.isEmpty())
+			RunTasks(units, tasks, results);
+
+		for(int u = 0; u < units.size(); u++) {
+			Unit unit = units.get(u);
+			Map<String, String> manifest = manifests.get(unit.Path);
+
+			if(results[u].Status == Result.COMPILED)
+				manifest.put(unit.FileName(), hashes[u]);
+			else if(results[u].Status == Result.FAILED)
+				manifest.remove(unit.FileName());
+		}
+		for(Map.Entry<String, Map<String, String>> manifest : manifests.entrySet())
+			WriteManifest(manifest.getKey(), manifest.getValue());
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Runs the compiler tasks on the pool, and saves the compiled units.
+	 * 
+	 * @param units The units.
+	 * @param tasks The indexes of the units compiled by each task.
+	 * @param results The results of the units.
+	 * 
+	 * @throws InterruptedException 
+	 */
+	private void RunTasks(List<Unit> units, List<List<Integer>> tasks, Result[] results) throws InterruptedException {
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), r -> {
+			Thread thread = new Thread(r, "EXCM Compiler " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(List<Integer> task : tasks) {
+				futures.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						Map<String, String> sources = new HashMap<String, String>();
+						for(int u : task)
+							sources.put(units.get(u).Name, units.get(u).Source);
+
+						Map<String, CompilationException> errors = new HashMap<String, CompilationException>();
+						Map<String, byte[]> classes = ClassUtils.Compile(sources, errors);
+
+						for(int u : task) {
+							Unit unit = units.get(u);
+							byte[] data = classes.get(unit.Name);
+							if(data == null) {
+								results[u] = new Result(unit, Result.FAILED, errors.get(unit.Name));
+								continue;
+							}
+
+							try {
+								ClassUtils.Save(data, unit.Path, unit.Name, unit.Ext);
+								results[u] = new Result(unit, Result.COMPILED, null);
+							}
+							catch(IOException ex) {
+								results[u] = new Result(unit, Result.FAILED, ex);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+
+			for(int t = 0; t < futures.size(); t++) {
+				try {
+					futures.get(t).get();
+				}
+				catch(ExecutionException ex) {
+					for(int u : tasks.get(t)) {
+						if(results[u] == null)
+							results[u] = new Result(units.get(u), Result.FAILED, ex.getCause());
+					}
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns whether or not a task compiles a unit with a class name.
+	 */
+	private static boolean HasName(List<Integer> task, List<Unit> units, String name) {
+		for(int u : task) {
+			if(units.get(u).Name.equals(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Reads the manifest of a folder. Each line of the manifest holds a file name and the hash of its source.
+	 * 
+	 * @param folder The folder.
+	 * 
+	 * @return The source hashes, by file name. Empty if the folder has no manifest.
+	 */
+	private static Map<String, String> ReadManifest(String folder) {
+		Map<String, String> manifest = new TreeMap<String, String>();
+		try {
+			for(String line : Files.readAllLines(new File(folder, MANIFEST).toPath(), StandardCharsets.UTF_8)) {
+				int space = line.lastIndexOf(' ');
+				if(space > 0)
+					manifest.put(line.substring(0, space), line.substring(space + 1));
+			}
+		}
+		catch(IOException ex) {
+			manifest.clear();
+		}
+		return manifest;
+	}
+
+	/**
+	 * Writes the manifest of a folder.
+	 * 
+	 * @param folder The folder.
+	 * @param manifest The source hashes, by file name.
+	 */
+	private static void WriteManifest(String folder, Map<String, String> manifest) {
+		StringBuilder data = new StringBuilder();
+		for(Map.Entry<String, String> entry : manifest.entrySet())
+			data.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+
+		try {
+			int dot = MANIFEST.lastIndexOf('.');
+			ClassUtils.Save(data.toString().getBytes(StandardCharsets.UTF_8), folder, MANIFEST.substring(0, dot), MANIFEST.substring(dot + 1));
+		}
+		catch(IOException ex) {
+			// Without a manifest, the units are compiled again next time.
+		}
+	}
+
+	/**
+	 * Represents an EXCM or EXCH to compile.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	public static class Unit {
+
+		/**
+		 * The name of the class.
+		 *
+		 * @since 1.0
+		 */
+		public final String Name;
+		/**
+		 * The Java source of the class.
+		 *
+		 * @since 1.0
+		 */
+		public final String Source;
+		/**
+		 * The folder where to compile the class to.
+		 *
+		 * @since 1.0
+		 */
+		public final String Path;
+		/**
+		 * The extension of the compiled file (for example, "excm" or "exch").
+		 *
+		 * @since 1.0
+		 */
+		public final String Ext;
+
+		/**
+		 * Initializes a new instance of the Unit class.
+		 * 
+		 * @param name The name of the class.
+		 * @param source The Java source of the class.
+		 * @param path The folder where to compile the class to.
+		 * @param ext The extension of the compiled file.
+		 *
+		 * @since 1.0
+		 */
+		public Unit(String name, String source, String path, String ext) {
+			Name = name;
+			Source = source;
+			Path = path;
+			Ext = ext;
+		}
+
+		/**
+		 * Returns the name of the compiled file.
+		 * 
+		 * @return The file name.
+		 *
+		 * @since 1.0
+		 */
+		public String FileName() {
+			return Name + "." + Ext;
+		}
+	}
+
+	/**
+	 * Represents the result of a unit.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	public static class Result {
+
+		/**
+		 * The unit was compiled.
+		 *
+		 * @since 1.0
+		 */
+		public static final int COMPILED = 0;
+		/**
+		 * The unit was skipped, because its source did not change.
+		 *
+		 * @since 1.0
+		 */
+		public static final int SKIPPED = 1;
+		/**
+		 * The unit could not be compiled or saved.
+		 *
+		 * @since 1.0
+		 */
+		public static final int FAILED = 2;
+
+		/**
+		 * The unit.
+		 *
+		 * @since 1.0
+		 */
+		public final Unit Unit;
+		/**
+		 * The status of the unit (COMPILED, SKIPPED or FAILED).
+		 *
+		 * @since 1.0
+		 */
+		public final int Status;
+		/**
+		 * The exception which failed the unit. Null if the unit did not fail. Compilation errors are reported as
+		 * CompilationExceptions, which contain the diagnostics.
+		 *
+		 * @since 1.0
+		 */
+		public final Throwable Error;
+
+		/**
+		 * Initializes a new instance of the Result class.
+		 * 
+		 * @param unit The unit.
+		 * @param status The status of the unit.
+		 * @param error The exception which failed the unit.
+		 *
+		 * @since 1.0
+		 */
+		public Result(Unit unit, int status, Throwable error) {
+			Unit = unit;
+			Status = status;
+			Error = error;
+		}
+	}
+}
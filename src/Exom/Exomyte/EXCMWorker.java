@@ -0,0 +1,337 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Represents a child JVM which runs EXCMs for another process. The child preloads and warms up the EXCMs of its
+ * namespace when it starts, and then runs the EXCMs it receives through its standard input, one at a time. An EXCM
+ * which crashes or exits only stops its worker.
+ * 
+ * The main method of this class is the entry point of the child.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXCMWorker {
+
+	/**
+	 * The response of a successful run.
+	 */
+	private static final byte OK = 0;
+	/**
+	 * The response of an EXCM which threw an exception.
+	 */
+	private static final byte FAILED = 1;
+	/**
+	 * The response of an EXCM which could not be loaded.
+	 */
+	private static final byte NOT_FOUND = 2;
+
+	/**
+	 * Kills the workers whose calls time out.
+	 */
+	private static final ScheduledExecutorService Watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "EXCM Worker Watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The child process.
+	 */
+	private final Process process;
+	/**
+	 * The requests sent to the child.
+	 */
+	private final DataOutputStream requests;
+	/**
+	 * The responses of the child.
+	 */
+	private final DataInputStream responses;
+	/**
+	 * The number of calls the worker ran.
+	 */
+	private int calls;
+	/**
+	 * The fraction of the maximum heap of the child which was used after the last call.
+	 */
+	private double memory;
+	/**
+	 * Whether or not the worker was killed by the watchdog.
+	 */
+	private volatile boolean killed;
+
+	/**
+	 * Initializes a new instance of the EXCMWorker class.
+	 */
+	private EXCMWorker(Process process) {
+		this.process = process;
+		requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+	}
+
+	/**
+	 * Starts a worker. The worker runs on the same Java runtime and class path as the current process. Its standard
+	 * error, which also receives what the EXCMs print, is the standard error of the current process.
+	 * 
+	 * @param namespace The namespace to preload.
+	 * @param handler The EXCH file to preload.
+	 * @param options The options of the child JVM.
+	 * 
+	 * @return The worker.
+	 * 
+	 * @throws IOException If the child cannot be started.
+	 *
+	 * @since 1.0
+	 */
+	public static EXCMWorker Start(String namespace, String handler, String... options) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(Arrays.asList(options));
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(EXCMWorker.class.getName());
+		command.add(namespace);
+		command.add(handler);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return new EXCMWorker(builder.start());
+	}
+
+	/**
+	 * Runs an EXCM on the worker, and waits for its response. The worker is killed if the EXCM does not respond in
+	 * time.
+	 * 
+	 * @param namespace The directory (ending with a separator) or the EXCB file.
+	 * @param name The name of the EXCM.
+	 * @param args The arguments to execute with.
+	 * @param timeout The timeout, in milliseconds. Zero or negative for no timeout.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws IOException If the worker stopped.
+	 * @throws TimeoutException If the EXCM did not respond in time.
+	 * @throws ClassNotFoundException If the EXCM could not be loaded.
+	 * @throws InvocationTargetException If the EXCM threw an exception.
+	 *
+	 * @since 1.0
+	 */
+	public String Run(String namespace, String name, String args, long timeout) throws IOException, TimeoutException, ClassNotFoundException, InvocationTargetException {
+		ScheduledFuture<?> watchdog = timeout > 0 ? Watchdog.schedule(this::Kill, timeout, TimeUnit.MILLISECONDS) : null;
+		byte status;
+		String response;
+		try {
+			WriteString(requests, namespace);
+			WriteString(requests, name);
+			WriteString(requests, args);
+			requests.flush();
+
+			status = responses.readByte();
+			response = ReadString(responses);
+			memory = responses.readDouble();
+		}
+		catch(IOException ex) {
+			boolean timedOut = killed;
+			Kill();
+			if(timedOut)
+				throw new TimeoutException("The EXCM \"" + name + "\" did not respond in " + timeout + " ms");
+			throw new IOException("The EXCM worker stopped while running \"" + name + "\"", ex);
+		}
+		catch(RuntimeException | Error ex) {
+			// The response was corrupted, so the protocol stream cannot be trusted anymore.
+			Kill();
+			throw new IOException("The EXCM worker sent a corrupted response while running \"" + name + "\"", ex);
+		}
+		finally {
+			if(watchdog != null)
+				watchdog.cancel(false);
+		}
+		++calls;
+
+		if(status == NOT_FOUND)
+			throw new ClassNotFoundException(response);
+		if(status == FAILED)
+			throw new InvocationTargetException(new Exception(response));
+		return response;
+	}
+
+	/**
+	 * Returns the number of calls the worker ran.
+	 * 
+	 * @return The number of calls.
+	 *
+	 * @since 1.0
+	 */
+	public int GetCalls() {
+		return calls;
+	}
+
+	/**
+	 * Returns the fraction of the maximum heap of the worker which was used after its last call.
+	 * 
+	 * @return The memory usage, from 0 to 1.
+	 *
+	 * @since 1.0
+	 */
+	public double GetMemoryUsage() {
+		return memory;
+	}
+
+	/**
+	 * Returns whether or not the worker is running.
+	 * 
+	 * @return Whether or not the worker is running.
+	 *
+	 * @since 1.0
+	 */
+	public boolean IsAlive() {
+		return !killed && process.isAlive();
+	}
+
+	/**
+	 * Stops the worker after its current call, by closing its input.
+	 *
+	 * @since 1.0
+	 */
+	public void Close() {
+		try {
+			requests.close();
+		}
+		catch(IOException ex) {
+			Kill();
+		}
+	}
+
+	/**
+	 * Kills the worker.
+	 *
+	 * @since 1.0
+	 */
+	public void Kill() {
+		if(process.isAlive())
+			killed = true;
+		process.destroyForcibly();
+	}
+
+	/**
+	 * Runs a worker. The requests are read from the standard input, and the responses are written to the standard
+	 * output. System.out is redirected to the standard error, so the EXCMs cannot corrupt the responses. The worker
+	 * stops when its input ends.
+	 * 
+	 * @param args The namespace and the EXCH file to preload.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static void main(String[] args) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+		System.setOut(System.err);
+
+		if(args.length >= 2)
+			Preloader.Start(args[0], args[1], true);
+
+		Runtime runtime = Runtime.getRuntime();
+		while(true) {
+			String namespace;
+			try {
+				namespace = ReadString(in);
+			}
+			catch(EOFException ex) {
+				break;
+			}
+			String name = ReadString(in);
+			String arguments = ReadString(in);
+
+			byte status = OK;
+			String response;
+			try {
+				response = EXCM.Run(namespace, name, arguments);
+			}
+			catch(InvocationTargetException ex) {
+				status = FAILED;
+				response = String.valueOf(ex.getCause());
+			}
+			catch(Exception | LinkageError ex) {
+				status = NOT_FOUND;
+				response = name;
+			}
+			catch(Throwable ex) {
+				status = FAILED;
+				response = String.valueOf(ex);
+			}
+
+			out.writeByte(status);
+			WriteString(out, response);
+			out.writeDouble((double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory());
+			out.flush();
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Writes a string of any length, as UTF-8.
+	 */
+	private static void WriteString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by WriteString.
+	 */
+	private static String ReadString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0)
+			throw new IOException("Invalid string length " + length);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
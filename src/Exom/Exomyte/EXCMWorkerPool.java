@@ -0,0 +1,275 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs EXCMs on a pool of warm child JVMs (EXCMWorkers), so heavy or untrusted EXCMs cannot stop the current
+ * process. Workers which crash or time out are replaced, and workers are recycled after a number of calls, or when
+ * their heap is almost full.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXCMWorkerPool {
+
+	/**
+	 * The default number of workers.
+	 *
+	 * @since 1.0
+	 */
+	public static int DefaultSize = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	/**
+	 * The default options of the worker JVMs.
+	 *
+	 * @since 1.0
+	 */
+	public static String[] DefaultOptions = { "-XX:+UseSerialGC", "-Xshare:auto" };
+
+	/**
+	 * The pool shared by the scripts of the current process. Null until it is started.
+	 */
+	private static EXCMWorkerPool Shared;
+
+	/**
+	 * The namespace which the workers preload.
+	 *
+	 * @since 1.0
+	 */
+	public final String Namespace;
+	/**
+	 * The EXCH file which the workers preload.
+	 *
+	 * @since 1.0
+	 */
+	public final String Handler;
+	/**
+	 * The timeout of each call, in milliseconds. Zero or negative for no timeout.
+	 *
+	 * @since 1.0
+	 */
+	public volatile long Timeout = 30000;
+	/**
+	 * The number of calls after which a worker is recycled.
+	 *
+	 * @since 1.0
+	 */
+	public volatile int MaxCalls = 10000;
+	/**
+	 * The fraction of its maximum heap above which a worker is recycled.
+	 *
+	 * @since 1.0
+	 */
+	public volatile double MaxMemory = 0.75;
+
+	/**
+	 * The options of the worker JVMs.
+	 */
+	private final String[] options;
+	/**
+	 * The workers which do not run a call.
+	 */
+	private final LinkedBlockingQueue<EXCMWorker> idle;
+	/**
+	 * The number of running workers.
+	 */
+	private final AtomicInteger size;
+	/**
+	 * The number of workers which were recycled or replaced.
+	 */
+	private final AtomicInteger recycled;
+	/**
+	 * Whether or not the pool was closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Initializes a new instance of the EXCMWorkerPool class, and starts the workers.
+	 */
+	private EXCMWorkerPool(String namespace, String handler, int size, String[] options) throws IOException {
+		if(size < 1)
+			throw new IllegalArgumentException("The number of workers must be positive");
+
+		Namespace = namespace;
+		Handler = handler;
+		this.options = options;
+		idle = new LinkedBlockingQueue<EXCMWorker>();
+		recycled = new AtomicInteger();
+		this.size = new AtomicInteger();
+
+		try {
+			for(int u = 0; u < size; u++) {
+				idle.add(EXCMWorker.Start(namespace, handler, options));
+				this.size.incrementAndGet();
+			}
+		}
+		catch(IOException ex) {
+			Close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Starts a pool of workers, with the default number of workers and options.
+	 * 
+	 * @param namespace The namespace which the workers preload.
+	 * @param handler The EXCH file which the workers preload.
+	 * 
+	 * @return The pool.
+	 * 
+	 * @throws IOException If a worker cannot be started.
+	 *
+	 * @since 1.0
+	 */
+	public static EXCMWorkerPool Start(String namespace, String handler) throws IOException {
+		return Start(namespace, handler, DefaultSize, DefaultOptions);
+	}
+	/**
+	 * Starts a pool of workers.
+	 * 
+	 * @param namespace The namespace which the workers preload.
+	 * @param handler The EXCH file which the workers preload.
+	 * @param size The number of workers.
+	 * @param options The options of the worker JVMs.
+	 * 
+	 * @return The pool.
+	 * 
+	 * @throws IOException If a worker cannot be started.
+	 *
+	 * @since 1.0
+	 */
+	public static EXCMWorkerPool Start(String namespace, String handler, int size, String... options) throws IOException {
+		return new EXCMWorkerPool(namespace, handler, size, options);
+	}
+
+	/**
+	 * Returns the pool shared by the scripts of the current process, and starts it the first time. The shared pool
+	 * is closed when the process exits.
+	 * 
+	 * @param namespace The namespace which the workers preload.
+	 * @param handler The EXCH file which the workers preload.
+	 * 
+	 * @return The shared pool.
+	 * 
+	 * @throws IOException If a worker cannot be started.
+	 *
+	 * @since 1.0
+	 */
+	public static synchronized EXCMWorkerPool Shared(String namespace, String handler) throws IOException {
+		if(Shared == null) {
+			EXCMWorkerPool pool = Start(namespace, handler);
+			Runtime.getRuntime().addShutdownHook(new Thread(pool::Close, "EXCM Worker Shutdown"));
+			Shared = pool;
+		}
+		return Shared;
+	}
+
+	/**
+	 * Runs an EXCM on an idle worker, and waits for an idle worker if all of them are busy.
+	 * 
+	 * @param namespace The directory (ending with a separator) or the EXCB file.
+	 * @param name The name of the EXCM.
+	 * @param args The arguments to execute with.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws IOException If the worker stopped, or the pool was closed.
+	 * @throws TimeoutException If the EXCM did not respond in time.
+	 * @throws ClassNotFoundException If the EXCM could not be loaded.
+	 * @throws InvocationTargetException If the EXCM threw an exception.
+	 * @throws InterruptedException 
+	 *
+	 * @since 1.0
+	 */
+	public String Run(String namespace, String name, String args) throws IOException, TimeoutException, ClassNotFoundException, InvocationTargetException, InterruptedException {
+		EXCMWorker worker;
+		do {
+			if(closed)
+				throw new IOException("The EXCM worker pool is closed");
+		} while((worker = idle.poll(100, TimeUnit.MILLISECONDS)) == null);
+
+		try {
+			return worker.Run(namespace, name, args, Timeout);
+		}
+		finally {
+			Release(worker);
+		}
+	}
+
+	/**
+	 * Returns the number of workers which were recycled, or replaced after they stopped.
+	 * 
+	 * @return The number of recycled workers.
+	 *
+	 * @since 1.0
+	 */
+	public int GetRecycled() {
+		return recycled.get();
+	}
+
+	/**
+	 * Stops the idle workers, and the busy workers after their current call.
+	 *
+	 * @since 1.0
+	 */
+	public void Close() {
+		closed = true;
+
+		EXCMWorker worker;
+		while((worker = idle.poll()) != null)
+			worker.Close();
+	}
+
+	/**
+	 * Returns a worker to the idle workers, or replaces it if it stopped or has to be recycled. If the replacement
+	 * cannot be started, the pool shrinks, and it is closed when no workers are left.
+	 */
+	private void Release(EXCMWorker worker) {
+		if(closed) {
+			worker.Close();
+			return;
+		}
+
+		if(worker.IsAlive() && worker.GetCalls() < MaxCalls && worker.GetMemoryUsage() < MaxMemory) {
+			idle.add(worker);
+			return;
+		}
+
+		worker.Close();
+		recycled.incrementAndGet();
+		try {
+			idle.add(EXCMWorker.Start(Namespace, Handler, options));
+		}
+		catch(IOException ex) {
+			if(size.decrementAndGet() == 0)
+				closed = true;
+		}
+	}
+}
@@ -24,11 +24,18 @@ package Exom.Exomyte;
 
 import java.util.*;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
-import javax.naming.InvalidNameException;
-
-import Exom.Engines;
+import Exom.Flag;
 import Exom.Utils.*;
 
 /**
@@ -40,8 +47,21 @@ import Exom.Utils.*;
  */
 public class EXMY {
 
+    /**
+     * The number of pipeline threads created so far.
+     */
+    private static final AtomicInteger PipelineThreads = new AtomicInteger();
+    /**
+     * The threads which run the commands of pipelines, except the last one.
+     */
+    private static final ExecutorService Pipelines = Executors.newCachedThreadPool(r -> {
+    	Thread thread = new Thread(r, "EXMY Pipeline " + PipelineThreads.incrementAndGet());
+    	thread.setDaemon(true);
+    	return thread;
+    });
+
 	/**
-	 * The folder containing the EXCM files.
+	 * The folder containing the EXCM files, or the EXCB containing the EXCMs.
 	 *
 	 * @since 1.0
 	 */
@@ -59,13 +79,13 @@ public class EXMY {
      */
     public String Variables;
     /**
-     * A map of all RAM Variables.
+     * A map of all RAM Variables. By default, this is a SlotMap.
      *
 	 * @since 1.0
      */
     public Map<String, String> RamVars;
     /**
-     * A map of all File Variables.
+     * A map of all File Variables. By default, this is a SlotMap.
      *
 	 * @since 1.0
      */
@@ -77,11 +97,61 @@ public class EXMY {
      */
     public boolean InIf;
     /**
-     * The source of the EXMY Script.
+     * The source of the EXMY Script, from which Handle reads the rest of a block.
      *
 	 * @since 1.0
      */
     public Scanner Source;
+    /**
+     * The stream to which responses and exceptions are printed. By default, this is System.out.
+     *
+	 * @since 1.0
+     */
+    public PrintStream Output;
+    /**
+     * The number of exceptions reported while running.
+     *
+	 * @since 1.0
+     */
+    public int Errors;
+    /**
+     * The profiler which records the time of each line. Null if the script is not profiled.
+     *
+	 * @since 1.0
+     */
+    public Profiler Profiler;
+    /**
+     * The pool of child JVMs which run the commands. Null if the commands run in the current process.
+     *
+	 * @since 1.0
+     */
+    public EXCMWorkerPool Workers;
+    /**
+     * The preloader of the Namespace. Null if the EXCMs are not preloaded.
+     *
+	 * @since 1.0
+     */
+    public Preloader Preloading;
+    /**
+     * The EXCM names of the command verbs resolved with the Handler. A verb without an alias maps to null.
+     */
+    private Map<String, String> resolved;
+    /**
+     * The EXCH file with which the verbs were resolved.
+     */
+    private String resolvedHandler;
+    /**
+     * The last modification time of the EXCH file when the verbs were resolved.
+     */
+    private long resolvedModified;
+    /**
+     * The opened Variables file to which assignments are written. Null if it was not opened yet.
+     */
+    private EXVR variablesFile;
+    /**
+     * The path with which the Variables file was opened.
+     */
+    private String variablesPath;
     
     /**
      * Initializes a new instance of the EXMY class.
@@ -92,9 +162,14 @@ public class EXMY {
     	Namespace = "";
     	Handler = "";
     	Variables = "";
-    	RamVars = new HashMap<String, String>();
-    	FileVars = new HashMap<String, String>();
+    	RamVars = new SlotMap();
+    	FileVars = new SlotMap();
     	InIf = false;
+    	Output = System.out;
+    	Errors = 0;
+    	Profiler = null;
+    	Workers = null;
+    	resolved = new HashMap<String, String>();
     }
     /**
      * Initializes a new instance of the EXMY class.
@@ -106,392 +181,844 @@ public class EXMY {
      */
     public EXMY(String handlerPath, String varPath) {
     	Handler = handlerPath;
-		Namespace = Exom.Utils.StringUtils.FolderName(Handler) + "excm/";
+		Namespace = NamespaceOf(FolderOf(Handler));
     	Variables = varPath;
-    	RamVars = new HashMap<String, String>();
-    	FileVars = new HashMap<String, String>();
+    	RamVars = new SlotMap();
+    	FileVars = new SlotMap();
     	InIf = false;
+    	Output = System.out;
+    	Errors = 0;
+    	Profiler = null;
+    	Workers = null;
+    	resolved = new HashMap<String, String>();
     }
     
     /**
-     * Handles a line of EXMY Script input.
+     * Handles a line of EXMY Script input. If the line opens a block, the rest of the block is read from the Source.
      * 
      * @param input The line to handle.
      *
 	 * @since 1.0
      */
     public void Handle(String input) {
-    	try {
-			input = StringUtils.Trim(input);
-			if(input.length() >= 3 && input.toLowerCase().substring(0, 3).equals("if ")) {
-				String exp = FormatLine(input.substring(3), RamVars, FileVars);
-	            if((boolean)Engines.JavaScript.eval(exp)) {
-	            	try {
-	            		input = Source.nextLine();
-		            	while((!input.toLowerCase().startsWith("endif")) && (!input.toLowerCase().startsWith("else"))) {
-		            		Handle(input);
-		            		input = Source.nextLine();
-		            	}
-
-		            	while(!input.toLowerCase().startsWith("endif")) {
-		            		input = Source.nextLine();
-		            	}
-	            	}
-	            	catch(NoSuchElementException ex) {
-	            		throw new NoSuchElementException("Syntax error: expected \"endif\" before end of file");
-	            	}
-	            	catch(Exception ex) {
-	            		throw ex;
-	            	}
-	            }
-	            else {
-	            	input = Source.nextLine();
-	            	while((!input.toLowerCase().startsWith("endif")) && (!input.toLowerCase().startsWith("else"))) {
-	            		input = Source.nextLine();
-	            	}
-
-	            	if(input.toLowerCase().startsWith("else")) {
-	            		input = Source.nextLine();
-	            		while(!input.toLowerCase().startsWith("endif")) {
-		            		Handle(input);
-		            		input = Source.nextLine();
-		            	}
-	            	}
-	            }
-	            input = Source.nextLine();
+		input = StringUtils.Trim(input);
+
+		if(Script.IsBlockStart(input)) {
+			List<String> lines = new ArrayList<String>();
+			lines.add(input);
+
+			int depth = 1;
+			while(depth > 0 && Source != null && Source.hasNextLine()) {
+				String line = Source.nextLine();
+				lines.add(line);
+
+				line = StringUtils.Trim(line);
+				if(Script.IsBlockStart(line))
+					++depth;
+				else if(Script.IsBlockEnd(line))
+					--depth;
 			}
-			if(input.length() >= 7 && input.toLowerCase().substring(0, 7).equals("--exch ")) {
-				Handler = input.substring(7, input.length());
-				Namespace = Exom.Utils.StringUtils.FolderName(Handler) + "excm/";
+
+			Execute(Script.Parse(lines).Table);
+		}
+		else if(input.length() > 0)
+			Execute(Script.ParseLine(input, 0));
+    }
+    
+    /**
+     * Runs an EXMY Script.
+     * 
+     * @param scriptFile The EXMY Script to run.
+     *
+	 * @since 1.0
+     */
+	public void Run(String scriptFile) {
+		String scriptPath = FolderOf(scriptFile);
+
+		if(Handler.isEmpty()) {
+			if(scriptPath.isEmpty()) {
+				Namespace = NamespaceOf("");
+				Handler = "handler.exch";
 			}
-			else if(input.length() >= 7 && input.toLowerCase().substring(0, 7).equals("--exvr ")) {
-				Variables = input.substring(7, input.length());
+			else {
+				Namespace = NamespaceOf(scriptPath);
+				Handler = scriptPath + "Handler.exch";
 			}
-			else if(input.length() >= 4 && input.toLowerCase().substring(0, 4).equals("let ")) {
-				String letInfo = input.substring(4, input.length());
-				String let = "";
-				
-				while(letInfo.length() > 0) {
-					char pos = letInfo.charAt(0);
-					if(pos != ' ' && pos != '=') {
-						let += pos;
-						if(letInfo.length() > 1)
-							letInfo = letInfo.substring(1, letInfo.length());
-						else letInfo = "";
-					}
-					else break;
-				}
-							
-				while(letInfo.length() > 0) {
-					if(letInfo.charAt(0) != ' ')
-						break;
-					letInfo = letInfo.substring(1, letInfo.length());
+		}
+		
+		if(Variables.isEmpty())
+			Variables = scriptPath + "variables.exvr";
+		
+		if((Flag.Preload || Flag.WarmUp) && Preloading == null)
+			Preloading = Preload(Flag.WarmUp);
+		if(Flag.Profile || Flag.FlameGraph)
+			Profiler = new Profiler(scriptFile);
+
+		try {
+			if(Flag.Isolate && Workers == null)
+				Workers = EXCMWorkerPool.Shared(Namespace, Handler);
+			Execute(Script.Load(scriptFile));
+		}
+		catch (Exception ex) {
+			Output.println("Exception: " + ex);
+			++Errors;
+		}
+
+		if(Profiler != null) {
+			Output.print(Profiler.Report());
+			if(Flag.FlameGraph) {
+				try {
+					Profiler.WriteStacks(scriptFile + ".folded");
 				}
-				if(letInfo.length() > 0) {
-					if(letInfo.charAt(0) != '=')
-						throw new InvalidNameException("Syntax error: variable name cannot contain spaces");
-					
-					letInfo = letInfo.substring(1, letInfo.length());
-					while(letInfo.length() > 0 && letInfo.charAt(0) == ' ') {
-						letInfo = letInfo.substring(1, letInfo.length());
-					}
-					
-					if(letInfo.charAt(0) != '\"') {
-						String[] commandInfo = EXCH.GetEXCM(Handler, letInfo);
-						if(commandInfo == null) {
-							String value = FormatLine(letInfo, RamVars, FileVars);
-							RamVars.put(let, value);
-						}
-						else {
-							String args = FormatLine(commandInfo[1], RamVars, FileVars);
-							try {
-								String response = EXCM.Run(Namespace + commandInfo[0] + ".excm", args);
-								RamVars.put(let, response);
-							}
-							catch(Exception ex) {
-								throw new FileNotFoundException("EXCM '" + commandInfo[0] + "' was not found");
-							}
-						}
-					}
-					else {
-						String value = FormatLine(letInfo, RamVars, FileVars);
-						RamVars.put(let, value);
-					}
+				catch(IOException ex) {
+					Output.println("Exception: " + ex);
+					++Errors;
 				}
-				else RamVars.put(let, "");
 			}
-			else if(input.length() >= 4 && input.toLowerCase().substring(0, 4).equals("var ")) {
-				String varInfo = input.substring(4, input.length());
-				String var = "";
-				
-				while(varInfo.length() > 0) {
-					char pos = varInfo.charAt(0);
-					if(pos != ' ' && pos != '=') {
-						var += pos;
-						if(varInfo.length() > 1)
-							varInfo = varInfo.substring(1, varInfo.length());
-						else varInfo = "";
-					}
-					else break;
-				}
-							
-				while(varInfo.length() > 0) {
-					if(varInfo.charAt(0) != ' ')
+		}
+	}
+
+	/**
+	 * Starts preloading the EXCMs of the Namespace and the Handler on background threads. The preloader is shared by
+	 * all the EXMY instances which use the same Namespace, so it is only started once.
+	 * 
+	 * @param warmUp Whether or not to warm up the EXCMs.
+	 * 
+	 * @return The preloader, which reports when the EXCMs are ready.
+	 *
+	 * @since 1.0
+	 */
+	public Preloader Preload(boolean warmUp) {
+		return Preloader.Shared(Namespace, Handler, warmUp);
+	}
+
+	/**
+	 * Runs a compiled EXMY Script. Scripts that run often are compiled to Java classes by the ScriptCompiler, unless
+	 * they are profiled.
+	 * 
+	 * @param script The compiled script.
+	 *
+	 * @since 1.0
+	 */
+	public void Execute(Script script) {
+		BiConsumer<EXMY, Instruction[]> compiled = script.Compiled;
+		if(compiled != null && Profiler == null) {
+			compiled.accept(this, script.Table);
+			return;
+		}
+
+		if(Profiler != null && script.CompileError != null)
+			Profiler.CompileError = script.CompileError;
+		ScriptCompiler.Hit(script);
+		Execute(script.Table);
+	}
+
+	/**
+	 * Runs an instruction table, following its jumps.
+	 * 
+	 * @param code The instruction table to run.
+	 */
+	private void Execute(Instruction[] code) {
+		boolean inIf = InIf;
+		int[] ifs = null;
+		int depth = 0;
+		Loop[] loops = null;
+
+		int u = 0;
+		while(u < code.length) {
+			while(depth > 0 && ifs[depth - 1] == u) {
+				if(--depth == 0)
+					InIf = inIf;
+			}
+
+			Instruction ins = code[u];
+			Profiler profiler = ins.Type == Instruction.JUMP ? null : Profiler;
+			long start = 0;
+			long bytes = 0;
+			if(profiler != null) {
+				profiler.Enter(ins.Line);
+				bytes = profiler.Allocated();
+				start = System.nanoTime();
+			}
+
+			switch(ins.Type) {
+				case Instruction.JUMP:
+					u = ins.Target;
+					break;
+				case Instruction.IF: {
+					int condition = Test(ins);
+					if(condition < 0) {
+						u = ins.End;
 						break;
-					varInfo = varInfo.substring(1, varInfo.length());
-				}
-				if(varInfo.length() > 0) {
-					if(varInfo.charAt(0) != '=')
-						throw new InvalidNameException("Syntax error: variable name cannot contain spaces");
-					
-					varInfo = varInfo.substring(1, varInfo.length());
-					while(varInfo.length() > 0 && varInfo.charAt(0) == ' ') {
-						varInfo = varInfo.substring(1, varInfo.length());
-					}
-					
-					if(varInfo.charAt(0) != '\"') {
-						String[] commandInfo = EXCH.GetEXCM(Handler, varInfo);
-						if(commandInfo == null) {
-							String value = FormatLine(varInfo, RamVars, FileVars);
-							FileVars.put(var, value);
-						}
-						else {
-							String args = FormatLine(commandInfo[1], RamVars, FileVars);
-							try {
-								String response = EXCM.Run(Namespace + commandInfo[0] + ".excm", args);
-								FileVars.put(var, response);
-							}
-							catch(Exception ex)
-							{
-								throw new FileNotFoundException("EXCM '" + commandInfo[0] + "' was not found");
-							}
-						}
 					}
-					else {
-						String value = FormatLine(varInfo, RamVars, FileVars);
-						FileVars.put(var, value);
-					}
-				}
-				else FileVars.put(var, "");
-			}
-			else if(input.length() >= 1 && input.toLowerCase().substring(0, 1).equals("*")) {
-				String let = "";
-				String letInfo = input.substring(1, input.length());
-				
-				while(letInfo.length() > 0) {
-					char pos = letInfo.charAt(0);
-					if(pos != ' ' && pos != '=')
-					{
-						let += pos;
-						letInfo = letInfo.substring(1, letInfo.length());
+
+					if(ins.End > u + 1) {
+						if(ifs == null)
+							ifs = new int[8];
+						else if(depth == ifs.length)
+							ifs = Arrays.copyOf(ifs, depth * 2);
+						ifs[depth++] = ins.End;
+						InIf = true;
 					}
-					else break;
-				}
-				
-				if(!RamVars.containsKey(let))
-					throw new NullPointerException("Syntax error: \"" + let + "\" is not a variable");
-					
-				while(letInfo.length() > 0 && letInfo.charAt(0) == ' ') {
-					letInfo = letInfo.substring(1, letInfo.length());
+					u = condition > 0 ? u + 1 : ins.Target;
+					break;
 				}
-				if(letInfo.length() == 0)
-					throw new NullPointerException("Syntax error: '=' expected");
-
-				if(letInfo.charAt(0) != '=')
-					throw new InvalidNameException("Syntax error: Variable name cannot contain spaces");
-					
-				letInfo = letInfo.substring(1, letInfo.length());
-				while(letInfo.length() > 0 && letInfo.charAt(0) == ' ') {
-					letInfo = letInfo.substring(1, letInfo.length());
-				}
-					
-				if(letInfo.charAt(0) != '\"') {
-					String[] commandInfo = EXCH.GetEXCM(Handler, letInfo);
-					if(commandInfo == null) {
-						String value = FormatLine(letInfo, RamVars, FileVars);
-						RamVars.put(let, value);
-					}
-					else {
-						String args = FormatLine(commandInfo[1], RamVars, FileVars);
-						try {
-							String response = EXCM.Run(Namespace + commandInfo[0] + ".excm", args);
-							RamVars.put(let, response);
-						}
-						catch(Exception ex) {
-							throw new FileNotFoundException("EXCM '" + commandInfo[0] + "' was not found");
+				case Instruction.WHILE:
+					u = Test(ins) > 0 ? u + 1 : ins.End;
+					break;
+				case Instruction.FOR:
+				case Instruction.FOREACH: {
+					if(loops == null)
+						loops = new Loop[code.length];
+
+					Loop loop = loops[u];
+					if(loop == null) {
+						loop = Begin(ins);
+						if(loop == null) {
+							u = ins.End;
+							break;
 						}
+						loops[u] = loop;
 					}
-				}
-				else {
-					String value = FormatLine(letInfo, RamVars, FileVars);
-					RamVars.put(let, value);
-				}
-			}
-			else if(input.length() >= 1 && input.toLowerCase().substring(0, 1).equals("$")) {
-				String var = "";
-				String varInfo = input.substring(1, input.length());
-				
-				while(varInfo.length() > 0) {
-					char pos = varInfo.charAt(0);
-					if(pos != ' ' && pos != '=') {
-						var += pos;
-						varInfo = varInfo.substring(1, varInfo.length());
-					}
-					else break;
-				}
-				
-				if(!RamVars.containsKey(var))
-					throw new NullPointerException("Syntax error: \"" + var + "\" is not a variable");
-					
-				while(varInfo.length() > 0 && varInfo.charAt(0) == ' ') {
-					varInfo = varInfo.substring(1, varInfo.length());
-				}
-				if(varInfo.length() == 0)
-					throw new NullPointerException("Syntax error: '=' expected");
-
-				if(varInfo.charAt(0) != '=')
-					throw new InvalidNameException("Syntax error: Variable name cannot contain spaces");
-					
-				varInfo = varInfo.substring(1, varInfo.length());
-				while(varInfo.length() > 0 && varInfo.charAt(0) == ' ') {
-					varInfo = varInfo.substring(1, varInfo.length());
-				}
-					
-				if(varInfo.charAt(0) != '\"') {
-					String[] commandInfo = EXCH.GetEXCM(Handler, varInfo);
-					if(commandInfo == null) {
-						String value = FormatLine(varInfo, RamVars, FileVars);
-						FileVars.put(var, value);
-					}
+
+					if(Next(ins, loop))
+						++u;
 					else {
-						String args = FormatLine(commandInfo[1], RamVars, FileVars);
-						try {
-							String response = EXCM.Run(Namespace + commandInfo[0] + ".excm", args);
-							FileVars.put(var, response);
-						}
-						catch(Exception ex) {
-							throw new FileNotFoundException("EXCM '" + commandInfo[0] + "' was not found");
-						}
+						loops[u] = null;
+						u = ins.End;
 					}
+					break;
 				}
-				else {
-					String value = FormatLine(varInfo, RamVars, FileVars);
-					FileVars.put(var, value);
-				}
+				default:
+					Execute(ins);
+					++u;
 			}
-			else if(input.length() == 8 && input.toLowerCase().substring(0, 8).equals("savevars")) {
-				try {
-					FileOutputStream fo = new FileOutputStream(Variables, false);
-					for(Map.Entry<String, String> entry : FileVars.entrySet()) 
-					{
-					    String key = entry.getKey();
-					    String value = entry.getValue();
-
-					    fo.write((byte)key.length());
-					    fo.write(key.getBytes(StandardCharsets.US_ASCII));
-					    fo.write((byte)value.length());
-					    fo.write(value.getBytes(StandardCharsets.US_ASCII));
-					}
-					fo.close();
-				}
-				catch(Exception ex) {
-					throw new FileNotFoundException("Invalid file or insufficient permissions");
-				}
+
+			if(profiler != null)
+				profiler.Line(ins.Line, start, bytes);
+		}
+
+		InIf = inIf;
+	}
+
+	/**
+	 * Runs a block of instructions.
+	 * 
+	 * @param block The instructions to run.
+	 */
+	private void Execute(List<Instruction> block) {
+		for(int u = 0; u < block.size(); u++)
+			Execute(block.get(u));
+	}
+
+	/**
+	 * Runs an instruction. Exceptions are reported, and do not stop the script.
+	 * 
+	 * @param ins The instruction to run.
+	 *
+	 * @since 1.0
+	 */
+	public void Execute(Instruction ins) {
+		if(ins.Type == Instruction.IF) {
+			int condition = Test(ins);
+			if(condition < 0)
+				return;
+
+			boolean inIf = InIf;
+			InIf = true;
+			try {
+				Execute(condition > 0 ? ins.Then : ins.Else);
 			}
-			else if(input.length() == 8 && input.toLowerCase().substring(0, 8).equals("loadvars")) {
-				try {
-					FileInputStream fi = new FileInputStream(Variables);
-					byte[] key;
-					byte[] value;
-					byte x = (byte)fi.read();
-					while(x > -1) {
-						key = new byte[x];
-						fi.read(key);
-						value = new byte[(byte)fi.read()];
-						fi.read(value);
-						FileVars.put(new String(key, StandardCharsets.US_ASCII), new String(value, StandardCharsets.US_ASCII));
-						x = (byte)fi.read();
-					}
-					fi.close();
-				}
-				catch(Exception ex) {
-					throw new FileNotFoundException(ex + ": Invalid file or insufficient permissions");
-				}
+			finally {
+				InIf = inIf;
 			}
-			else if(input.length() == 9 && input.toLowerCase().substring(0, 9).equals("clearvars")) {
-				FileVars.clear();
-				new File(Variables).delete();
+			return;
+		}
+		if(ins.Type == Instruction.WHILE) {
+			while(Test(ins) > 0)
+				Execute(ins.Then);
+			return;
+		}
+		if(ins.Type == Instruction.FOR || ins.Type == Instruction.FOREACH) {
+			Loop loop = Begin(ins);
+			while(loop != null && Next(ins, loop))
+				Execute(ins.Then);
+			return;
+		}
+		if(ins.Type == Instruction.JUMP)
+			return;
+
+		try {
+			if(ins.Type == Instruction.SET_RAM || ins.Type == Instruction.SET_FILE) {
+				if(SlotMap.Get(RamVars, ins.Slot) == null)
+					throw new NullPointerException("Syntax error: \"" + ins.Name + "\" is not a variable");
 			}
-			else if(input.length() > 0) {
-				String[] commandInfo = EXCH.GetEXCM(Handler, input);
-				if(commandInfo == null)
-					throw new NullPointerException("Command \"" + input.split(" ")[0] + "\" has no alias");
-				String args = FormatLine(commandInfo[1], RamVars, FileVars);
-				try {
-					String response = EXCM.Run(Namespace + commandInfo[0] + ".excm", args);
-					if(!response.isEmpty())
-						System.out.println(response);
+			if(ins.Error != null)
+				throw ins.Error;
+
+			switch(ins.Type) {
+				case Instruction.EXCH:
+					Handler = ins.Value;
+					Namespace = NamespaceOf(FolderOf(Handler));
+					break;
+				case Instruction.EXVR:
+					Variables = ins.Value;
+					variablesFile = null;
+					break;
+				case Instruction.LET:
+				case Instruction.SET_RAM:
+					SlotMap.Put(RamVars, ins.Slot, ins.Value == null ? "" : Evaluate(ins));
+					break;
+				case Instruction.VAR:
+				case Instruction.SET_FILE: {
+					String value = ins.Value == null ? "" : Evaluate(ins);
+					SlotMap.Put(FileVars, ins.Slot, value);
+					PutVar(ins.Name, value);
+					break;
 				}
-				catch(Exception ex) {
-					throw new FileNotFoundException("EXCM \"" + commandInfo[0] + "\" was not found");
+				case Instruction.SAVEVARS:
+					SaveVars();
+					break;
+				case Instruction.LOADVARS:
+					LoadVars();
+					break;
+				case Instruction.CLEARVARS:
+					FileVars.clear();
+					variablesFile = null;
+					EXVR.Delete(Variables);
+					break;
+				case Instruction.COMMAND: {
+					String[] commandInfo = Resolve(ins.Value);
+					if(commandInfo == null)
+						throw new NullPointerException("Command \"" + ins.Value.split(" ")[0] + "\" has no alias");
+					String args = Format(commandInfo[1]);
+					try {
+						String response = RunEXCM(commandInfo[0], args);
+						if(!response.isEmpty())
+							Output.println(response);
+					}
+					catch(Exception ex) {
+						if(WorkerFailed(ex))
+							throw ex;
+						throw new FileNotFoundException("EXCM \"" + commandInfo[0] + "\" was not found");
+					}
+					break;
 				}
+				case Instruction.PIPELINE:
+					RunPipeline(ins);
+					break;
 			}
 		}
-		catch(ClassNotFoundException ex) {
-			System.out.println("Exception: " + ex + ": The Handler \"" + Handler + "\" was not found");
+		catch(Exception ex) {
+			Report(ex);
+		}
+	}
+
+	/**
+	 * Evaluates the condition of an IF instruction. Exceptions are reported, and do not stop the script.
+	 * 
+	 * @param ins The IF instruction.
+	 * 
+	 * @return 1 if the condition is true, 0 if it is false, and -1 if it could not be evaluated.
+	 *
+	 * @since 1.0
+	 */
+	public int Test(Instruction ins) {
+		try {
+			if(ins.Error != null)
+				throw ins.Error;
+
+			Profiler profiler = Profiler;
+			if(profiler == null)
+				return ins.Condition.Evaluate(RamVars, FileVars) ? 1 : 0;
+
+			long bytes = profiler.Allocated();
+			long start = System.nanoTime();
+			try {
+				return ins.Condition.Evaluate(RamVars, FileVars) ? 1 : 0;
+			}
+			finally {
+				profiler.Call("Condition", start, bytes);
+			}
 		}
 		catch(Exception ex) {
-			System.out.println("Exception: " + ex);
+			Report(ex);
+			return -1;
 		}
-    }
-    
-    /**
-     * Runs an EXMY Script.
-     * 
-     * @param scriptFile The EXMY Script to run.
-     *
+	}
+
+	/**
+	 * Starts a FOR or FOREACH loop, by evaluating its range or its value. Exceptions are reported, and do not stop
+	 * the script.
+	 * 
+	 * @param ins The FOR or FOREACH instruction.
+	 * 
+	 * @return The state of the loop, or null if the loop could not be started.
+	 *
 	 * @since 1.0
-     */
-	public void Run(String scriptFile) {
-		if(Handler.isEmpty()) {
-			String scriptPath = Exom.Utils.StringUtils.FolderName(scriptFile);
-			if(scriptPath.equals(scriptFile)) {
-				Namespace = "excm/"; 
-				Handler = "handler.exch";
+	 */
+	public Loop Begin(Instruction ins) {
+		try {
+			if(ins.Error != null)
+				throw ins.Error;
+
+			Loop loop = new Loop();
+			if(ins.Type == Instruction.FOREACH) {
+				String value = Evaluate(ins);
+				loop.Items = value.isEmpty() ? new String[0] : value.split("\\r?\\n");
 			}
 			else {
-				Namespace = scriptPath + "excm/";
-				Handler = scriptPath + "Handler.exch";
+				loop.From = Double.parseDouble(StringUtils.Trim(Evaluate(ins.Operands[0])));
+				loop.To = Double.parseDouble(StringUtils.Trim(Evaluate(ins.Operands[1])));
+				loop.Step = ins.Operands.length > 2 ? Double.parseDouble(StringUtils.Trim(Evaluate(ins.Operands[2]))) : 1;
+				if(loop.Step == 0 || Double.isNaN(loop.Step))
+					throw new IllegalArgumentException("The step of \"for\" cannot be 0");
 			}
+			return loop;
 		}
-		
-		if(Variables.isEmpty()) {
-			String scriptPath = Exom.Utils.StringUtils.FolderName(scriptFile);
-			if(scriptPath.equals(scriptFile)) {
-				Variables = "variables.exvr";
+		catch(Exception ex) {
+			Report(ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Starts the next iteration of a FOR or FOREACH loop, and assigns the loop variable.
+	 * 
+	 * @param ins The FOR or FOREACH instruction.
+	 * @param loop The state of the loop.
+	 * 
+	 * @return Whether or not the loop has another iteration.
+	 *
+	 * @since 1.0
+	 */
+	public boolean Next(Instruction ins, Loop loop) {
+		String value;
+
+		if(ins.Type == Instruction.FOREACH) {
+			if(loop.Index >= loop.Items.length)
+				return false;
+			value = loop.Items[loop.Index++];
+		}
+		else {
+			double number = loop.From + loop.Index * loop.Step;
+			if(loop.Step > 0 ? number > loop.To : number < loop.To)
+				return false;
+			++loop.Index;
+
+			if(number == Math.rint(number) && Math.abs(number) < 1e15)
+				value = Long.toString((long) number);
+			else value = Double.toString(number);
+		}
+
+		SlotMap.Put(RamVars, ins.Slot, value);
+		return true;
+	}
+
+	/**
+	 * Reports an exception thrown by an instruction.
+	 * 
+	 * @param ex The exception.
+	 */
+	private void Report(Exception ex) {
+		++Errors;
+		if(ex instanceof ClassNotFoundException)
+			Output.println("Exception: " + ex + ": The Handler \"" + Handler + "\" was not found");
+		else Output.println("Exception: " + ex);
+	}
+
+	/**
+	 * Evaluates the value of a declaration, assignment or loop. Values that do not start with a string are run as
+	 * commands, if the EXCH has an alias for them.
+	 * 
+	 * @param ins The declaration, assignment or loop.
+	 * 
+	 * @return The evaluated value.
+	 * 
+	 * @throws Exception 
+	 */
+	private String Evaluate(Instruction ins) throws Exception {
+		if(ins.Template != null)
+			return ins.Template.Render(RamVars, FileVars);
+
+		String[] commandInfo = Resolve(ins.Value);
+		if(commandInfo != null) {
+			String args = Format(commandInfo[1]);
+			try {
+				return RunEXCM(commandInfo[0], args);
 			}
-			else
-			{
-				Variables = scriptPath + "variables.exvr";
+			catch(Exception ex) {
+				if(WorkerFailed(ex))
+					throw ex;
+				throw new FileNotFoundException("EXCM '" + commandInfo[0] + "' was not found");
 			}
 		}
-		
+		return Format(ins.Value);
+	}
+
+	/**
+	 * Finds the EXCM of a command in the EXCH file, and records the time it takes when profiling.
+	 * 
+	 * @param command The command.
+	 * 
+	 * @return The EXCM name and its arguments, or null if the EXCH has no alias for the command.
+	 * 
+	 * @throws Exception 
+	 */
+	private String[] Resolve(String command) throws Exception {
+		Profiler profiler = Profiler;
+		if(profiler == null)
+			return Lookup(command);
+
+		long bytes = profiler.Allocated();
+		long start = System.nanoTime();
 		try {
-			Source = new Scanner(new FileReader(scriptFile));
-			String input;
-			while(Source.hasNextLine()) {
-				input = Source.nextLine();
-				Handle(input);
+			return Lookup(command);
+		}
+		finally {
+			profiler.Call("EXCH", start, bytes);
+		}
+	}
+
+	/**
+	 * Finds the EXCM of a command. The EXCM of each verb is cached, until the Handler is switched or its file
+	 * changes. The arguments are the rest of the command, without trailing spaces, as generated EXCH files split them.
+	 * 
+	 * @param command The command.
+	 * 
+	 * @return The EXCM name and its arguments, or null if the EXCH has no alias for the command.
+	 * 
+	 * @throws Exception 
+	 */
+	private String[] Lookup(String command) throws Exception {
+		long modified = new File(Handler).lastModified();
+		if(modified != resolvedModified || !Handler.equals(resolvedHandler)) {
+			resolved.clear();
+			resolvedHandler = Handler;
+			resolvedModified = modified;
+		}
+
+		int end = command.indexOf(' ');
+		if(end < 0)
+			end = command.length();
+		String verb = command.substring(0, end);
+
+		String excm = resolved.get(verb);
+		if(excm == null && !resolved.containsKey(verb)) {
+			String[] commandInfo = EXCH.GetEXCM(Handler, verb);
+			excm = commandInfo == null ? null : commandInfo[0];
+			resolved.put(verb, excm);
+		}
+		if(excm == null)
+			return null;
+
+		int last = command.length();
+		while(last > end && command.charAt(last - 1) == ' ')
+			--last;
+
+		return new String[] { excm, last > end ? command.substring(end + 1, last) : "" };
+	}
+
+	/**
+	 * Runs an EXCM from the Namespace, on the Workers if they are set, and records the time it takes when profiling.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param args The arguments.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws Exception 
+	 */
+	private String RunEXCM(String name, String args) throws Exception {
+		Profiler profiler = Profiler;
+		if(profiler == null)
+			return Call(name, args);
+
+		long bytes = profiler.Allocated();
+		long start = System.nanoTime();
+		try {
+			return Call(name, args);
+		}
+		finally {
+			profiler.Call("EXCM " + name, start, bytes);
+		}
+	}
+
+	/**
+	 * Returns whether or not an EXCM failed because its worker stopped or timed out. Such failures are reported as
+	 * they are, while every other failure means the EXCM was not found.
+	 * 
+	 * @param ex The failure.
+	 * 
+	 * @return Whether or not the worker failed.
+	 */
+	private boolean WorkerFailed(Exception ex) {
+		return Workers != null && (ex instanceof TimeoutException || ex instanceof IOException);
+	}
+
+	/**
+	 * Runs an EXCM from the Namespace, on the Workers if they are set.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param args The arguments.
+	 * 
+	 * @return The response of the EXCM.
+	 * 
+	 * @throws Exception 
+	 */
+	private String Call(String name, String args) throws Exception {
+		EXCMWorkerPool workers = Workers;
+		return workers == null ? EXCM.Run(Namespace, name, args) : workers.Run(Namespace, name, args);
+	}
+
+	/**
+	 * Runs the commands of a PIPELINE instruction concurrently. Each command reads the output of the previous one
+	 * through a bounded Pipe, and the output of the last command is printed. The commands are resolved and formatted
+	 * before any of them runs.
+	 * 
+	 * @param ins The PIPELINE instruction.
+	 * 
+	 * @throws Exception The exception of the first command which failed.
+	 */
+	private void RunPipeline(Instruction ins) throws Exception {
+		int count = ins.Operands.length;
+		String[] names = new String[count];
+		String[] args = new String[count];
+		for(int u = 0; u < count; u++) {
+			String command = ins.Operands[u].Value;
+			String[] commandInfo = Resolve(command);
+			if(commandInfo == null)
+				throw new NullPointerException("Command \"" + command.split(" ")[0] + "\" has no alias");
+			names[u] = commandInfo[0];
+			args[u] = Format(commandInfo[1]);
+		}
+
+		Profiler profiler = Profiler;
+		long bytes = profiler == null ? 0 : profiler.Allocated();
+		long start = System.nanoTime();
+
+		Pipe[] pipes = new Pipe[count - 1];
+		for(int u = 0; u < pipes.length; u++)
+			pipes[u] = new Pipe();
+		OutputWriter output = new OutputWriter(Output);
+		Exception[] failures = new Exception[count];
+
+		try {
+			List<Future<?>> stages = new ArrayList<Future<?>>();
+			for(int u = 0; u < count - 1; u++) {
+				int stage = u;
+				stages.add(Pipelines.submit(EXMYRunner.Captured(() -> {
+					failures[stage] = RunStage(names[stage], args[stage], stage == 0 ? null : pipes[stage - 1], pipes[stage], output);
+				})));
+			}
+			failures[count - 1] = RunStage(names[count - 1], args[count - 1], pipes[count - 2], null, output);
+
+			for(Future<?> stage : stages) {
+				try {
+					stage.get();
+				}
+				catch(ExecutionException ex) {
+					throw new InvocationTargetException(ex.getCause());
+				}
 			}
-			Source.close();
 		}
-		catch (Exception ex) {
-			System.out.println("Exception: " + ex);
+		finally {
+			if(profiler != null)
+				profiler.Call("Pipeline", start, bytes);
+		}
+
+		if(output.Last != -1 && output.Last != '\n')
+			Output.println();
+		Output.flush();
+
+		for(Exception ex : failures) {
+			if(ex != null)
+				throw ex;
+		}
+	}
+
+	/**
+	 * Runs one command of a pipeline, and closes its input and output when it finishes.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param args The arguments.
+	 * @param in The pipe to read from. Null for the first command.
+	 * @param out The pipe to write to. Null for the last command.
+	 * @param output The output of the pipeline.
+	 * 
+	 * @return The exception of the command, or null if it succeeded or its output was no longer read.
+	 */
+	private Exception RunStage(String name, String args, Pipe in, Pipe out, OutputStream output) {
+		InputStream input = in == null ? new ByteArrayInputStream(new byte[0]) : in.Input;
+		OutputStream target = out == null ? output : out.Output;
+		try {
+			EXCM.RunStream(Namespace, name, args, input, target);
+			return null;
+		}
+		catch(InvocationTargetException ex) {
+			if(out != null && out.IsReaderClosed())
+				return null;
+			return ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+		}
+		catch(IOException ex) {
+			if(out != null && out.IsReaderClosed())
+				return null;
+			return ex;
+		}
+		catch(Exception ex) {
+			return new FileNotFoundException("EXCM \"" + name + "\" was not found");
+		}
+		finally {
+			if(out != null)
+				out.CloseWriter();
+			if(in != null)
+				in.CloseReader();
+		}
+	}
+
+	/**
+	 * Represents the stream to which the last command of a pipeline writes. The Output is not closed, and the last
+	 * byte is kept, so the pipeline can end its output with a new line like commands do.
+	 */
+	private static class OutputWriter extends OutputStream {
+
+		/**
+		 * The stream to write to.
+		 */
+		private final PrintStream target;
+		/**
+		 * The last byte written, or -1 if nothing was written.
+		 */
+		volatile int Last = -1;
+
+		OutputWriter(PrintStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) {
+			target.write(b);
+			Last = b & 0xFF;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			target.write(b, off, len);
+			if(len > 0)
+				Last = b[off + len - 1] & 0xFF;
+		}
+
+		@Override
+		public void flush() {
+			target.flush();
 		}
 	}
+
+	/**
+	 * Formats a line with the variables, and records the time it takes when profiling.
+	 * 
+	 * @param line The line to format.
+	 * 
+	 * @return The formatted line.
+	 */
+	private String Format(String line) {
+		Profiler profiler = Profiler;
+		if(profiler == null)
+			return FormatLine(line, RamVars, FileVars);
+
+		long bytes = profiler.Allocated();
+		long start = System.nanoTime();
+		try {
+			return FormatLine(line, RamVars, FileVars);
+		}
+		finally {
+			profiler.Call("Format", start, bytes);
+		}
+	}
+
+	/**
+	 * Saves the File Variables to the Variables file. Only the variables which changed since the file was last
+	 * saved or loaded are written.
+	 * 
+	 * @throws FileNotFoundException 
+	 */
+	private void SaveVars() throws FileNotFoundException {
+		try {
+			EXVR.Open(Variables).Save(FileVars);
+		}
+		catch(Exception ex) {
+			throw new FileNotFoundException("Invalid file or insufficient permissions");
+		}
+	}
+
+	/**
+	 * Writes a File Variable to the Variables file. The record is committed in the background, together with the
+	 * records of the other assignments made before the commit starts. The file is opened once, until the path
+	 * changes.
+	 * 
+	 * @param name The name of the variable.
+	 * @param value The value.
+	 * 
+	 * @throws FileNotFoundException 
+	 */
+	private void PutVar(String name, String value) throws FileNotFoundException {
+		try {
+			if(variablesFile == null || !Variables.equals(variablesPath)) {
+				variablesFile = EXVR.Open(Variables);
+				variablesPath = Variables;
+			}
+			variablesFile.Put(name, value);
+			variablesFile.CommitLater();
+		}
+		catch(Exception ex) {
+			variablesFile = null;
+			throw new FileNotFoundException(ex + ": Invalid file or insufficient permissions");
+		}
+	}
+
+	/**
+	 * Loads the File Variables from the Variables file.
+	 * 
+	 * @throws FileNotFoundException 
+	 */
+	private void LoadVars() throws FileNotFoundException {
+		try {
+			EXVR.Open(Variables).Load(FileVars);
+		}
+		catch(Exception ex) {
+			throw new FileNotFoundException(ex + ": Invalid file or insufficient permissions");
+		}
+	}
+
+	/**
+	 * Returns the folder of a file, ending with a separator. If the path has no folder, an empty string is returned.
+	 * 
+	 * @param file The path to the file.
+	 * 
+	 * @return The folder of the file.
+	 */
+	private static String FolderOf(String file) {
+		Path parent = Paths.get(file).getParent();
+		return parent == null ? "" : parent.toString() + File.separator;
+	}
+	
+	/**
+	 * Returns the namespace of a folder: its "excm" directory, or its "excm.excb" bundle if it has no such directory.
+	 * 
+	 * @param folder The folder, ending with a separator. Empty for the working directory.
+	 * 
+	 * @return The namespace.
+	 *
+	 * @since 1.0
+	 */
+	public static String NamespaceOf(String folder) {
+		if(!new File(folder + "excm").isDirectory() && new File(folder + "excm.excb").isFile())
+			return folder + "excm.excb";
+		return folder + "excm/";
+	}
 	
 	/**
-	 * Formats a line of EXMY Script.
+	 * Formats a line of EXMY Script. The line is compiled to a Template once, and cached.
 	 * 
 	 * @param line The line to format.
 	 * @param ram The map of RAM Variables.
@@ -502,169 +1029,6 @@ public class EXMY {
 	 * @since 1.0
 	 */
 	public static String FormatLine(String line, Map<String, String> ram, Map<String, String> file) {
-		try {
-			boolean mode = false;
-			boolean esc = false;
-			boolean before = false;
-			String fin = "";
-			String var = "";
-			
-			for(int u = 0; u < line.length(); u++) {
-				if(u > 0 && line.charAt(u - 1) != '\\')
-					esc = false;
-				
-				char c = line.charAt(u);
-				
-				if(c == '\\') {
-					esc = !esc;
-					if(!esc) {
-						if(!mode)
-							throw new Exception("Syntax error: '\\\\'");
-						else fin += "\\";
-					}
-				}
-				else if(c == '\"') {
-					if(!esc) {
-						mode = !mode;
-						if(!mode) {
-							before = true;	
-						}
-						else if(var.length() > 0) {
-							int index = 0;
-							if(before) {
-								if(var.charAt(index) != '+')
-									throw new Exception("Syntax error: '+' expected between string and variable");
-								index++;
-							}
-							else {
-								if(var.charAt(index) == '+')
-									throw new Exception("Syntax error: '+' was not expected");
-							}
-							if(var.charAt(var.length() - 1) != '+')
-								throw new Exception("Syntax error: '+' expected between variable and string");
-							
-							if(var.charAt(index) == '*') {
-								index++;
-								String varName = "";
-								for(int l = index; l < var.length(); l++) {
-									char current = var.charAt(l);
-									int code = (int) current;
-									if(code < 48 || (code > 57 && code < 65) || (code > 90 && code < 97) || code > 122)
-										break;
-									varName += current;
-								}
-								if(varName.length() == 0)
-									throw new Exception("Syntax error: \"\" is not a variable");
-
-								if(!ram.containsKey(varName))
-									throw new Exception("Syntax error: \"" + varName + "\" is not a variable");
-								fin += ram.get(varName);
-							}
-							else if(var.charAt(index) == '$') {
-								index++;
-								int end = index;
-								String varName = "";
-								for(int l = index; l < var.length(); l++) {
-									int code = (int) var.charAt(l);
-									if(code < 48 || (code > 57 && code < 65) || (code > 90 && code < 97) || code > 122)
-										break;
-									end++;
-								}
-								if(end == index)
-									throw new Exception("Syntax error: \"\" is not a variable");
-								if(var.charAt(var.length() - 1) != '+')
-									throw new Exception("Syntax error: '+' expected between variable and string");
-								varName = var.substring(index, end);
-								if(!file.containsKey(varName))
-									throw new Exception("Syntax error: \"" + varName + "\" is not a variable");
-								fin += file.get(varName);
-							}
-							else throw new Exception("Syntax error: expected * or $");		
-							var = "";
-						}
-					}
-					else {
-						if(!mode)
-							throw new Exception("Syntax error: '\\\"'");
-						else fin += "\"";
-					}
-				}
-				else if(mode) {
-					if(esc) {
-						if(c == 'n')
-							fin += "\n";
-						else if(c == 'r')
-							fin += "\r";
-						else if(c == 'b')
-							fin += "\b";
-						else if(c == 't')
-							fin += "\t";
-						else if(c == 'f')
-							fin += "\f";
-						else throw new Exception("Syntax error: '\\" + c + "' is not a valid escape");
-					}
-					else fin += c;
-				}
-				else {
-					if(c != ' ')
-						var += c;
-				}
-			}
-			
-			if(mode)
-				throw new Exception("Syntax error: expected \" at end of string");
-			if(var.length() > 0) {
-				int index = 0;
-				if(before) {
-					if(var.charAt(index) != '+')
-						throw new Exception("Syntax error: '+' expected between string and variable");
-					index++;
-				}
-				else {
-					if(var.charAt(index) == '+')
-						throw new Exception("Syntax error: '+' was not expected");
-				}
-				
-				if(var.charAt(index) == '*') {
-					index++;
-					int end = index;
-					String varName = "";
-					for(int l = index; l < var.length(); l++) {
-						int code = (int) var.charAt(l);
-						if(code < 48 || (code > 57 && code < 65) || (code > 90 && code < 97) || code > 122)
-							break;
-						end++;
-					}
-					if(end == index)
-						throw new Exception("Syntax error: \"\" is not a variable");
-					varName = var.substring(index, end);
-					if(!ram.containsKey(varName))
-						throw new Exception("Syntax error: \"" + varName + "\" is not a variable");
-					fin += ram.get(varName);
-				}
-				else if(var.charAt(index) == '$') {
-					index++;
-					int end = index;
-					String varName = "";
-					for(int l = index; l < var.length(); l++) {
-						int code = (int) var.charAt(l);
-						if(code < 48 || (code > 57 && code < 65) || (code > 90 && code < 97) || code > 122)
-							break;
-						end++;
-					}
-					if(end == index)
-						throw new Exception("Syntax error: \"\" is not a variable");
-					varName = var.substring(index, end);
-					if(!file.containsKey(varName))
-						throw new Exception("Syntax error: \"" + varName + "\" is not a variable");
-					fin += file.get(varName);
-				}
-				else throw new Exception("Syntax error: expected * or $");
-			}
-			return fin;
-		}
-		catch(Exception ex) {
-			throw new NullPointerException(ex.getMessage());
-		}
+		return Template.Compile(line).Render(ram, file);
 	}
 }
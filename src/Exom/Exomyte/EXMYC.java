@@ -0,0 +1,356 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.naming.InvalidNameException;
+
+/**
+ * Contains methods used for reading and writing EXMYC (compiled EXMY Script) files.
+ * 
+ * An EXMYC file starts with "EXMC", the version, and the SHA256 hash of the script it was compiled from. It is
+ * followed by the instructions of the script, with their compiled templates and syntax errors. Handlers are not
+ * resolved in advance, since "--exch" can switch the handler while the script runs.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXMYC {
+
+	/**
+	 * The version of the files written by this class.
+	 *
+	 * @since 1.0
+	 */
+	public static final byte VERSION = 4;
+
+	/**
+	 * The magic of EXMYC files.
+	 */
+	private static final byte[] MAGIC = { 'E', 'X', 'M', 'C' };
+
+	/**
+	 * Instruction flags.
+	 */
+	private static final int NAME = 1;
+	private static final int VALUE = 2;
+	private static final int TEMPLATE = 4;
+	private static final int ERROR = 8;
+	private static final int OPERANDS = 16;
+
+	/**
+	 * Syntax error kinds. Only the exceptions which the parser reports are written.
+	 */
+	private static final int NULL_POINTER = 1;
+	private static final int INVALID_NAME = 2;
+	private static final int NO_SUCH_ELEMENT = 3;
+	private static final int STRING_INDEX = 4;
+
+	/**
+	 * Reads a compiled script from an EXMYC file.
+	 * 
+	 * @param file The path to the EXMYC file.
+	 * @param hash The SHA256 hash of the script, as a hex string.
+	 * 
+	 * @return The compiled script, or null if the file does not exist, is invalid, or was compiled from another
+	 * script.
+	 *
+	 * @since 1.0
+	 */
+	public static Script Read(String file, String hash) {
+		try {
+			File compiled = new File(file);
+			if(!compiled.isFile())
+				return null;
+
+			ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(compiled.toPath()));
+			for(byte b : MAGIC) {
+				if(data.get() != b)
+					return null;
+			}
+			if(data.get() != VERSION)
+				return null;
+
+			byte[] fileHash = new byte[32];
+			data.get(fileHash);
+			if(!Exom.Utils.ByteUtils.ToHex(fileHash).equalsIgnoreCase(hash))
+				return null;
+
+			List<Instruction> instructions = ReadBlock(data);
+			if(data.hasRemaining())
+				return null;
+
+			return new Script(instructions, hash);
+		}
+		catch(Exception ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a compiled script to an EXMYC file. The file is replaced atomically. Failures are ignored, since the
+	 * script can always be compiled again.
+	 * 
+	 * @param script The compiled script. Its hash must be set.
+	 * @param file The path to the EXMYC file.
+	 * 
+	 * @return Whether or not the file was written.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean Write(Script script, String file) {
+		File temp = null;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			out.write(MAGIC);
+			out.write(VERSION);
+			for(int u = 0; u < 64; u += 2)
+				out.write(Integer.parseInt(script.Hash.substring(u, u + 2), 16));
+			WriteBlock(out, script.Instructions);
+
+			File target = new File(file);
+			temp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+			Files.write(temp.toPath(), out.toByteArray());
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(IOException ex) {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		}
+		catch(Exception ex) {
+			if(temp != null)
+				temp.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a block of instructions.
+	 */
+	private static void WriteBlock(ByteArrayOutputStream out, List<Instruction> block) {
+		WriteVarint(out, block.size());
+		for(Instruction ins : block)
+			WriteInstruction(out, ins);
+	}
+
+	/**
+	 * Writes an instruction, and the blocks inside it.
+	 */
+	private static void WriteInstruction(ByteArrayOutputStream out, Instruction ins) {
+		Template template = ins.Condition != null ? ins.Condition.GetTemplate() : ins.Template;
+
+		int flags = 0;
+		if(ins.Name != null)
+			flags |= NAME;
+		if(ins.Value != null)
+			flags |= VALUE;
+		if(template != null)
+			flags |= TEMPLATE;
+		if(ins.Error != null)
+			flags |= ERROR;
+		if(ins.Operands != null)
+			flags |= OPERANDS;
+
+		out.write(ins.Type);
+		out.write(flags);
+		WriteVarint(out, ins.Line);
+
+		if(ins.Name != null)
+			WriteString(out, ins.Name);
+		if(ins.Value != null)
+			WriteString(out, ins.Value);
+		if(template != null) {
+			WriteVarint(out, template.Types.length);
+			for(int u = 0; u < template.Types.length; u++) {
+				out.write(template.Types[u]);
+				WriteString(out, template.Texts[u]);
+			}
+		}
+		if(ins.Error != null) {
+			out.write(ErrorKind(ins.Error));
+			WriteString(out, ins.Error.getMessage() == null ? "" : ins.Error.getMessage());
+		}
+		if(ins.Operands != null) {
+			WriteVarint(out, ins.Operands.length);
+			for(Instruction operand : ins.Operands)
+				WriteInstruction(out, operand);
+		}
+
+		if(ins.Then != null)
+			WriteBlock(out, ins.Then);
+		if(ins.Else != null)
+			WriteBlock(out, ins.Else);
+	}
+
+	/**
+	 * Reads a block of instructions.
+	 */
+	private static List<Instruction> ReadBlock(ByteBuffer data) {
+		int count = ReadVarint(data);
+		List<Instruction> block = new ArrayList<Instruction>(Math.min(count, data.remaining()));
+		for(int u = 0; u < count; u++)
+			block.add(ReadInstruction(data));
+		return block;
+	}
+
+	/**
+	 * Reads an instruction, and the blocks inside it.
+	 */
+	private static Instruction ReadInstruction(ByteBuffer data) {
+		int type = data.get();
+		int flags = data.get();
+		Instruction ins = new Instruction(type, ReadVarint(data));
+
+		if((flags & NAME) != 0) {
+			ins.Name = ReadString(data);
+			ins.Slot = SlotMap.Slot(ins.Name);
+		}
+		if((flags & VALUE) != 0)
+			ins.Value = ReadString(data);
+		if((flags & TEMPLATE) != 0) {
+			int count = ReadVarint(data);
+			int[] types = new int[count];
+			String[] texts = new String[count];
+			for(int u = 0; u < count; u++) {
+				types[u] = data.get();
+				texts[u] = ReadString(data);
+			}
+
+			Template template = new Template(types, texts);
+			if(type == Instruction.IF || type == Instruction.WHILE)
+				ins.Condition = Condition.Compile(ins.Value, template);
+			else ins.Template = template;
+		}
+		if((flags & ERROR) != 0) {
+			int kind = data.get();
+			ins.Error = Error(kind, ReadString(data));
+		}
+		if((flags & OPERANDS) != 0) {
+			ins.Operands = new Instruction[ReadVarint(data)];
+			for(int u = 0; u < ins.Operands.length; u++)
+				ins.Operands[u] = ReadInstruction(data);
+		}
+
+		if(ins.Then != null)
+			ins.Then.addAll(ReadBlock(data));
+		if(ins.Else != null)
+			ins.Else.addAll(ReadBlock(data));
+
+		return ins;
+	}
+
+	/**
+	 * Returns the kind of a syntax error.
+	 */
+	private static int ErrorKind(Exception error) {
+		Class<?> type = error.getClass();
+		if(type == NullPointerException.class)
+			return NULL_POINTER;
+		if(type == InvalidNameException.class)
+			return INVALID_NAME;
+		if(type == NoSuchElementException.class)
+			return NO_SUCH_ELEMENT;
+		if(type == StringIndexOutOfBoundsException.class)
+			return STRING_INDEX;
+		throw new IllegalArgumentException("The syntax error " + type.getName() + " cannot be written");
+	}
+
+	/**
+	 * Creates a syntax error of a kind.
+	 */
+	private static Exception Error(int kind, String message) {
+		switch(kind) {
+			case NULL_POINTER:
+				return new NullPointerException(message);
+			case INVALID_NAME:
+				return new InvalidNameException(message);
+			case NO_SUCH_ELEMENT:
+				return new NoSuchElementException(message);
+			case STRING_INDEX:
+				return new StringIndexOutOfBoundsException(message);
+			default:
+				throw new IllegalArgumentException("The syntax error kind " + kind + " is not valid");
+		}
+	}
+
+	/**
+	 * Writes a UTF-8 string, prefixed by its length.
+	 */
+	private static void WriteString(ByteArrayOutputStream out, String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		WriteVarint(out, bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Reads a UTF-8 string, prefixed by its length.
+	 */
+	private static String ReadString(ByteBuffer data) {
+		int length = ReadVarint(data);
+		if(length > data.remaining())
+			throw new BufferUnderflowException();
+
+		String string = new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+		data.position(data.position() + length);
+		return string;
+	}
+
+	/**
+	 * Writes an unsigned varint.
+	 */
+	private static void WriteVarint(ByteArrayOutputStream out, int value) {
+		while((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads an unsigned varint.
+	 */
+	private static int ReadVarint(ByteBuffer data) {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			byte b = data.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new BufferUnderflowException();
+	}
+}
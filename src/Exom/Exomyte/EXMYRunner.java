@@ -0,0 +1,380 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many EXMY Scripts in parallel, on a bounded pool of threads.
+ * 
+ * Each script runs on its own EXMY instance, with its own RAM and File Variables. The output of each script is
+ * captured, including what the EXCMs print to System.out while the script runs. Compiled scripts, templates,
+ * conditions and Variables files are shared between the scripts.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXMYRunner {
+
+	/**
+	 * The default number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public static int DefaultThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The output of the script which runs on the current thread. Null if the thread does not run a script.
+	 */
+	private static final ThreadLocal<PrintStream> Capture = new ThreadLocal<PrintStream>();
+	/**
+	 * The System.out stream, before it was routed to the captured outputs.
+	 */
+	private static PrintStream Original;
+	/**
+	 * The stream which routes System.out to the captured outputs. Null if System.out is not routed.
+	 */
+	private static PrintStream Router;
+	/**
+	 * The number of runs which need System.out to be routed.
+	 */
+	private static int Routes;
+
+	/**
+	 * The number of threads.
+	 */
+	private final int threads;
+
+	/**
+	 * Initializes a new instance of the EXMYRunner class, with the default number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public EXMYRunner() {
+		this(DefaultThreads);
+	}
+	/**
+	 * Initializes a new instance of the EXMYRunner class.
+	 * 
+	 * @param threads The number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public EXMYRunner(int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the EXMY Scripts of a list of paths. Directories are searched recursively for .exmy files, which are
+	 * sorted by path.
+	 * 
+	 * @param paths The files and directories.
+	 * 
+	 * @return The EXMY Scripts.
+	 * 
+	 * @throws IOException If a path does not exist.
+	 *
+	 * @since 1.0
+	 */
+	public static List<String> Find(String... paths) throws IOException {
+		List<String> scripts = new ArrayList<String>();
+
+		for(String path : paths) {
+			File file = new File(path);
+			if(file.isDirectory())
+				Find(file, scripts);
+			else if(file.isFile())
+				scripts.add(file.getPath());
+			else throw new IOException("The file '" + path + "' does not exist.");
+		}
+
+		return scripts;
+	}
+
+	/**
+	 * Adds the .exmy files of a directory, and of its subdirectories, to a list.
+	 * 
+	 * @param directory The directory.
+	 * @param scripts The list.
+	 */
+	private static void Find(File directory, List<String> scripts) {
+		File[] files = directory.listFiles();
+		if(files == null)
+			return;
+		Arrays.sort(files);
+
+		for(File file : files) {
+			if(file.isDirectory())
+				Find(file, scripts);
+			else if(file.getName().toLowerCase().endsWith(".exmy"))
+				scripts.add(file.getPath());
+		}
+	}
+
+	/**
+	 * Runs EXMY Scripts in parallel, and waits for all of them to finish.
+	 * 
+	 * @param scripts The EXMY Scripts to run.
+	 * 
+	 * @return The results of the scripts, in the same order as the scripts.
+	 * 
+	 * @throws InterruptedException 
+	 *
+	 * @since 1.0
+	 */
+	public List<Result> Run(List<String> scripts) throws InterruptedException {
+		Route();
+		try {
+			return RunAll(scripts);
+		}
+		finally {
+			Unroute();
+		}
+	}
+
+	/**
+	 * Runs EXMY Scripts in parallel, and waits for all of them to finish.
+	 */
+	private List<Result> RunAll(List<String> scripts) throws InterruptedException {
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, scripts.size())), r -> {
+			Thread thread = new Thread(r, "EXMY Runner " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+			List<Future<Result>> futures = new ArrayList<Future<Result>>();
+			for(String script : scripts) {
+				futures.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return RunScript(script);
+					}
+				}));
+			}
+
+			List<Result> results = new ArrayList<Result>();
+			for(int u = 0; u < futures.size(); u++) {
+				try {
+					results.add(futures.get(u).get());
+				}
+				catch(ExecutionException ex) {
+					results.add(new Result(scripts.get(u), "", 0, 0, ex.getCause()));
+				}
+			}
+			return results;
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs an EXMY Script on the current thread, and captures its output.
+	 * 
+	 * @param script The EXMY Script.
+	 * 
+	 * @return The result of the script.
+	 */
+	private static Result RunScript(String script) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream output = new PrintStream(buffer, true);
+		EXMY exmy = new EXMY();
+		exmy.Output = output;
+
+		Throwable failure = null;
+		long start = System.nanoTime();
+		Capture.set(output);
+		try {
+			exmy.Run(script);
+		}
+		catch(Throwable ex) {
+			failure = ex;
+		}
+		finally {
+			Capture.remove();
+		}
+		long time = System.nanoTime() - start;
+
+		output.flush();
+		return new Result(script, buffer.toString(), time, exmy.Errors, failure);
+	}
+
+	/**
+	 * Returns a task which runs with the captured output of the current thread, for tasks which run part of a
+	 * script on another thread.
+	 * 
+	 * @param task The task.
+	 * 
+	 * @return The task, or a task which captures the output of the task.
+	 */
+	static Runnable Captured(Runnable task) {
+		PrintStream capture = Capture.get();
+		if(capture == null)
+			return task;
+
+		return () -> {
+			Capture.set(capture);
+			try {
+				task.run();
+			}
+			finally {
+				Capture.remove();
+			}
+		};
+	}
+
+	/**
+	 * Routes System.out to the captured output of the script which runs on the current thread. Threads which do not
+	 * run a script print to the original System.out.
+	 */
+	private static synchronized void Route() {
+		if(Routes++ > 0)
+			return;
+
+		Original = System.out;
+		Router = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				Target().write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				Target().write(b, off, len);
+			}
+
+			@Override
+			public void flush() {
+				Target().flush();
+			}
+
+			private PrintStream Target() {
+				PrintStream capture = Capture.get();
+				return capture != null ? capture : Original;
+			}
+		}, true);
+		System.setOut(Router);
+	}
+
+	/**
+	 * Restores the original System.out, once no run needs it to be routed. If System.out was replaced by someone
+	 * else in the meantime, it is kept.
+	 */
+	private static synchronized void Unroute() {
+		if(--Routes > 0)
+			return;
+
+		if(System.out == Router)
+			System.setOut(Original);
+		Router = null;
+	}
+
+	/**
+	 * Represents the result of an EXMY Script run.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	public static class Result {
+
+		/**
+		 * The path to the EXMY Script.
+		 *
+		 * @since 1.0
+		 */
+		public final String Script;
+		/**
+		 * The captured output of the script.
+		 *
+		 * @since 1.0
+		 */
+		public final String Output;
+		/**
+		 * The wall time of the script, in nanoseconds.
+		 *
+		 * @since 1.0
+		 */
+		public final long Time;
+		/**
+		 * The number of exceptions reported by the script.
+		 *
+		 * @since 1.0
+		 */
+		public final int Errors;
+		/**
+		 * The exception which stopped the script. Null if the script was not stopped.
+		 *
+		 * @since 1.0
+		 */
+		public final Throwable Failure;
+
+		/**
+		 * Initializes a new instance of the Result class.
+		 * 
+		 * @param script The path to the EXMY Script.
+		 * @param output The captured output of the script.
+		 * @param time The wall time of the script, in nanoseconds.
+		 * @param errors The number of exceptions reported by the script.
+		 * @param failure The exception which stopped the script.
+		 *
+		 * @since 1.0
+		 */
+		public Result(String script, String output, long time, int errors, Throwable failure) {
+			Script = script;
+			Output = output;
+			Time = time;
+			Errors = errors;
+			Failure = failure;
+		}
+
+		/**
+		 * Returns whether or not the script reported exceptions, or was stopped by one.
+		 * 
+		 * @return Whether or not the script failed.
+		 *
+		 * @since 1.0
+		 */
+		public boolean Failed() {
+			return Errors > 0 || Failure != null;
+		}
+	}
+}
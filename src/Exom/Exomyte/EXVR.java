@@ -0,0 +1,969 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Represents an EXVR (Exom Variables) file, which stores File Variables.
+ * 
+ * Version 2 files start with "EXVR" and the version, followed by an append-only log of records. Each record sets or
+ * removes a variable, and has varint lengths and a CRC32 checksum. Saving appends records only for the variables that
+ * changed, and the records of concurrent saves are written and synced together. Single variables can also be set and
+ * committed in the background, so the records of many assignments are synced together. The latest record of each variable is
+ * indexed in memory, and values are read from a memory-mapped view of the file. When most of the file is made of old
+ * records, the file is compacted in the background.
+ * 
+ * Version 1 files (records of single byte lengths, keys and values) can still be read, and are rewritten as version 2
+ * files when they are saved.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXVR {
+
+	/**
+	 * The version of the files written by this class.
+	 *
+	 * @since 1.0
+	 */
+	public static final byte VERSION = 2;
+	/**
+	 * The minimum size of the old records, in bytes, for a file to be compacted.
+	 *
+	 * @since 1.0
+	 */
+	public static int CompactThreshold = 64 * 1024;
+
+	/**
+	 * The magic of version 2 files.
+	 */
+	private static final byte[] MAGIC = { 'E', 'X', 'V', 'R' };
+	/**
+	 * The size of the header of version 2 files.
+	 */
+	private static final int HEADER = MAGIC.length + 1;
+	/**
+	 * Record types.
+	 */
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+
+	/**
+	 * The open files, by canonical path.
+	 */
+	private static final Map<String, EXVR> Opened = new HashMap<String, EXVR>();
+	/**
+	 * The thread which compacts the files.
+	 */
+	private static final ExecutorService Compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "EXVR Compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+	/**
+	 * The thread which commits the records of the files in the background.
+	 */
+	private static final ExecutorService Committer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "EXVR Committer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(EXVR::CommitAll, "EXVR Shutdown"));
+	}
+
+	/**
+	 * The file.
+	 */
+	private final File file;
+	/**
+	 * The index of the latest value of each variable.
+	 */
+	private final Map<String, Entry> index;
+	/**
+	 * The records which were not written yet.
+	 */
+	private final ByteArrayOutputStream pending;
+	/**
+	 * The lock held while records are written and synced.
+	 */
+	private final Object commitLock;
+	/**
+	 * The channel of the file. Null if the file does not exist.
+	 */
+	private FileChannel channel;
+	/**
+	 * The memory-mapped view of the file. Null if the file is empty.
+	 */
+	private MappedByteBuffer mapped;
+	/**
+	 * The charset of the keys and values in the file.
+	 */
+	private Charset charset;
+	/**
+	 * Whether or not the file is a version 1 file.
+	 */
+	private boolean legacy;
+	/**
+	 * The size of the file, including the pending records.
+	 */
+	private long size;
+	/**
+	 * The size of the file that was synced.
+	 */
+	private long durable;
+	/**
+	 * The size of the old records in the file.
+	 */
+	private long garbage;
+	/**
+	 * Whether or not a compaction is scheduled.
+	 */
+	private boolean compacting;
+	/**
+	 * Whether or not a background commit is scheduled.
+	 */
+	private boolean committing;
+	/**
+	 * Whether or not the file was closed. Closed files are not committed.
+	 */
+	private boolean closed;
+	/**
+	 * The first failure of a background commit or compaction, which was not reported yet.
+	 */
+	private IOException failure;
+
+	/**
+	 * Initializes a new instance of the EXVR class, and reads the index of the file.
+	 * 
+	 * @param file The file.
+	 * 
+	 * @throws IOException 
+	 */
+	private EXVR(File file) throws IOException {
+		this.file = file;
+		index = new HashMap<String, Entry>();
+		pending = new ByteArrayOutputStream();
+		commitLock = new Object();
+		Open();
+	}
+
+	/**
+	 * Opens an EXVR file. Files are opened once, and shared.
+	 * 
+	 * @param path The path to the file.
+	 * 
+	 * @return The EXVR file.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static EXVR Open(String path) throws IOException {
+		File file = new File(path).getCanonicalFile();
+
+		synchronized(Opened) {
+			EXVR exvr = Opened.get(file.getPath());
+			if(exvr == null) {
+				exvr = new EXVR(file);
+				Opened.put(file.getPath(), exvr);
+			}
+			else exvr.Refresh();
+			return exvr;
+		}
+	}
+
+	/**
+	 * Deletes an EXVR file, and closes it if it is open.
+	 * 
+	 * @param path The path to the file.
+	 * 
+	 * @return Whether or not the file was deleted.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static boolean Delete(String path) throws IOException {
+		File file = new File(path).getCanonicalFile();
+
+		synchronized(Opened) {
+			EXVR exvr = Opened.remove(file.getPath());
+			if(exvr != null)
+				exvr.Close();
+
+			if(file.delete() || !file.isFile())
+				return true;
+
+			// The file cannot be deleted while a mapping of it is still alive (on Windows), so its variables are
+			// removed instead.
+			EXVR cleared = new EXVR(file);
+			Opened.put(file.getPath(), cleared);
+			for(String key : cleared.index.keySet().toArray(new String[0]))
+				cleared.Remove(key);
+			cleared.Commit();
+			return false;
+		}
+	}
+
+	/**
+	 * Loads the variables of the file into a map.
+	 * 
+	 * @param vars The map.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public synchronized void Load(Map<String, String> vars) throws IOException {
+		if(channel == null && index.isEmpty())
+			throw new FileNotFoundException(file.getPath() + " (No such file or directory)");
+
+		for(Map.Entry<String, Entry> entry : index.entrySet())
+			vars.put(entry.getKey(), Read(entry.getValue()));
+	}
+
+	/**
+	 * Returns the value of a variable.
+	 * 
+	 * @param key The name of the variable.
+	 * 
+	 * @return The value, or null if the file does not contain the variable.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public synchronized String Get(String key) throws IOException {
+		Entry entry = index.get(key);
+		return entry == null ? null : Read(entry);
+	}
+
+	/**
+	 * Saves the variables of a map. Only the variables which changed are written, and variables which are not in
+	 * the map are removed from the file.
+	 * 
+	 * @param vars The map.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public void Save(Map<String, String> vars) throws IOException {
+		synchronized(this) {
+			Rethrow();
+			for(Map.Entry<String, String> entry : vars.entrySet()) {
+				Entry old = index.get(entry.getKey());
+				String value = entry.getValue();
+				if(old == null || old.Hash != value.hashCode() || !Read(old).equals(value))
+					Put(entry.getKey(), value);
+			}
+
+			Iterator<String> keys = index.keySet().iterator();
+			while(keys.hasNext()) {
+				String key = keys.next();
+				if(!vars.containsKey(key)) {
+					garbage += index.get(key).Size;
+					keys.remove();
+					Append(REMOVE, key, null);
+				}
+			}
+		}
+
+		Commit();
+	}
+
+	/**
+	 * Sets a variable. The record is written by the next commit.
+	 * 
+	 * @param key The name of the variable.
+	 * @param value The value.
+	 * 
+	 * @throws IOException If a background commit or compaction failed since the last call.
+	 *
+	 * @since 1.0
+	 */
+	public synchronized void Put(String key, String value) throws IOException {
+		Rethrow();
+
+		Entry old = index.get(key);
+		if(old != null)
+			garbage += old.Size;
+
+		Entry entry = Append(PUT, key, value);
+		entry.Value = value;
+		index.put(key, entry);
+	}
+
+	/**
+	 * Removes a variable. The record is written by the next commit.
+	 * 
+	 * @param key The name of the variable.
+	 *
+	 * @since 1.0
+	 */
+	public synchronized void Remove(String key) {
+		Entry old = index.remove(key);
+		if(old != null) {
+			garbage += old.Size;
+			Append(REMOVE, key, null);
+		}
+	}
+
+	/**
+	 * Commits the pending records in the background. The records of all the calls made before the commit starts are
+	 * written and synced together. Records which are still pending when the process exits are committed by a
+	 * shutdown hook. If the commit fails, the records stay pending, and the failure is thrown by the next call to
+	 * Commit, Put or Save.
+	 *
+	 * @since 1.0
+	 */
+	public synchronized void CommitLater() {
+		if(committing || closed)
+			return;
+
+		committing = true;
+		Committer.submit(() -> {
+			synchronized(this) {
+				committing = false;
+			}
+			try {
+				Write();
+			}
+			catch(IOException ex) {
+				Fail(ex);
+			}
+		});
+	}
+
+	/**
+	 * Writes and syncs the pending records. If the records were written and synced by a concurrent commit, nothing
+	 * is written. If the records cannot be written, they stay pending.
+	 * 
+	 * @throws IOException If the records cannot be written, or if a background commit or compaction failed since the
+	 * last call.
+	 *
+	 * @since 1.0
+	 */
+	public void Commit() throws IOException {
+		synchronized(this) {
+			Rethrow();
+		}
+		Write();
+	}
+
+	/**
+	 * Writes and syncs the pending records, without throwing the failure of an earlier background commit.
+	 * 
+	 * @throws IOException 
+	 */
+	private void Write() throws IOException {
+		long end;
+		synchronized(this) {
+			if(closed)
+				return;
+			end = size;
+		}
+
+		synchronized(commitLock) {
+			byte[] batch;
+			long position;
+			boolean rewrite;
+
+			synchronized(this) {
+				if(closed || (durable >= end && channel != null))
+					return;
+
+				rewrite = legacy || channel == null;
+				if(rewrite) {
+					batch = null;
+					position = 0;
+				}
+				else {
+					batch = pending.toByteArray();
+					position = size - batch.length;
+					pending.reset();
+				}
+			}
+
+			if(rewrite) {
+				Compact();
+				return;
+			}
+
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(batch);
+				while(buffer.hasRemaining())
+					channel.write(buffer, position + buffer.position());
+				channel.force(false);
+			}
+			catch(IOException ex) {
+				synchronized(this) {
+					// The records are written again by the next commit, before the records added since.
+					byte[] later = pending.toByteArray();
+					pending.reset();
+					pending.write(batch, 0, batch.length);
+					pending.write(later, 0, later.length);
+				}
+				throw ex;
+			}
+
+			synchronized(this) {
+				durable = position + batch.length;
+				if(!compacting && garbage > CompactThreshold && garbage > size / 2) {
+					compacting = true;
+					Compactor.submit(() -> {
+						try {
+							Compact();
+						}
+						catch(IOException ex) {
+							Fail(ex);
+						}
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the file with only the latest value of each variable. The file is replaced atomically. The values
+	 * are copied while the file is locked, and the new file is written and synced without the lock, so variables can
+	 * be read and set meanwhile. The records added meanwhile are kept pending, and appended to the new file.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public void Compact() throws IOException {
+		synchronized(commitLock) {
+			ByteArrayOutputStream out;
+			Map<String, Entry> entries = new HashMap<String, Entry>();
+			long end;
+			int mark;
+			long collected;
+
+			synchronized(this) {
+				compacting = false;
+				if(closed)
+					return;
+
+				out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, size - garbage + HEADER));
+				out.write(MAGIC);
+				out.write(VERSION);
+
+				for(Map.Entry<String, Entry> entry : index.entrySet()) {
+					String value = Read(entry.getValue());
+					Entry written = Record(out, PUT, entry.getKey(), value);
+					written.Value = value;
+					entries.put(entry.getKey(), written);
+				}
+
+				end = size;
+				mark = pending.size();
+				collected = garbage;
+			}
+
+			File temp = new File(file.getPath() + ".tmp");
+			try(FileChannel tempChannel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+				while(buffer.hasRemaining())
+					tempChannel.write(buffer);
+				tempChannel.force(true);
+			}
+			catch(IOException ex) {
+				temp.delete();
+				throw ex;
+			}
+
+			synchronized(this) {
+				if(closed) {
+					temp.delete();
+					return;
+				}
+
+				Release();
+				try {
+					try {
+						Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					}
+					catch(IOException ex) {
+						Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+				catch(IOException ex) {
+					// The file cannot be replaced while a mapping of it is still alive (on Windows). The old file is
+					// kept, and compacted by a later commit.
+					temp.delete();
+					if(file.isFile())
+						channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+					throw ex;
+				}
+
+				// The records added since the values were copied follow the new records.
+				byte[] later = pending.toByteArray();
+				pending.reset();
+				pending.write(later, mark, later.length - mark);
+
+				long shift = out.size() - end;
+				Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+				while(it.hasNext()) {
+					Map.Entry<String, Entry> entry = it.next();
+					if(entry.getValue().Offset >= end)
+						entry.getValue().Offset += shift;
+					else entry.setValue(entries.get(entry.getKey()));
+				}
+
+				legacy = false;
+				charset = StandardCharsets.UTF_8;
+				durable = out.size();
+				size = durable + pending.size();
+				garbage -= collected;
+
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+				mapped = null;
+			}
+		}
+	}
+
+	/**
+	 * Closes the file. Pending records are discarded.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public synchronized void Close() throws IOException {
+		closed = true;
+		pending.reset();
+		Release();
+	}
+
+	/**
+	 * Commits the pending records of all the open files.
+	 */
+	private static void CommitAll() {
+		EXVR[] files;
+		synchronized(Opened) {
+			files = Opened.values().toArray(new EXVR[0]);
+		}
+		for(EXVR exvr : files) {
+			try {
+				exvr.Write();
+			}
+			catch(IOException ex) {
+				System.err.println("[Error] Cannot commit the variables of " + exvr.file.getPath() + ": " + ex.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Stores the failure of a background commit or compaction, unless an earlier failure was not reported yet.
+	 * 
+	 * @param ex The failure.
+	 */
+	private synchronized void Fail(IOException ex) {
+		if(failure == null)
+			failure = ex;
+	}
+
+	/**
+	 * Throws the failure of a background commit or compaction, if there is one. The failure is thrown once.
+	 * 
+	 * @throws IOException 
+	 */
+	private void Rethrow() throws IOException {
+		if(failure != null) {
+			IOException ex = failure;
+			failure = null;
+			throw ex;
+		}
+	}
+
+	/**
+	 * Closes the channel of the file, and drops the mapping. The mapping itself stays alive until it is collected.
+	 * 
+	 * @throws IOException 
+	 */
+	private void Release() throws IOException {
+		mapped = null;
+		if(channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Opens the file, and reads the index.
+	 * 
+	 * @throws IOException 
+	 */
+	private void Open() throws IOException {
+		index.clear();
+		pending.reset();
+		mapped = null;
+		garbage = 0;
+		legacy = false;
+		charset = StandardCharsets.UTF_8;
+
+		if(!file.isFile()) {
+			channel = null;
+			size = 0;
+			durable = 0;
+			return;
+		}
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		size = channel.size();
+		durable = size;
+		Map();
+
+		if(mapped == null)
+			return;
+
+		ByteBuffer data = mapped.duplicate();
+		boolean v2 = data.remaining() >= HEADER;
+		for(int u = 0; u < MAGIC.length && v2; u++)
+			v2 = data.get(u) == MAGIC[u];
+
+		if(v2 && data.get(MAGIC.length) == VERSION)
+			ReadRecords(data);
+		else if(v2)
+			throw new IOException("Unsupported EXVR version " + data.get(MAGIC.length));
+		else ReadLegacy(data);
+	}
+
+	/**
+	 * Opens the file again if it was changed outside of this instance.
+	 * 
+	 * @throws IOException 
+	 */
+	private synchronized void Refresh() throws IOException {
+		if(pending.size() > 0)
+			return;
+		if(channel == null ? file.isFile() : (!file.isFile() || file.length() != size)) {
+			Release();
+			Open();
+		}
+	}
+
+	/**
+	 * Reads the index from the records of a version 2 file. A damaged record at the end of the file, left by an
+	 * interrupted write, is removed.
+	 * 
+	 * @param data The data of the file.
+	 * 
+	 * @throws IOException 
+	 */
+	private void ReadRecords(ByteBuffer data) throws IOException {
+		CRC32 crc = new CRC32();
+		int position = HEADER;
+		int valid = HEADER;
+
+		while(position < data.limit()) {
+			int start = position;
+			try {
+				byte type = data.get(position++);
+				int keyLength = ReadVarint(data, position);
+				position += VarintSize(keyLength);
+				int keyOffset = position;
+				position += keyLength;
+
+				int valueLength = 0;
+				int valueOffset = position;
+				if(type == PUT) {
+					valueLength = ReadVarint(data, position);
+					position += VarintSize(valueLength);
+					valueOffset = position;
+					position += valueLength;
+				}
+				else if(type != REMOVE)
+					break;
+
+				if(position + 4 > data.limit() || position < 0)
+					break;
+
+				crc.reset();
+				ByteBuffer record = data.duplicate();
+				record.position(start).limit(position);
+				crc.update(record);
+				if((int) crc.getValue() != data.getInt(position))
+					break;
+				position += 4;
+
+				String key = Decode(data, keyOffset, keyLength);
+				Entry old = index.remove(key);
+				if(old != null)
+					garbage += old.Size;
+
+				if(type == PUT) {
+					Entry entry = new Entry(valueOffset, valueLength, position - start);
+					entry.Hash = Decode(data, valueOffset, valueLength).hashCode();
+					index.put(key, entry);
+				}
+				else garbage += position - start;
+				valid = position;
+			}
+			catch(IndexOutOfBoundsException ex) {
+				break;
+			}
+		}
+
+		if(valid < size) {
+			channel.truncate(valid);
+			channel.force(false);
+			size = valid;
+			durable = size;
+			Map();
+		}
+	}
+
+	/**
+	 * Reads the index from the records of a version 1 file. Lengths are read as unsigned bytes.
+	 * 
+	 * @param data The data of the file.
+	 */
+	private void ReadLegacy(ByteBuffer data) {
+		legacy = true;
+		charset = StandardCharsets.US_ASCII;
+
+		int position = 0;
+		while(position < data.limit()) {
+			int start = position;
+			int keyLength = data.get(position++) & 0xFF;
+			int keyOffset = position;
+			position += keyLength;
+			if(position >= data.limit())
+				break;
+
+			int valueLength = data.get(position++) & 0xFF;
+			int valueOffset = position;
+			position += valueLength;
+			if(position > data.limit())
+				break;
+
+			String key = Decode(data, keyOffset, keyLength);
+			Entry old = index.put(key, new Entry(valueOffset, valueLength, position - start));
+			if(old != null)
+				garbage += old.Size;
+			index.get(key).Hash = Decode(data, valueOffset, valueLength).hashCode();
+		}
+	}
+
+	/**
+	 * Adds a record to the pending records.
+	 * 
+	 * @param type The type of the record.
+	 * @param key The name of the variable.
+	 * @param value The value. Null for REMOVE records.
+	 * 
+	 * @return The index entry of the record, with offsets in the file.
+	 */
+	private Entry Append(byte type, String key, String value) {
+		long start = size - pending.size();
+		Entry entry = Record(pending, type, key, value);
+		entry.Offset += start;
+		size = start + pending.size();
+		return entry;
+	}
+
+	/**
+	 * Writes a record.
+	 * 
+	 * @param out The stream to write to.
+	 * @param type The type of the record.
+	 * @param key The name of the variable.
+	 * @param value The value. Null for REMOVE records.
+	 * 
+	 * @return The index entry of the record, with offsets in the stream.
+	 */
+	private static Entry Record(ByteArrayOutputStream out, byte type, String key, String value) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+
+		int size = 1 + VarintSize(keyBytes.length) + keyBytes.length;
+		if(valueBytes != null)
+			size += VarintSize(valueBytes.length) + valueBytes.length;
+
+		ByteBuffer record = ByteBuffer.allocate(size + 4);
+		record.put(type);
+		WriteVarint(record, keyBytes.length);
+		record.put(keyBytes);
+		int valueOffset = record.position();
+		if(valueBytes != null) {
+			WriteVarint(record, valueBytes.length);
+			valueOffset = record.position();
+			record.put(valueBytes);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 0, size);
+		record.putInt((int) crc.getValue());
+
+		Entry entry = new Entry(out.size() + valueOffset, valueBytes == null ? 0 : valueBytes.length, size + 4);
+		if(value != null)
+			entry.Hash = value.hashCode();
+		out.write(record.array(), 0, record.capacity());
+
+		return entry;
+	}
+
+	/**
+	 * Reads the value of an index entry.
+	 * 
+	 * @param entry The index entry.
+	 * 
+	 * @return The value.
+	 * 
+	 * @throws IOException 
+	 */
+	private String Read(Entry entry) throws IOException {
+		if(entry.Value != null)
+			return entry.Value;
+
+		if(mapped == null || entry.Offset + entry.Length > mapped.capacity())
+			Map();
+		return Decode(mapped, (int) entry.Offset, entry.Length);
+	}
+
+	/**
+	 * Maps the synced part of the file to memory.
+	 * 
+	 * @throws IOException 
+	 */
+	private void Map() throws IOException {
+		mapped = channel == null || durable == 0 ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, durable);
+		for(Entry entry : index.values()) {
+			if(entry.Offset + entry.Length <= durable)
+				entry.Value = null;
+		}
+	}
+
+	/**
+	 * Decodes a string from a buffer.
+	 */
+	private String Decode(ByteBuffer data, int offset, int length) {
+		if(data.hasArray())
+			return new String(data.array(), data.arrayOffset() + offset, length, charset);
+
+		byte[] bytes = new byte[length];
+		ByteBuffer view = data.duplicate();
+		view.position(offset);
+		view.get(bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Reads an unsigned varint from a buffer.
+	 */
+	private static int ReadVarint(ByteBuffer data, int position) {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			byte b = data.get(position++);
+			value |= (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new IndexOutOfBoundsException("Invalid varint");
+	}
+
+	/**
+	 * Writes an unsigned varint to a buffer.
+	 */
+	private static void WriteVarint(ByteBuffer data, int value) {
+		while((value & ~0x7F) != 0) {
+			data.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		data.put((byte) value);
+	}
+
+	/**
+	 * Returns the size of an unsigned varint.
+	 */
+	private static int VarintSize(int value) {
+		int size = 1;
+		while((value & ~0x7F) != 0) {
+			++size;
+			value >>>= 7;
+		}
+		return size;
+	}
+
+	/**
+	 * Represents the location of the latest value of a variable.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	private static class Entry {
+
+		/**
+		 * The offset of the value in the file.
+		 */
+		long Offset;
+		/**
+		 * The length of the value, in bytes.
+		 */
+		final int Length;
+		/**
+		 * The size of the record, in bytes.
+		 */
+		final int Size;
+		/**
+		 * The hash code of the value.
+		 */
+		int Hash;
+		/**
+		 * The value, while it is not mapped to memory.
+		 */
+		String Value;
+
+		Entry(long offset, int length, int size) {
+			Offset = offset;
+			Length = length;
+			Size = size;
+		}
+	}
+}
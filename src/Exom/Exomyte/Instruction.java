@@ -0,0 +1,252 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a compiled EXMY Script statement.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Instruction {
+
+	/**
+	 * Switches the EXCH file (--exch).
+	 *
+	 * @since 1.0
+	 */
+	public static final int EXCH = 0;
+	/**
+	 * Switches the Variables file (--exvr).
+	 *
+	 * @since 1.0
+	 */
+	public static final int EXVR = 1;
+	/**
+	 * Declares a RAM Variable (let).
+	 *
+	 * @since 1.0
+	 */
+	public static final int LET = 2;
+	/**
+	 * Declares a File Variable (var).
+	 *
+	 * @since 1.0
+	 */
+	public static final int VAR = 3;
+	/**
+	 * Assigns a RAM Variable (*x =).
+	 *
+	 * @since 1.0
+	 */
+	public static final int SET_RAM = 4;
+	/**
+	 * Assigns a File Variable ($x =).
+	 *
+	 * @since 1.0
+	 */
+	public static final int SET_FILE = 5;
+	/**
+	 * Saves the File Variables (savevars).
+	 *
+	 * @since 1.0
+	 */
+	public static final int SAVEVARS = 6;
+	/**
+	 * Loads the File Variables (loadvars).
+	 *
+	 * @since 1.0
+	 */
+	public static final int LOADVARS = 7;
+	/**
+	 * Clears the File Variables (clearvars).
+	 *
+	 * @since 1.0
+	 */
+	public static final int CLEARVARS = 8;
+	/**
+	 * Runs an EXCM and prints its response.
+	 *
+	 * @since 1.0
+	 */
+	public static final int COMMAND = 9;
+	/**
+	 * Runs one of two blocks depending on a condition (if/else/endif).
+	 *
+	 * @since 1.0
+	 */
+	public static final int IF = 10;
+	/**
+	 * Reports a syntax error.
+	 *
+	 * @since 1.0
+	 */
+	public static final int ERROR = 11;
+	/**
+	 * Jumps to another instruction of the instruction table. Added by the script at the end of blocks.
+	 *
+	 * @since 1.0
+	 */
+	public static final int JUMP = 12;
+	/**
+	 * Runs a block while a condition is true (while/endwhile).
+	 *
+	 * @since 1.0
+	 */
+	public static final int WHILE = 13;
+	/**
+	 * Runs a block for each number in a range (for x = a to b step c/endfor).
+	 *
+	 * @since 1.0
+	 */
+	public static final int FOR = 14;
+	/**
+	 * Runs a block for each line of a value (foreach x in value/endforeach).
+	 *
+	 * @since 1.0
+	 */
+	public static final int FOREACH = 15;
+	/**
+	 * Runs commands concurrently, each reading the output of the previous one (pipe a | b | c).
+	 *
+	 * @since 1.0
+	 */
+	public static final int PIPELINE = 16;
+
+	/**
+	 * The type of the instruction.
+	 *
+	 * @since 1.0
+	 */
+	public int Type;
+	/**
+	 * The line of the script where the instruction starts.
+	 *
+	 * @since 1.0
+	 */
+	public int Line;
+	/**
+	 * The index of the instruction in the instruction table of its script.
+	 *
+	 * @since 1.0
+	 */
+	public int Index;
+	/**
+	 * The index of the instruction to jump to, for JUMP instructions and for IF instructions whose condition is
+	 * false.
+	 *
+	 * @since 1.0
+	 */
+	public int Target;
+	/**
+	 * The index of the first instruction after the block, for IF, WHILE, FOR and FOREACH instructions.
+	 *
+	 * @since 1.0
+	 */
+	public int End;
+	/**
+	 * The name of the variable, for declarations, assignments, and FOR and FOREACH instructions.
+	 *
+	 * @since 1.0
+	 */
+	public String Name;
+	/**
+	 * The slot of the variable, for declarations, assignments, and FOR and FOREACH instructions.
+	 *
+	 * @since 1.0
+	 */
+	public SlotMap.Slot Slot;
+	/**
+	 * The operand of the instruction (the value, path, command or condition). Null if the instruction has none.
+	 *
+	 * @since 1.0
+	 */
+	public String Value;
+	/**
+	 * The compiled Value, for values which start with a string. Null if the Value is not known to be a template
+	 * when the script is compiled.
+	 *
+	 * @since 1.0
+	 */
+	public Template Template;
+	/**
+	 * The compiled condition, for IF and WHILE instructions.
+	 *
+	 * @since 1.0
+	 */
+	public Condition Condition;
+	/**
+	 * The values of the range of FOR instructions (from, to, and optionally step), compiled like the values of
+	 * declarations, or the commands of PIPELINE instructions.
+	 *
+	 * @since 1.0
+	 */
+	public Instruction[] Operands;
+	/**
+	 * The syntax error to report when the instruction runs. Null if the instruction is valid.
+	 *
+	 * @since 1.0
+	 */
+	public Exception Error;
+	/**
+	 * The instructions to run when the condition is true, for IF instructions, or the body of WHILE, FOR and
+	 * FOREACH instructions.
+	 *
+	 * @since 1.0
+	 */
+	public List<Instruction> Then;
+	/**
+	 * The instructions to run when the condition is false, for IF instructions.
+	 *
+	 * @since 1.0
+	 */
+	public List<Instruction> Else;
+
+	/**
+	 * Initializes a new instance of the Instruction class.
+	 * 
+	 * @param type The type of the instruction.
+	 * @param line The line of the script where the instruction starts.
+	 *
+	 * @since 1.0
+	 */
+	public Instruction(int type, int line) {
+		Type = type;
+		Line = line;
+		Name = null;
+		Slot = null;
+		Value = null;
+		Template = null;
+		Condition = null;
+		Operands = null;
+		Error = null;
+		if(type == IF || type == WHILE || type == FOR || type == FOREACH)
+			Then = new ArrayList<Instruction>();
+		if(type == IF)
+			Else = new ArrayList<Instruction>();
+	}
+}
@@ -0,0 +1,239 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Represents a bounded buffer which connects two commands of a pipeline. The writer blocks while the buffer is full,
+ * and the reader blocks while it is empty, so the memory used by a pipeline does not depend on the size of the data.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+class Pipe {
+
+	/**
+	 * The default capacity of pipes, in bytes.
+	 *
+	 * @since 1.0
+	 */
+	static final int CAPACITY = 64 * 1024;
+
+	/**
+	 * The stream which reads from the pipe. Closing it makes the writes fail.
+	 *
+	 * @since 1.0
+	 */
+	final InputStream Input;
+	/**
+	 * The stream which writes to the pipe. Closing it ends the input, after the buffered data is read.
+	 *
+	 * @since 1.0
+	 */
+	final OutputStream Output;
+
+	/**
+	 * The ring buffer.
+	 */
+	private final byte[] buffer;
+	/**
+	 * The index of the first buffered byte.
+	 */
+	private int head;
+	/**
+	 * The number of buffered bytes.
+	 */
+	private int count;
+	/**
+	 * Whether or not the writer was closed.
+	 */
+	private boolean writerClosed;
+	/**
+	 * Whether or not the reader was closed.
+	 */
+	private boolean readerClosed;
+
+	/**
+	 * Initializes a new instance of the Pipe class, with the default capacity.
+	 *
+	 * @since 1.0
+	 */
+	Pipe() {
+		this(CAPACITY);
+	}
+	/**
+	 * Initializes a new instance of the Pipe class.
+	 * 
+	 * @param capacity The capacity of the pipe, in bytes.
+	 *
+	 * @since 1.0
+	 */
+	Pipe(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("The capacity must be positive");
+		buffer = new byte[capacity];
+
+		Input = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return Read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(off < 0 || len < 0 || len > b.length - off)
+					throw new IndexOutOfBoundsException();
+				return len == 0 ? 0 : Read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				return Available();
+			}
+
+			@Override
+			public void close() {
+				CloseReader();
+			}
+		};
+		Output = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				Write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if(off < 0 || len < 0 || len > b.length - off)
+					throw new IndexOutOfBoundsException();
+				Write(b, off, len);
+			}
+
+			@Override
+			public void close() {
+				CloseWriter();
+			}
+		};
+	}
+
+	/**
+	 * Returns whether or not the reader was closed, which means the data written to the pipe is no longer needed.
+	 * 
+	 * @return Whether or not the reader was closed.
+	 *
+	 * @since 1.0
+	 */
+	synchronized boolean IsReaderClosed() {
+		return readerClosed;
+	}
+
+	/**
+	 * Reads bytes from the pipe, and waits until at least one byte is available.
+	 * 
+	 * @return The number of bytes read, or -1 if the writer was closed and the pipe is empty.
+	 */
+	private synchronized int Read(byte[] b, int off, int len) throws IOException {
+		while(count == 0) {
+			if(writerClosed)
+				return -1;
+			if(readerClosed)
+				throw new IOException("Pipe closed");
+			Await();
+		}
+
+		int read = Math.min(len, Math.min(count, buffer.length - head));
+		System.arraycopy(buffer, head, b, off, read);
+		head = (head + read) % buffer.length;
+		count -= read;
+		notifyAll();
+		return read;
+	}
+
+	/**
+	 * Writes bytes to the pipe, and waits while the pipe is full.
+	 */
+	private synchronized void Write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(readerClosed || writerClosed)
+				throw new IOException("Pipe closed");
+			if(count == buffer.length) {
+				Await();
+				continue;
+			}
+
+			int tail = (head + count) % buffer.length;
+			int written = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+			System.arraycopy(b, off, buffer, tail, written);
+			count += written;
+			off += written;
+			len -= written;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the number of buffered bytes.
+	 */
+	private synchronized int Available() {
+		return count;
+	}
+
+	/**
+	 * Closes the reader, and wakes up the writer.
+	 *
+	 * @since 1.0
+	 */
+	synchronized void CloseReader() {
+		readerClosed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the writer, and wakes up the reader.
+	 *
+	 * @since 1.0
+	 */
+	synchronized void CloseWriter() {
+		writerClosed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the other end of the pipe changes it.
+	 */
+	private void Await() throws InterruptedIOException {
+		try {
+			wait();
+		}
+		catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the pipe");
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the EXCMs of a namespace and its EXCH on background threads, so the first run of each command does not pay
+ * for reading and defining its class. The EXCMs can also be warmed up, by calling their GetDescription, GetParameters
+ * and GetUsage methods.
+ * 
+ * Preloading does not block the commands: a command which runs before it is preloaded is loaded as usual.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Preloader {
+
+	/**
+	 * The default number of threads.
+	 *
+	 * @since 1.0
+	 */
+	public static int DefaultThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	/**
+	 * The type of the information methods of EXCMs.
+	 */
+	private static final MethodType INFO = MethodType.methodType(String.class);
+
+	/**
+	 * The preloaders shared by the current process, by namespace.
+	 */
+	private static final Map<String, Preloader> Shared = new HashMap<String, Preloader>();
+
+	/**
+	 * The namespace which is preloaded.
+	 *
+	 * @since 1.0
+	 */
+	public final String Namespace;
+
+	/**
+	 * The number of EXCMs and EXCHs to preload.
+	 */
+	private final int total;
+	/**
+	 * Counts down as EXCMs and EXCHs are preloaded.
+	 */
+	private final CountDownLatch remaining;
+	/**
+	 * The number of EXCMs and EXCHs which were preloaded.
+	 */
+	private final AtomicInteger loaded;
+	/**
+	 * The EXCMs and EXCHs which could not be preloaded, with their exceptions.
+	 */
+	private final List<String> failures;
+
+	/**
+	 * Initializes a new instance of the Preloader class.
+	 */
+	private Preloader(String namespace, int total) {
+		Namespace = namespace;
+		this.total = total;
+		remaining = new CountDownLatch(total);
+		loaded = new AtomicInteger();
+		failures = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	/**
+	 * Starts preloading the EXCMs of a namespace and an EXCH, on the default number of background threads.
+	 * 
+	 * @param namespace The directory of EXCM files (ending with a separator) or the EXCB.
+	 * @param handler The path to the EXCH file. Null or empty to only preload the EXCMs.
+	 * @param warmUp Whether or not to warm up the EXCMs.
+	 * 
+	 * @return The preloader, which reports when the EXCMs are ready.
+	 *
+	 * @since 1.0
+	 */
+	public static Preloader Start(String namespace, String handler, boolean warmUp) {
+		return Start(namespace, handler, warmUp, DefaultThreads);
+	}
+
+	/**
+	 * Returns the preloader of a namespace shared by the current process, and starts it the first time, on the
+	 * default number of background threads. Later calls for the same namespace return the same preloader, whatever
+	 * their handler and warm-up.
+	 * 
+	 * @param namespace The directory of EXCM files (ending with a separator) or the EXCB.
+	 * @param handler The path to the EXCH file. Null or empty to only preload the EXCMs.
+	 * @param warmUp Whether or not to warm up the EXCMs.
+	 * 
+	 * @return The shared preloader, which reports when the EXCMs are ready.
+	 *
+	 * @since 1.0
+	 */
+	public static Preloader Shared(String namespace, String handler, boolean warmUp) {
+		synchronized(Shared) {
+			Preloader preloader = Shared.get(namespace);
+			if(preloader == null) {
+				preloader = Start(namespace, handler, warmUp);
+				Shared.put(namespace, preloader);
+			}
+			return preloader;
+		}
+	}
+
+	/**
+	 * Starts preloading the EXCMs of a namespace and an EXCH, on background threads.
+	 * 
+	 * @param namespace The directory of EXCM files (ending with a separator) or the EXCB.
+	 * @param handler The path to the EXCH file. Null or empty to only preload the EXCMs.
+	 * @param warmUp Whether or not to warm up the EXCMs.
+	 * @param threads The number of threads.
+	 * 
+	 * @return The preloader, which reports when the EXCMs are ready.
+	 *
+	 * @since 1.0
+	 */
+	public static Preloader Start(String namespace, String handler, boolean warmUp, int threads) {
+		if(threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+
+		List<String> names = Names(namespace);
+		boolean hasHandler = handler != null && !handler.isEmpty();
+		Preloader preloader = new Preloader(namespace, names.size() + (hasHandler ? 1 : 0));
+		if(preloader.total == 0)
+			return preloader;
+
+		AtomicInteger count = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, preloader.total), r -> {
+			Thread thread = new Thread(r, "EXCM Preloader " + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+
+		if(hasHandler)
+			pool.execute(() -> preloader.LoadHandler(handler));
+		for(String name : names)
+			pool.execute(() -> preloader.Load(name, warmUp));
+		pool.shutdown();
+
+		return preloader;
+	}
+
+	/**
+	 * Returns the names of the EXCMs of a namespace.
+	 * 
+	 * @param namespace The directory of EXCM files or the EXCB.
+	 * 
+	 * @return The names, or an empty list if the namespace does not exist.
+	 */
+	private static List<String> Names(String namespace) {
+		List<String> names = new ArrayList<String>();
+
+		if(namespace.toLowerCase().endsWith(".excb")) {
+			try {
+				names.addAll(EXCB.Open(namespace).GetNames());
+			}
+			catch(Exception ex) { }
+			return names;
+		}
+
+		File[] files = new File(namespace).listFiles((dir, name) -> name.toLowerCase().endsWith(".excm"));
+		if(files != null) {
+			Arrays.sort(files);
+			for(File file : files)
+				names.add(file.getName().substring(0, file.getName().length() - 5));
+		}
+		return names;
+	}
+
+	/**
+	 * Preloads an EXCM, and optionally warms it up.
+	 * 
+	 * @param name The name of the EXCM.
+	 * @param warmUp Whether or not to warm up the EXCM.
+	 */
+	private void Load(String name, boolean warmUp) {
+		try {
+			Class<?> excm = EXCM.Load(Namespace, name);
+			if(warmUp) {
+				for(String method : new String[] { "GetDescription", "GetParameters", "GetUsage" }) {
+					try {
+						String info = (String) MethodHandles.publicLookup().findStatic(excm, method, INFO).invokeExact();
+					}
+					catch(NoSuchMethodException ex) { }
+				}
+			}
+			loaded.incrementAndGet();
+		}
+		catch(Throwable ex) {
+			failures.add(name + ": " + ex);
+		}
+		finally {
+			remaining.countDown();
+		}
+	}
+
+	/**
+	 * Preloads an EXCH.
+	 * 
+	 * @param handler The path to the EXCH file.
+	 */
+	private void LoadHandler(String handler) {
+		try {
+			EXCH.GetEXCM(handler, "");
+			loaded.incrementAndGet();
+		}
+		catch(Throwable ex) {
+			failures.add(handler + ": " + ex);
+		}
+		finally {
+			remaining.countDown();
+		}
+	}
+
+	/**
+	 * Returns whether or not the preloading finished.
+	 * 
+	 * @return Whether or not the EXCMs are ready.
+	 *
+	 * @since 1.0
+	 */
+	public boolean IsReady() {
+		return remaining.getCount() == 0;
+	}
+
+	/**
+	 * Waits until the preloading finishes.
+	 * 
+	 * @throws InterruptedException 
+	 *
+	 * @since 1.0
+	 */
+	public void Await() throws InterruptedException {
+		remaining.await();
+	}
+
+	/**
+	 * Waits until the preloading finishes, or until a timeout elapses.
+	 * 
+	 * @param timeout The maximum time to wait.
+	 * @param unit The unit of the timeout.
+	 * 
+	 * @return Whether or not the preloading finished.
+	 * 
+	 * @throws InterruptedException 
+	 *
+	 * @since 1.0
+	 */
+	public boolean Await(long timeout, TimeUnit unit) throws InterruptedException {
+		return remaining.await(timeout, unit);
+	}
+
+	/**
+	 * Returns the number of EXCMs and EXCHs to preload.
+	 * 
+	 * @return The total.
+	 *
+	 * @since 1.0
+	 */
+	public int GetTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns the number of EXCMs and EXCHs which were preloaded.
+	 * 
+	 * @return The number of loaded EXCMs and EXCHs.
+	 *
+	 * @since 1.0
+	 */
+	public int GetLoaded() {
+		return loaded.get();
+	}
+
+	/**
+	 * Returns the EXCMs and EXCHs which could not be preloaded, each followed by its exception.
+	 * 
+	 * @return The failures.
+	 *
+	 * @since 1.0
+	 */
+	public List<String> GetFailures() {
+		synchronized(failures) {
+			return new ArrayList<String>(failures);
+		}
+	}
+}
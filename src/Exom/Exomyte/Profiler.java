@@ -0,0 +1,368 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how much time and memory each line of an EXMY Script takes, and how much of it goes to EXCH resolution,
+ * EXCM calls, conditions and formatting.
+ * 
+ * A profiler belongs to one EXMY instance, and is not thread safe. Times are wall times, and allocated bytes are
+ * measured for the current thread when the JVM supports it.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Profiler {
+
+	/**
+	 * The thread bean used to measure allocated bytes. Null if the JVM does not support it.
+	 */
+	private static final com.sun.management.ThreadMXBean Threads;
+
+	static {
+		com.sun.management.ThreadMXBean threads = null;
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(bean instanceof com.sun.management.ThreadMXBean) {
+				threads = (com.sun.management.ThreadMXBean) bean;
+				if(!threads.isThreadAllocatedMemorySupported())
+					threads = null;
+				else if(!threads.isThreadAllocatedMemoryEnabled())
+					threads.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+		catch(Throwable ex) {
+			threads = null;
+		}
+		Threads = threads;
+	}
+
+	/**
+	 * The path to the profiled EXMY Script.
+	 *
+	 * @since 1.0
+	 */
+	public final String Script;
+	/**
+	 * The reason why the profiled EXMY Script could not be compiled by the ScriptCompiler. Null if there is none.
+	 *
+	 * @since 1.0
+	 */
+	public Exception CompileError;
+
+	/**
+	 * The statistics of each line.
+	 */
+	private final Map<Integer, Stats> lines;
+	/**
+	 * The statistics of the calls made by each line, by name.
+	 */
+	private final Map<Integer, Map<String, Stats>> calls;
+	/**
+	 * The line which is running.
+	 */
+	private int line;
+	/**
+	 * The time when the profiler was created.
+	 */
+	private final long created;
+
+	/**
+	 * Initializes a new instance of the Profiler class.
+	 * 
+	 * @param script The path to the profiled EXMY Script.
+	 *
+	 * @since 1.0
+	 */
+	public Profiler(String script) {
+		Script = script;
+		lines = new HashMap<Integer, Stats>();
+		calls = new HashMap<Integer, Map<String, Stats>>();
+		created = System.nanoTime();
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread.
+	 * 
+	 * @return The number of bytes, or 0 if the JVM cannot measure them.
+	 *
+	 * @since 1.0
+	 */
+	public long Allocated() {
+		return Threads == null ? 0 : Threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Marks the start of a line. Calls recorded until the line ends are attributed to it.
+	 * 
+	 * @param line The line number.
+	 *
+	 * @since 1.0
+	 */
+	public void Enter(int line) {
+		this.line = line;
+	}
+
+	/**
+	 * Records a run of a line.
+	 * 
+	 * @param line The line number.
+	 * @param start The value of System.nanoTime() when the line started.
+	 * @param bytes The value of Allocated() when the line started.
+	 *
+	 * @since 1.0
+	 */
+	public void Line(int line, long start, long bytes) {
+		Stats stats = lines.get(line);
+		if(stats == null) {
+			stats = new Stats();
+			lines.put(line, stats);
+		}
+		stats.Add(System.nanoTime() - start, Allocated() - bytes);
+	}
+
+	/**
+	 * Records a call made by the running line.
+	 * 
+	 * @param name The name of the call (for example, "EXCM Echo").
+	 * @param start The value of System.nanoTime() when the call started.
+	 * @param bytes The value of Allocated() when the call started.
+	 *
+	 * @since 1.0
+	 */
+	public void Call(String name, long start, long bytes) {
+		Map<String, Stats> lineCalls = calls.get(line);
+		if(lineCalls == null) {
+			lineCalls = new HashMap<String, Stats>();
+			calls.put(line, lineCalls);
+		}
+
+		Stats stats = lineCalls.get(name);
+		if(stats == null) {
+			stats = new Stats();
+			lineCalls.put(name, stats);
+		}
+		stats.Add(System.nanoTime() - start, Allocated() - bytes);
+	}
+
+	/**
+	 * Returns a report of the lines and calls, sorted by total time.
+	 * 
+	 * @return The report.
+	 *
+	 * @since 1.0
+	 */
+	public String Report() {
+		List<String> source = Source();
+		StringBuilder report = new StringBuilder();
+
+		report.append("\nProfile of ").append(Script).append(" - ").append(Exom.Utils.TimeUtils.GetTimeString(System.nanoTime() - created));
+		report.append(String.format("\n%6s %10s %12s %12s %14s  %s", "Line", "Calls", "Total (ms)", "Max (ms)", "Allocated (KB)", "Source"));
+
+		for(Map.Entry<Integer, Stats> entry : Sorted(lines)) {
+			Stats stats = entry.getValue();
+			report.append(String.format("\n%6d %10d %12.3f %12.3f %14s  %s", entry.getKey(), stats.Calls, stats.Total / 1e6, stats.Max / 1e6,
+					Kilobytes(stats.Bytes), Source(source, entry.getKey())));
+		}
+
+		Map<String, Stats> totals = new HashMap<String, Stats>();
+		for(Map<String, Stats> lineCalls : calls.values()) {
+			for(Map.Entry<String, Stats> entry : lineCalls.entrySet()) {
+				Stats total = totals.get(entry.getKey());
+				if(total == null) {
+					total = new Stats();
+					totals.put(entry.getKey(), total);
+				}
+				total.Add(entry.getValue());
+			}
+		}
+
+		if(!totals.isEmpty()) {
+			report.append(String.format("\n\n%-24s %10s %12s %12s %14s", "Call", "Calls", "Total (ms)", "Max (ms)", "Allocated (KB)"));
+			for(Map.Entry<String, Stats> entry : Sorted(totals)) {
+				Stats stats = entry.getValue();
+				report.append(String.format("\n%-24s %10d %12.3f %12.3f %14s", entry.getKey(), stats.Calls, stats.Total / 1e6, stats.Max / 1e6,
+						Kilobytes(stats.Bytes)));
+			}
+		}
+
+		if(CompileError != null)
+			report.append("\n\nThe script cannot be compiled, and is interpreted: ").append(CompileError);
+
+		return report.append("\n").toString();
+	}
+
+	/**
+	 * Writes the lines and calls as collapsed stacks, which can be turned into a flame graph. Each stack is the
+	 * script, the line, and optionally the call, followed by the self time in microseconds.
+	 * 
+	 * @param file The path to the file.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public void WriteStacks(String file) throws IOException {
+		List<String> source = Source();
+		String script = Frame(Paths.get(Script).getFileName().toString());
+
+		try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8))) {
+			for(Map.Entry<Integer, Stats> entry : lines.entrySet()) {
+				String frame = script + ";" + Frame(entry.getKey() + ": " + Source(source, entry.getKey()));
+				long self = entry.getValue().Total;
+
+				Map<String, Stats> lineCalls = calls.get(entry.getKey());
+				if(lineCalls != null) {
+					for(Map.Entry<String, Stats> call : lineCalls.entrySet()) {
+						self -= call.getValue().Total;
+						if(call.getValue().Total >= 1000)
+							out.println(frame + ";" + Frame(call.getKey()) + " " + call.getValue().Total / 1000);
+					}
+				}
+				if(self >= 1000)
+					out.println(frame + " " + self / 1000);
+			}
+		}
+	}
+
+	/**
+	 * Returns the lines of the profiled script, or an empty list if it cannot be read.
+	 */
+	private List<String> Source() {
+		try {
+			return Files.readAllLines(Paths.get(Script), StandardCharsets.UTF_8);
+		}
+		catch(Exception ex) {
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Returns the trimmed source of a line.
+	 */
+	private static String Source(List<String> source, int line) {
+		return line > 0 && line <= source.size() ? Exom.Utils.StringUtils.Trim(source.get(line - 1)) : "";
+	}
+
+	/**
+	 * Returns a stack frame name, without the characters which separate frames and counts.
+	 */
+	private static String Frame(String name) {
+		return name.replace(';', ',').replace('\n', ' ').replace('\r', ' ');
+	}
+
+	/**
+	 * Returns a number of bytes in kilobytes, or "N/A" if the JVM cannot measure them.
+	 */
+	private static String Kilobytes(long bytes) {
+		return Threads == null ? "N/A" : String.format("%.1f", bytes / 1024.0);
+	}
+
+	/**
+	 * Returns the entries of a map, sorted by total time.
+	 */
+	private static <K> List<Map.Entry<K, Stats>> Sorted(Map<K, Stats> map) {
+		List<Map.Entry<K, Stats>> entries = new ArrayList<Map.Entry<K, Stats>>(map.entrySet());
+		entries.sort((a, b) -> Long.compare(b.getValue().Total, a.getValue().Total));
+		return entries;
+	}
+
+	/**
+	 * Represents the statistics of a line or a call.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	public static class Stats {
+
+		/**
+		 * The number of runs.
+		 *
+		 * @since 1.0
+		 */
+		public long Calls;
+		/**
+		 * The total time, in nanoseconds.
+		 *
+		 * @since 1.0
+		 */
+		public long Total;
+		/**
+		 * The longest time of a run, in nanoseconds.
+		 *
+		 * @since 1.0
+		 */
+		public long Max;
+		/**
+		 * The allocated bytes.
+		 *
+		 * @since 1.0
+		 */
+		public long Bytes;
+
+		/**
+		 * Records a run.
+		 * 
+		 * @param time The time of the run, in nanoseconds.
+		 * @param bytes The bytes allocated by the run.
+		 *
+		 * @since 1.0
+		 */
+		public void Add(long time, long bytes) {
+			++Calls;
+			Total += time;
+			Bytes += bytes;
+			if(time > Max)
+				Max = time;
+		}
+
+		/**
+		 * Adds the statistics of other runs.
+		 * 
+		 * @param stats The statistics.
+		 *
+		 * @since 1.0
+		 */
+		public void Add(Stats stats) {
+			Calls += stats.Calls;
+			Total += stats.Total;
+			Bytes += stats.Bytes;
+			if(stats.Max > Max)
+				Max = stats.Max;
+		}
+	}
+}
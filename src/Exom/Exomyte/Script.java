@@ -0,0 +1,661 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.naming.InvalidNameException;
+
+import Exom.Utils.ByteUtils;
+import Exom.Utils.StringUtils;
+
+/**
+ * Represents a compiled EXMY Script.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Script {
+
+	/**
+	 * The instructions of the script.
+	 *
+	 * @since 1.0
+	 */
+	public List<Instruction> Instructions;
+	/**
+	 * All instructions of the script, including the ones inside blocks, indexed by Instruction.Index. Blocks are
+	 * resolved to jumps, so the table can be run from start to end.
+	 *
+	 * @since 1.0
+	 */
+	public Instruction[] Table;
+	/**
+	 * The SHA256 hash of the script file, as a hex string. Null if the script was not loaded from a file.
+	 *
+	 * @since 1.0
+	 */
+	public String Hash;
+	/**
+	 * The number of times the script was interpreted.
+	 *
+	 * @since 1.0
+	 */
+	public final AtomicInteger Runs = new AtomicInteger();
+	/**
+	 * The Java class the script was compiled to by the ScriptCompiler. Null if the script was not compiled yet.
+	 *
+	 * @since 1.0
+	 */
+	public volatile BiConsumer<EXMY, Instruction[]> Compiled;
+	/**
+	 * The reason why the ScriptCompiler could not compile the script. Null if the script was compiled, or was not
+	 * compiled yet. Such scripts are not compiled again, and keep being interpreted.
+	 *
+	 * @since 1.0
+	 */
+	public volatile Exception CompileError;
+
+	/**
+	 * Whether or not compiled scripts are written to EXMYC files next to the scripts.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean WriteCompiled = true;
+	/**
+	 * The maximum number of scripts kept in the cache.
+	 *
+	 * @since 1.0
+	 */
+	public static int CacheCapacity = 256;
+	/**
+	 * The compiled scripts, by the hash of their file.
+	 */
+	private static final Map<String, Script> Cache = Collections.synchronizedMap(new LinkedHashMap<String, Script>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+			return size() > CacheCapacity;
+		}
+	});
+
+	/**
+	 * The lines being compiled.
+	 */
+	private List<String> lines;
+	/**
+	 * The index of the next line to compile.
+	 */
+	private int position;
+
+	/**
+	 * Block terminators returned by ParseBlock.
+	 */
+	private static final int END_OF_FILE = 0;
+	private static final int ELSE = 1;
+	private static final int END = 2;
+
+	/**
+	 * Initializes a new instance of the Script class, and compiles the lines.
+	 * 
+	 * @param lines The lines of the script.
+	 */
+	private Script(List<String> lines) {
+		this.lines = lines;
+		position = 0;
+		Instructions = new ArrayList<Instruction>();
+
+		ParseBlock(Instructions, -1);
+		Index();
+
+		this.lines = null;
+	}
+
+	/**
+	 * Initializes a new instance of the Script class, from compiled instructions.
+	 * 
+	 * @param instructions The instructions of the script.
+	 * @param hash The SHA256 hash of the script file.
+	 */
+	Script(List<Instruction> instructions, String hash) {
+		Instructions = instructions;
+		Hash = hash;
+		Index();
+	}
+
+	/**
+	 * Compiles an EXMY Script file. Files with the same content share the same compiled script. The compiled script
+	 * is read from the EXMYC file next to the script (the script path, ending with 'c') if its hash matches, and
+	 * written to it otherwise.
+	 * 
+	 * @param scriptFile The EXMY Script file.
+	 * 
+	 * @return The compiled script.
+	 * 
+	 * @throws IOException 
+	 * @throws NoSuchAlgorithmException 
+	 *
+	 * @since 1.0
+	 */
+	public static Script Load(String scriptFile) throws IOException, NoSuchAlgorithmException {
+		byte[] data = ByteUtils.FileToBytes(scriptFile);
+		String hash = Exom.Utils.Cryptography.Hash.SHA256(data);
+
+		Script script = Cache.get(hash);
+		if(script == null) {
+			String compiledFile = scriptFile + "c";
+			script = EXMYC.Read(compiledFile, hash);
+
+			if(script == null) {
+				List<String> lines = new ArrayList<String>();
+				BufferedReader reader = new BufferedReader(new StringReader(new String(data)));
+				String line;
+				while((line = reader.readLine()) != null)
+					lines.add(line);
+
+				script = Parse(lines);
+				script.Hash = hash;
+				if(WriteCompiled)
+					EXMYC.Write(script, compiledFile);
+			}
+
+			Cache.put(hash, script);
+		}
+
+		return script;
+	}
+
+	/**
+	 * Compiles the lines of an EXMY Script.
+	 * 
+	 * @param lines The lines of the script.
+	 * 
+	 * @return The compiled script.
+	 *
+	 * @since 1.0
+	 */
+	public static Script Parse(List<String> lines) {
+		return new Script(lines);
+	}
+
+	/**
+	 * Compiles a line of EXMY Script which does not open a block.
+	 * 
+	 * @param input The trimmed line.
+	 * @param line The line number.
+	 * 
+	 * @return The compiled instruction.
+	 *
+	 * @since 1.0
+	 */
+	public static Instruction ParseLine(String input, int line) {
+		String lower = input.toLowerCase();
+		Instruction ins;
+
+		if(lower.startsWith("--exch ")) {
+			ins = new Instruction(Instruction.EXCH, line);
+			ins.Value = input.substring(7);
+		}
+		else if(lower.startsWith("--exvr ")) {
+			ins = new Instruction(Instruction.EXVR, line);
+			ins.Value = input.substring(7);
+		}
+		else if(lower.startsWith("let "))
+			ins = ParseAssignment(Instruction.LET, input.substring(4), line);
+		else if(lower.startsWith("var "))
+			ins = ParseAssignment(Instruction.VAR, input.substring(4), line);
+		else if(lower.startsWith("*"))
+			ins = ParseAssignment(Instruction.SET_RAM, input.substring(1), line);
+		else if(lower.startsWith("$"))
+			ins = ParseAssignment(Instruction.SET_FILE, input.substring(1), line);
+		else if(lower.equals("savevars"))
+			ins = new Instruction(Instruction.SAVEVARS, line);
+		else if(lower.equals("loadvars"))
+			ins = new Instruction(Instruction.LOADVARS, line);
+		else if(lower.equals("clearvars"))
+			ins = new Instruction(Instruction.CLEARVARS, line);
+		else if(lower.startsWith("pipe "))
+			ins = ParsePipeline(input, line);
+		else {
+			ins = new Instruction(Instruction.COMMAND, line);
+			ins.Value = input;
+		}
+
+		return ins;
+	}
+
+	/**
+	 * Compiles a pipeline (pipe a | b | c). Each command is compiled to a COMMAND operand. Commands outside of a
+	 * pipeline keep " | " as part of their arguments.
+	 * 
+	 * @param input The line, starting with "pipe ".
+	 * @param line The line number.
+	 * 
+	 * @return The PIPELINE instruction.
+	 */
+	private static Instruction ParsePipeline(String input, int line) {
+		Instruction ins = new Instruction(Instruction.PIPELINE, line);
+		ins.Value = input;
+
+		List<Instruction> commands = new ArrayList<Instruction>();
+		int start = 5;
+		while(start <= input.length()) {
+			int pipe = IndexOfKeyword(input, " | ", start);
+			String command = StringUtils.Trim(input.substring(start, pipe < 0 ? input.length() : pipe));
+			if(command.isEmpty()) {
+				ins.Error = new NullPointerException("Syntax error: command expected");
+				return ins;
+			}
+
+			Instruction operand = new Instruction(Instruction.COMMAND, line);
+			operand.Value = command;
+			commands.add(operand);
+
+			if(pipe < 0)
+				break;
+			start = pipe + 3;
+		}
+
+		ins.Operands = commands.toArray(new Instruction[0]);
+		return ins;
+	}
+
+	/**
+	 * Returns whether or not a trimmed line opens an IF block.
+	 * 
+	 * @param input The trimmed line.
+	 * 
+	 * @return Whether or not the line opens an IF block.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean IsIf(String input) {
+		return input.length() >= 3 && input.substring(0, 3).toLowerCase().equals("if ");
+	}
+
+	/**
+	 * Returns whether or not a trimmed line closes an IF block.
+	 * 
+	 * @param input The trimmed line.
+	 * 
+	 * @return Whether or not the line closes an IF block.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean IsEndIf(String input) {
+		return input.toLowerCase().startsWith("endif");
+	}
+
+	/**
+	 * Returns whether or not a trimmed line opens a WHILE, FOR or FOREACH block.
+	 * 
+	 * @param input The trimmed line.
+	 * 
+	 * @return Whether or not the line opens a loop.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean IsLoop(String input) {
+		String lower = input.toLowerCase();
+		return lower.startsWith("while ") || lower.startsWith("for ") || lower.startsWith("foreach ");
+	}
+
+	/**
+	 * Returns whether or not a trimmed line opens a block.
+	 * 
+	 * @param input The trimmed line.
+	 * 
+	 * @return Whether or not the line opens a block.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean IsBlockStart(String input) {
+		return IsIf(input) || IsLoop(input);
+	}
+
+	/**
+	 * Returns whether or not a trimmed line closes a block.
+	 * 
+	 * @param input The trimmed line.
+	 * 
+	 * @return Whether or not the line closes a block.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean IsBlockEnd(String input) {
+		return IsEndIf(input) || input.equalsIgnoreCase(EndOf(Instruction.WHILE))
+				|| input.equalsIgnoreCase(EndOf(Instruction.FOR)) || input.equalsIgnoreCase(EndOf(Instruction.FOREACH));
+	}
+
+	/**
+	 * Returns the keyword which closes a loop.
+	 * 
+	 * @param type The type of the loop instruction.
+	 * 
+	 * @return The keyword.
+	 */
+	private static String EndOf(int type) {
+		switch(type) {
+			case Instruction.WHILE:
+				return "endwhile";
+			case Instruction.FOR:
+				return "endfor";
+			default:
+				return "endforeach";
+		}
+	}
+
+	/**
+	 * Compiles lines into a block, until the end of the block.
+	 * 
+	 * @param block The block to compile into.
+	 * @param parent The type of the instruction which opened the block, or -1 if the block is not nested.
+	 * 
+	 * @return The terminator of the block.
+	 */
+	private int ParseBlock(List<Instruction> block, int parent) {
+		while(position < lines.size()) {
+			String input = StringUtils.Trim(lines.get(position++));
+			int line = position;
+
+			if(parent == Instruction.IF) {
+				if(IsEndIf(input))
+					return END;
+				if(input.toLowerCase().startsWith("else"))
+					return ELSE;
+			}
+			else if(parent >= 0 && input.equalsIgnoreCase(EndOf(parent)))
+				return END;
+
+			if(IsIf(input)) {
+				Instruction ins = new Instruction(Instruction.IF, line);
+				ins.Value = input.substring(3);
+				ins.Condition = Condition.Compile(ins.Value);
+
+				int end = ParseBlock(ins.Then, Instruction.IF);
+				if(end == ELSE) {
+					end = ParseBlock(ins.Else, Instruction.IF);
+					while(end == ELSE) {
+						Instruction error = new Instruction(Instruction.ERROR, position);
+						error.Error = new InvalidNameException("Syntax error: unexpected \"else\"");
+						ins.Else.add(error);
+						end = ParseBlock(ins.Else, Instruction.IF);
+					}
+				}
+				if(end == END_OF_FILE)
+					ins.Error = new NoSuchElementException("Syntax error: expected \"endif\" before end of file");
+
+				block.add(ins);
+			}
+			else if(IsLoop(input)) {
+				Instruction ins = ParseLoop(input, line);
+
+				if(ParseBlock(ins.Then, ins.Type) == END_OF_FILE && ins.Error == null)
+					ins.Error = new NoSuchElementException("Syntax error: expected \"" + EndOf(ins.Type) + "\" before end of file");
+
+				block.add(ins);
+			}
+			else if(input.length() > 0)
+				block.add(ParseLine(input, line));
+		}
+
+		return END_OF_FILE;
+	}
+
+	/**
+	 * Compiles the first line of a WHILE, FOR or FOREACH block.
+	 * 
+	 * @param input The trimmed line.
+	 * @param line The line number.
+	 * 
+	 * @return The compiled loop instruction, without its body.
+	 */
+	private static Instruction ParseLoop(String input, int line) {
+		String lower = input.toLowerCase();
+		Instruction ins;
+
+		if(lower.startsWith("while ")) {
+			ins = new Instruction(Instruction.WHILE, line);
+			ins.Value = input.substring(6);
+			ins.Condition = Condition.Compile(ins.Value);
+			return ins;
+		}
+
+		boolean each = lower.startsWith("foreach ");
+		ins = new Instruction(each ? Instruction.FOREACH : Instruction.FOR, line);
+
+		String info = input.substring(each ? 8 : 4);
+		int length = info.length();
+		int u = 0;
+
+		while(u < length && info.charAt(u) != ' ' && (each || info.charAt(u) != '='))
+			++u;
+		ins.Name = info.substring(0, u);
+		ins.Slot = SlotMap.Slot(ins.Name);
+
+		while(u < length && info.charAt(u) == ' ')
+			++u;
+
+		if(each) {
+			if(!info.regionMatches(true, u, "in ", 0, 3)) {
+				ins.Error = new NullPointerException("Syntax error: 'in' expected");
+				return ins;
+			}
+			Instruction value = ParseOperand(info.substring(u + 3), line);
+			ins.Value = value.Value;
+			ins.Template = value.Template;
+			ins.Error = value.Error;
+			return ins;
+		}
+
+		if(u == length || info.charAt(u) != '=') {
+			ins.Error = new NullPointerException("Syntax error: '=' expected");
+			return ins;
+		}
+
+		String range = info.substring(u + 1);
+		int to = IndexOfKeyword(range, " to ", 0);
+		if(to < 0) {
+			ins.Error = new NullPointerException("Syntax error: 'to' expected");
+			return ins;
+		}
+		int step = IndexOfKeyword(range, " step ", to + 3);
+
+		if(step < 0)
+			ins.Operands = new Instruction[] { ParseOperand(range.substring(0, to), line), ParseOperand(range.substring(to + 4), line) };
+		else ins.Operands = new Instruction[] { ParseOperand(range.substring(0, to), line), ParseOperand(range.substring(to + 4, step), line),
+				ParseOperand(range.substring(step + 6), line) };
+
+		for(Instruction operand : ins.Operands) {
+			if(operand.Error != null) {
+				ins.Error = operand.Error;
+				break;
+			}
+		}
+
+		return ins;
+	}
+
+	/**
+	 * Compiles a value of a loop, like the value of a declaration.
+	 * 
+	 * @param value The value.
+	 * @param line The line number.
+	 * 
+	 * @return The compiled value.
+	 */
+	private static Instruction ParseOperand(String value, int line) {
+		Instruction ins = new Instruction(Instruction.LET, line);
+		value = StringUtils.Trim(value);
+
+		if(value.isEmpty())
+			ins.Error = new NullPointerException("Syntax error: value expected");
+		else {
+			ins.Value = value;
+			if(value.charAt(0) == '\"')
+				ins.Template = Template.Compile(value);
+		}
+
+		return ins;
+	}
+
+	/**
+	 * Returns the index of a keyword in a line, ignoring case and string literals.
+	 * 
+	 * @param input The line.
+	 * @param keyword The keyword.
+	 * @param from The index to start searching from.
+	 * 
+	 * @return The index of the keyword, or -1 if the line does not contain it.
+	 */
+	private static int IndexOfKeyword(String input, String keyword, int from) {
+		boolean quoted = false;
+
+		for(int u = 0; u < input.length(); u++) {
+			char c = input.charAt(u);
+			if(c == '\\' && quoted)
+				++u;
+			else if(c == '\"')
+				quoted = !quoted;
+			else if(!quoted && u >= from && input.regionMatches(true, u, keyword, 0, keyword.length()))
+				return u;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Builds the instruction table of the script.
+	 */
+	private void Index() {
+		List<Instruction> table = new ArrayList<Instruction>();
+		Index(Instructions, table);
+		Table = table.toArray(new Instruction[0]);
+	}
+
+	/**
+	 * Adds the instructions of a block, and of the blocks inside it, to the instruction table. Jumps are added at
+	 * the end of blocks, and the targets of the block instructions are resolved.
+	 * 
+	 * @param block The block.
+	 * @param table The instruction table.
+	 */
+	private static void Index(List<Instruction> block, List<Instruction> table) {
+		for(Instruction ins : block) {
+			ins.Index = table.size();
+			table.add(ins);
+
+			switch(ins.Type) {
+				case Instruction.IF:
+					Index(ins.Then, table);
+					if(ins.Else.isEmpty())
+						ins.Target = table.size();
+					else {
+						Instruction jump = new Instruction(Instruction.JUMP, ins.Line);
+						jump.Index = table.size();
+						table.add(jump);
+
+						ins.Target = table.size();
+						Index(ins.Else, table);
+						jump.Target = table.size();
+					}
+					ins.End = table.size();
+					break;
+				case Instruction.WHILE:
+				case Instruction.FOR:
+				case Instruction.FOREACH: {
+					Index(ins.Then, table);
+
+					Instruction jump = new Instruction(Instruction.JUMP, ins.Line);
+					jump.Index = table.size();
+					jump.Target = ins.Index;
+					table.add(jump);
+
+					ins.End = table.size();
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles a variable declaration or assignment.
+	 * 
+	 * @param type The type of the instruction.
+	 * @param info The line, without the keyword or variable prefix.
+	 * @param line The line number.
+	 * 
+	 * @return The compiled instruction.
+	 */
+	private static Instruction ParseAssignment(int type, String info, int line) {
+		Instruction ins = new Instruction(type, line);
+		boolean declaration = type == Instruction.LET || type == Instruction.VAR;
+		int length = info.length();
+		int u = 0;
+
+		while(u < length && info.charAt(u) != ' ' && info.charAt(u) != '=')
+			++u;
+		ins.Name = info.substring(0, u);
+		ins.Slot = SlotMap.Slot(ins.Name);
+
+		while(u < length && info.charAt(u) == ' ')
+			++u;
+
+		if(u == length) {
+			if(!declaration)
+				ins.Error = new NullPointerException("Syntax error: '=' expected");
+			return ins;
+		}
+		if(info.charAt(u) != '=') {
+			ins.Error = new InvalidNameException(declaration ? "Syntax error: variable name cannot contain spaces" : "Syntax error: Variable name cannot contain spaces");
+			return ins;
+		}
+
+		++u;
+		while(u < length && info.charAt(u) == ' ')
+			++u;
+
+		if(u == length)
+			ins.Error = new StringIndexOutOfBoundsException(0);
+		else {
+			ins.Value = info.substring(u);
+			if(ins.Value.charAt(0) == '\"')
+				ins.Template = Template.Compile(ins.Value);
+		}
+
+		return ins;
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+import Exom.Utils.ClassUtils;
+
+/**
+ * Contains methods used for compiling EXMY Scripts to Java classes.
+ * 
+ * A compiled script runs its blocks as Java control flow, and each statement as a direct call to the EXMY
+ * instance, with the instruction that was parsed for it.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class ScriptCompiler {
+
+	/**
+	 * Whether or not scripts that run often are compiled.
+	 *
+	 * @since 1.0
+	 */
+	public static boolean Enabled = true;
+	/**
+	 * The number of times a script has to be interpreted before it is compiled.
+	 *
+	 * @since 1.0
+	 */
+	public static int Threshold = 3;
+	/**
+	 * The maximum number of statements in a generated method.
+	 *
+	 * @since 1.0
+	 */
+	public static int MethodSize = 256;
+
+	/**
+	 * The thread that compiles scripts in the background.
+	 */
+	private static final ExecutorService Compiler = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "EXMY Compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Counts a run of an interpreted script, and compiles the script in the background once it reaches the threshold.
+	 * If the script cannot be compiled, the reason is reported once, and kept in the CompileError of the script.
+	 * 
+	 * @param script The script.
+	 *
+	 * @since 1.0
+	 */
+	public static void Hit(Script script) {
+		if(!Enabled || script.Hash == null || script.CompileError != null)
+			return;
+
+		if(script.Runs.incrementAndGet() == Threshold) {
+			Compiler.submit(() -> {
+				try {
+					script.Compiled = Compile(script);
+				}
+				catch(Exception ex) {
+					script.CompileError = ex;
+					System.err.println("[Error] The EXMY Script " + script.Hash + " cannot be compiled, and keeps being interpreted: " + ex);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Compiles a script to a Java class, in memory.
+	 * 
+	 * @param script The script to compile.
+	 * 
+	 * @return The compiled script, which runs on an EXMY instance with the instruction table of the script.
+	 * 
+	 * @throws Exception 
+	 *
+	 * @since 1.0
+	 */
+	@SuppressWarnings("unchecked")
+	public static BiConsumer<EXMY, Instruction[]> Compile(Script script) throws Exception {
+		String name = "EXMY" + script.Hash;
+		byte[] data = ClassUtils.Compile(Generate(script, name), name);
+		Class<?> compiled = new ClassUtils().new ByteLoader().Define(data, name);
+
+		return (BiConsumer<EXMY, Instruction[]>) compiled.getDeclaredConstructor().newInstance();
+	}
+
+	/**
+	 * Generates the Java source of a compiled script.
+	 * 
+	 * @param script The script.
+	 * @param name The name of the Java class.
+	 * 
+	 * @return The Java source.
+	 *
+	 * @since 1.0
+	 */
+	public static String Generate(Script script, String name) {
+		StringBuilder methods = new StringBuilder();
+		String main = GenerateBlock(script.Instructions, methods, new int[] { 0 });
+
+		StringBuilder source = new StringBuilder();
+		source.append("import Exom.Exomyte.EXMY;\n");
+		source.append("import Exom.Exomyte.Instruction;\n");
+		source.append("import Exom.Exomyte.Loop;\n");
+		source.append("public class ").append(name).append(" implements java.util.function.BiConsumer<EXMY, Instruction[]>\n");
+		source.append("{\n");
+		source.append("	public void accept(EXMY exmy, Instruction[] ins)\n");
+		source.append("	{\n");
+		if(main != null)
+			source.append("		").append(main).append("(exmy, ins);\n");
+		source.append("	}\n");
+		source.append(methods);
+		source.append("}");
+
+		return source.toString();
+	}
+
+	/**
+	 * Generates the methods which run a block.
+	 * 
+	 * @param block The block.
+	 * @param methods The generated methods.
+	 * @param count The number of generated methods.
+	 * 
+	 * @return The name of the method which runs the block, or null if the block is empty.
+	 */
+	private static String GenerateBlock(List<Instruction> block, StringBuilder methods, int[] count) {
+		if(block.isEmpty())
+			return null;
+
+		if(block.size() > MethodSize) {
+			StringBuilder body = new StringBuilder();
+			for(int u = 0; u < block.size(); u += MethodSize) {
+				String part = GenerateBlock(block.subList(u, Math.min(u + MethodSize, block.size())), methods, count);
+				body.append("		").append(part).append("(exmy, ins);\n");
+			}
+			return GenerateMethod(body, methods, count);
+		}
+
+		StringBuilder body = new StringBuilder();
+		for(Instruction ins : block) {
+			if(ins.Type == Instruction.IF) {
+				String then = GenerateBlock(ins.Then, methods, count);
+				String otherwise = GenerateBlock(ins.Else, methods, count);
+				String c = "c" + ins.Index;
+				String f = "f" + ins.Index;
+
+				body.append("		int ").append(c).append(" = exmy.Test(ins[").append(ins.Index).append("]);\n");
+				body.append("		if(").append(c).append(" >= 0)\n");
+				body.append("		{\n");
+				body.append("			boolean ").append(f).append(" = exmy.InIf;\n");
+				body.append("			exmy.InIf = true;\n");
+				if(then != null)
+					body.append("			if(").append(c).append(" > 0) ").append(then).append("(exmy, ins);\n");
+				if(otherwise != null)
+					body.append("			if(").append(c).append(" == 0) ").append(otherwise).append("(exmy, ins);\n");
+				body.append("			exmy.InIf = ").append(f).append(";\n");
+				body.append("		}\n");
+			}
+			else if(ins.Type == Instruction.WHILE) {
+				String loop = GenerateBlock(ins.Then, methods, count);
+
+				body.append("		while(exmy.Test(ins[").append(ins.Index).append("]) > 0)\n");
+				body.append("		{\n");
+				if(loop != null)
+					body.append("			").append(loop).append("(exmy, ins);\n");
+				body.append("		}\n");
+			}
+			else if(ins.Type == Instruction.FOR || ins.Type == Instruction.FOREACH) {
+				String loop = GenerateBlock(ins.Then, methods, count);
+				String l = "l" + ins.Index;
+
+				body.append("		for(Loop ").append(l).append(" = exmy.Begin(ins[").append(ins.Index).append("]); ");
+				body.append(l).append(" != null && exmy.Next(ins[").append(ins.Index).append("], ").append(l).append("); )\n");
+				body.append("		{\n");
+				if(loop != null)
+					body.append("			").append(loop).append("(exmy, ins);\n");
+				body.append("		}\n");
+			}
+			else body.append("		exmy.Execute(ins[").append(ins.Index).append("]);\n");
+		}
+
+		return GenerateMethod(body, methods, count);
+	}
+
+	/**
+	 * Generates a method.
+	 * 
+	 * @param body The body of the method.
+	 * @param methods The generated methods.
+	 * @param count The number of generated methods.
+	 * 
+	 * @return The name of the method.
+	 */
+	private static String GenerateMethod(StringBuilder body, StringBuilder methods, int[] count) {
+		String name = "Block" + count[0]++;
+
+		methods.append("	private static void ").append(name).append("(EXMY exmy, Instruction[] ins)\n");
+		methods.append("	{\n");
+		methods.append(body);
+		methods.append("	}\n");
+
+		return name;
+	}
+}
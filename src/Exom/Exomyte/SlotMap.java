@@ -0,0 +1,419 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Represents a map of EXMY Variables, which stores the values in a flat array indexed by variable slots.
+ * 
+ * Variable names are resolved to slots once, when a script is compiled. Slots are shared by all maps, so a slot
+ * resolved by any script can be used with any map. A slot is kept while a compiled script or a map refers to it, and
+ * its index is reused by another name afterwards, so the size of the maps follows the names in use rather than every
+ * name ever parsed. The map does not support null values.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class SlotMap extends AbstractMap<String, String> {
+
+	/**
+	 * The slots of the variable names in use.
+	 */
+	private static final Map<String, Reference> Slots = new ConcurrentHashMap<String, Reference>();
+	/**
+	 * The indices of the slots in use.
+	 */
+	private static final BitSet Used = new BitSet();
+	/**
+	 * The queue of the slots which are no longer in use.
+	 */
+	private static final ReferenceQueue<Slot> Released = new ReferenceQueue<Slot>();
+
+	/**
+	 * The slots of the variables, by index. Keeps the slots of the variables in use.
+	 */
+	private Slot[] slots;
+	/**
+	 * The values, by index. A null value means that the variable does not exist.
+	 */
+	private String[] values;
+	/**
+	 * The number of variables.
+	 */
+	private int count;
+
+	/**
+	 * Initializes a new instance of the SlotMap class.
+	 *
+	 * @since 1.0
+	 */
+	public SlotMap() {
+		slots = new Slot[16];
+		values = new String[16];
+		count = 0;
+	}
+
+	/**
+	 * Returns the slot of a variable name. If the name has no slot, a new slot is assigned to it.
+	 * 
+	 * @param name The variable name.
+	 * 
+	 * @return The slot of the variable name.
+	 *
+	 * @since 1.0
+	 */
+	public static Slot Slot(String name) {
+		Slot slot = Find(name);
+		if(slot != null)
+			return slot;
+
+		synchronized(Used) {
+			Release();
+
+			slot = Find(name);
+			if(slot == null) {
+				slot = new Slot(name, Used.nextClearBit(0));
+				Used.set(slot.Index);
+				Slots.put(name, new Reference(slot));
+			}
+			return slot;
+		}
+	}
+
+	/**
+	 * Returns the slot of a variable name, without assigning a new one.
+	 * 
+	 * @param name The variable name.
+	 * 
+	 * @return The slot of the variable name, or null if the name has no slot.
+	 *
+	 * @since 1.0
+	 */
+	public static Slot Find(String name) {
+		Reference reference = Slots.get(name);
+		return reference == null ? null : reference.get();
+	}
+
+	/**
+	 * Frees the indices of the slots which are no longer in use. Called while holding the lock of Used.
+	 */
+	private static void Release() {
+		Reference reference;
+		while((reference = (Reference) Released.poll()) != null) {
+			Slots.remove(reference.Name, reference);
+			Used.clear(reference.Index);
+		}
+	}
+
+	/**
+	 * Returns the value of a variable.
+	 * 
+	 * @param slot The slot of the variable.
+	 * 
+	 * @return The value of the variable, or null if the variable does not exist.
+	 *
+	 * @since 1.0
+	 */
+	public String Get(Slot slot) {
+		return slot.Index < values.length ? values[slot.Index] : null;
+	}
+
+	/**
+	 * Sets the value of a variable.
+	 * 
+	 * @param slot The slot of the variable.
+	 * @param value The value of the variable.
+	 * 
+	 * @return The previous value of the variable, or null if the variable did not exist.
+	 *
+	 * @since 1.0
+	 */
+	public String Put(Slot slot, String value) {
+		if(value == null)
+			throw new NullPointerException("Variables cannot have null values");
+
+		int index = slot.Index;
+		if(index >= values.length) {
+			int length = Math.max(index + 1, values.length * 2);
+			slots = Arrays.copyOf(slots, length);
+			values = Arrays.copyOf(values, length);
+		}
+
+		String previous = values[index];
+		if(previous == null)
+			++count;
+		slots[index] = slot;
+		values[index] = value;
+
+		return previous;
+	}
+
+	/**
+	 * Removes a variable.
+	 * 
+	 * @param slot The slot of the variable.
+	 * 
+	 * @return The value of the variable, or null if the variable did not exist.
+	 *
+	 * @since 1.0
+	 */
+	public String Remove(Slot slot) {
+		return Remove(slot.Index);
+	}
+
+	/**
+	 * Returns the value of a variable from a map of variables.
+	 * 
+	 * @param map The map of variables.
+	 * @param slot The slot of the variable.
+	 * 
+	 * @return The value of the variable, or null if the variable does not exist.
+	 *
+	 * @since 1.0
+	 */
+	public static String Get(Map<String, String> map, Slot slot) {
+		if(map instanceof SlotMap)
+			return ((SlotMap) map).Get(slot);
+		return map.get(slot.Name);
+	}
+
+	/**
+	 * Sets the value of a variable in a map of variables.
+	 * 
+	 * @param map The map of variables.
+	 * @param slot The slot of the variable.
+	 * @param value The value of the variable.
+	 *
+	 * @since 1.0
+	 */
+	public static void Put(Map<String, String> map, Slot slot, String value) {
+		if(map instanceof SlotMap)
+			((SlotMap) map).Put(slot, value);
+		else map.put(slot.Name, value);
+	}
+
+	/**
+	 * Removes the variable at an index.
+	 * 
+	 * @param index The index of the variable.
+	 * 
+	 * @return The value of the variable, or null if the variable did not exist.
+	 */
+	private String Remove(int index) {
+		if(index >= values.length || values[index] == null)
+			return null;
+
+		String previous = values[index];
+		slots[index] = null;
+		values[index] = null;
+		--count;
+
+		return previous;
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public String get(Object key) {
+		if(!(key instanceof String))
+			return null;
+
+		Slot slot = Find((String) key);
+		return slot == null ? null : Get(slot);
+	}
+
+	@Override
+	public String put(String key, String value) {
+		return Put(Slot(key), value);
+	}
+
+	@Override
+	public String remove(Object key) {
+		if(!(key instanceof String))
+			return null;
+
+		Slot slot = Find((String) key);
+		return slot == null ? null : Remove(slot);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(slots, null);
+		Arrays.fill(values, null);
+		count = 0;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public int size() {
+				return count;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator();
+			}
+		};
+	}
+
+	/**
+	 * Represents an iterator over the variables of the map.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		/**
+		 * The index of the next variable.
+		 */
+		private int next = Advance(0);
+		/**
+		 * The index of the last returned variable, or -1.
+		 */
+		private int last = -1;
+
+		/**
+		 * Returns the first index with a variable, starting from an index.
+		 * 
+		 * @param index The index to start from.
+		 * 
+		 * @return The first index with a variable.
+		 */
+		private int Advance(int index) {
+			while(index < values.length && values[index] == null)
+				++index;
+			return index;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+
+			last = next;
+			next = Advance(next + 1);
+
+			final Slot slot = slots[last];
+			return new AbstractMap.SimpleEntry<String, String>(slot.Name, values[last]) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public String setValue(String value) {
+					super.setValue(value);
+					return Put(slot, value);
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if(last < 0)
+				throw new IllegalStateException();
+
+			Remove(last);
+			last = -1;
+		}
+	}
+
+	/**
+	 * Represents the slot of a variable name.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	public static final class Slot {
+
+		/**
+		 * The variable name.
+		 *
+		 * @since 1.0
+		 */
+		public final String Name;
+		/**
+		 * The index of the slot in the maps.
+		 *
+		 * @since 1.0
+		 */
+		public final int Index;
+
+		private Slot(String name, int index) {
+			Name = name;
+			Index = index;
+		}
+	}
+
+	/**
+	 * Represents a weak reference to a slot, which frees the index of the slot once the slot is no longer in use.
+	 * 
+	 * @author UnexomWid
+	 *
+	 * @since 1.0
+	 */
+	private static class Reference extends WeakReference<Slot> {
+
+		/**
+		 * The variable name of the slot.
+		 */
+		final String Name;
+		/**
+		 * The index of the slot.
+		 */
+		final int Index;
+
+		Reference(Slot slot) {
+			super(slot, Released);
+			Name = slot.Name;
+			Index = slot.Index;
+		}
+	}
+}
@@ -0,0 +1,365 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Exomyte;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a compiled line of EXMY Script text, made of literal strings and variable references.
+ * 
+ * A line such as "a" + *x + "b" + $y is parsed and validated once. Rendering it only appends the literals and the
+ * values of the variables. Syntax errors are kept as the last segment, so they are reported in the same order as
+ * the errors of missing variables before them.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class Template {
+
+	/**
+	 * A literal string segment.
+	 *
+	 * @since 1.0
+	 */
+	public static final int LITERAL = 0;
+	/**
+	 * A RAM Variable segment.
+	 *
+	 * @since 1.0
+	 */
+	public static final int RAM = 1;
+	/**
+	 * A File Variable segment.
+	 *
+	 * @since 1.0
+	 */
+	public static final int FILE = 2;
+	/**
+	 * A syntax error segment.
+	 *
+	 * @since 1.0
+	 */
+	public static final int ERROR = 3;
+
+	/**
+	 * The maximum number of templates kept in the cache.
+	 *
+	 * @since 1.0
+	 */
+	public static int CacheCapacity = 4096;
+	/**
+	 * The compiled templates, by line, from the least recently used.
+	 */
+	private static final Map<String, Template> Cache = Collections.synchronizedMap(new LinkedHashMap<String, Template>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+			return size() > CacheCapacity;
+		}
+	});
+
+	/**
+	 * The types of the segments.
+	 *
+	 * @since 1.0
+	 */
+	public final int[] Types;
+	/**
+	 * The texts of the segments: the literal, the variable name, or the error message.
+	 *
+	 * @since 1.0
+	 */
+	public final String[] Texts;
+	/**
+	 * The variable slots of the segments, or null for segments which are not variables.
+	 *
+	 * @since 1.0
+	 */
+	public final SlotMap.Slot[] Slots;
+	/**
+	 * The length of all literals.
+	 */
+	private final int length;
+
+	/**
+	 * Initializes a new instance of the Template class.
+	 * 
+	 * @param types The types of the segments.
+	 * @param texts The texts of the segments.
+	 *
+	 * @since 1.0
+	 */
+	public Template(int[] types, String[] texts) {
+		Types = types;
+		Texts = texts;
+		Slots = new SlotMap.Slot[types.length];
+
+		int literals = 0;
+		for(int u = 0; u < types.length; u++) {
+			if(types[u] == RAM || types[u] == FILE)
+				Slots[u] = SlotMap.Slot(texts[u]);
+			else if(types[u] == LITERAL)
+				literals += texts[u].length();
+		}
+		length = literals;
+	}
+
+	/**
+	 * Returns the compiled template of a line. Templates are cached by line.
+	 * 
+	 * @param line The line.
+	 * 
+	 * @return The compiled template.
+	 *
+	 * @since 1.0
+	 */
+	public static Template Compile(String line) {
+		Template template = Cache.get(line);
+		if(template == null) {
+			template = Parse(line);
+			Cache.put(line, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Renders the template.
+	 * 
+	 * @param ram The map of RAM Variables.
+	 * @param file The map of File Variables.
+	 * 
+	 * @return The rendered line.
+	 * 
+	 * @throws NullPointerException If the line has a syntax error, or a variable does not exist.
+	 *
+	 * @since 1.0
+	 */
+	public String Render(Map<String, String> ram, Map<String, String> file) {
+		if(Types.length == 1 && Types[0] == LITERAL)
+			return Texts[0];
+
+		StringBuilder fin = new StringBuilder(length + 16 * Types.length);
+		for(int u = 0; u < Types.length; u++) {
+			switch(Types[u]) {
+				case LITERAL:
+					fin.append(Texts[u]);
+					break;
+				case RAM:
+					fin.append(Variable(ram, u));
+					break;
+				case FILE:
+					fin.append(Variable(file, u));
+					break;
+				default:
+					throw new NullPointerException(Texts[u]);
+			}
+		}
+		return fin.toString();
+	}
+
+	/**
+	 * Returns the value of a variable segment.
+	 * 
+	 * @param vars The map of variables.
+	 * @param segment The index of the segment.
+	 * 
+	 * @return The value of the variable.
+	 */
+	private String Variable(Map<String, String> vars, int segment) {
+		String value = SlotMap.Get(vars, Slots[segment]);
+		if(value == null)
+			throw new NullPointerException("Syntax error: \"" + Texts[segment] + "\" is not a variable");
+		return value;
+	}
+
+	/**
+	 * Parses a line into a template.
+	 * 
+	 * @param line The line to parse.
+	 * 
+	 * @return The template.
+	 */
+	private static Template Parse(String line) {
+		List<Integer> types = new ArrayList<Integer>();
+		List<String> texts = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+
+		try {
+			boolean mode = false;
+			boolean esc = false;
+			boolean before = false;
+			StringBuilder var = new StringBuilder();
+
+			for(int u = 0; u < line.length(); u++) {
+				if(u > 0 && line.charAt(u - 1) != '\\')
+					esc = false;
+
+				char c = line.charAt(u);
+
+				if(c == '\\') {
+					esc = !esc;
+					if(!esc) {
+						if(!mode)
+							throw new Exception("Syntax error: '\\\\'");
+						else literal.append('\\');
+					}
+				}
+				else if(c == '\"') {
+					if(!esc) {
+						mode = !mode;
+						if(!mode) {
+							before = true;
+						}
+						else if(var.length() > 0) {
+							if(before) {
+								if(var.charAt(0) != '+')
+									throw new Exception("Syntax error: '+' expected between string and variable");
+							}
+							else {
+								if(var.charAt(0) == '+')
+									throw new Exception("Syntax error: '+' was not expected");
+							}
+							if(var.charAt(var.length() - 1) != '+')
+								throw new Exception("Syntax error: '+' expected between variable and string");
+
+							AddVariable(var, before ? 1 : 0, types, texts, literal);
+							var.setLength(0);
+						}
+					}
+					else {
+						if(!mode)
+							throw new Exception("Syntax error: '\\\"'");
+						else literal.append('\"');
+					}
+				}
+				else if(mode) {
+					if(esc) {
+						if(c == 'n')
+							literal.append('\n');
+						else if(c == 'r')
+							literal.append('\r');
+						else if(c == 'b')
+							literal.append('\b');
+						else if(c == 't')
+							literal.append('\t');
+						else if(c == 'f')
+							literal.append('\f');
+						else throw new Exception("Syntax error: '\\" + c + "' is not a valid escape");
+					}
+					else literal.append(c);
+				}
+				else {
+					if(c != ' ')
+						var.append(c);
+				}
+			}
+
+			if(mode)
+				throw new Exception("Syntax error: expected \" at end of string");
+			if(var.length() > 0) {
+				if(before) {
+					if(var.charAt(0) != '+')
+						throw new Exception("Syntax error: '+' expected between string and variable");
+				}
+				else {
+					if(var.charAt(0) == '+')
+						throw new Exception("Syntax error: '+' was not expected");
+				}
+
+				AddVariable(var, before ? 1 : 0, types, texts, literal);
+			}
+
+			AddLiteral(types, texts, literal);
+		}
+		catch(Exception ex) {
+			AddLiteral(types, texts, literal);
+			types.add(ERROR);
+			texts.add(ex.getMessage());
+		}
+
+		if(types.isEmpty()) {
+			types.add(LITERAL);
+			texts.add("");
+		}
+
+		int[] typeArray = new int[types.size()];
+		for(int u = 0; u < typeArray.length; u++)
+			typeArray[u] = types.get(u);
+
+		return new Template(typeArray, texts.toArray(new String[0]));
+	}
+
+	/**
+	 * Adds a variable segment, after the pending literal.
+	 * 
+	 * @param reference The text containing the variable reference.
+	 * @param index The index of the variable prefix (* or $).
+	 * @param types The types of the segments.
+	 * @param texts The texts of the segments.
+	 * @param literal The pending literal.
+	 * 
+	 * @throws Exception If the variable reference is invalid.
+	 */
+	private static void AddVariable(StringBuilder reference, int index, List<Integer> types, List<String> texts, StringBuilder literal) throws Exception {
+		String var = reference.toString();
+		char prefix = var.charAt(index);
+		if(prefix != '*' && prefix != '$')
+			throw new Exception("Syntax error: expected * or $");
+
+		index++;
+		int end = index;
+		while(end < var.length()) {
+			int code = (int) var.charAt(end);
+			if(code < 48 || (code > 57 && code < 65) || (code > 90 && code < 97) || code > 122)
+				break;
+			end++;
+		}
+		if(end == index)
+			throw new Exception("Syntax error: \"\" is not a variable");
+
+		AddLiteral(types, texts, literal);
+		types.add(prefix == '*' ? RAM : FILE);
+		texts.add(var.substring(index, end));
+	}
+
+	/**
+	 * Adds the pending literal as a segment, if it is not empty.
+	 * 
+	 * @param types The types of the segments.
+	 * @param texts The texts of the segments.
+	 * @param literal The pending literal.
+	 */
+	private static void AddLiteral(List<Integer> types, List<String> texts, StringBuilder literal) {
+		if(literal.length() > 0) {
+			types.add(LITERAL);
+			texts.add(literal.toString());
+			literal.setLength(0);
+		}
+	}
+}
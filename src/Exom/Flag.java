@@ -47,6 +47,41 @@ public class Flag {
      */
     public static boolean NoChronometer = false;
 
+    /**
+     * Whether or not to profile EXMY Scripts, and print the time of each line when they end.
+     *
+     * @since 1.0
+     */
+    public static boolean Profile = false;
+
+    /**
+     * Whether or not to profile EXMY Scripts, and write their collapsed stacks to a '.folded' file for flame graphs.
+     *
+     * @since 1.0
+     */
+    public static boolean FlameGraph = false;
+
+    /**
+     * Whether or not to preload the EXCMs of the namespace on background threads at startup.
+     *
+     * @since 1.0
+     */
+    public static boolean Preload = false;
+
+    /**
+     * Whether or not to preload the EXCMs of the namespace at startup, and warm them up by calling their information methods.
+     *
+     * @since 1.0
+     */
+    public static boolean WarmUp = false;
+
+    /**
+     * Whether or not to run the EXCMs of EXMY Scripts on a pool of child JVMs, so they cannot stop the current process.
+     *
+     * @since 1.0
+     */
+    public static boolean Isolate = false;
+
     /**
      * Toggles an Exom runtime flag.
      *
@@ -60,6 +95,16 @@ public class Flag {
             Minimal = !Minimal;
         } else if(flag.equals("-c") || flag.equals("--no-chronometer")) {
             NoChronometer = !NoChronometer;
+        } else if(flag.equals("-p") || flag.equals("--profile")) {
+            Profile = !Profile;
+        } else if(flag.equals("-f") || flag.equals("--flame-graph")) {
+            FlameGraph = !FlameGraph;
+        } else if(flag.equals("-l") || flag.equals("--preload")) {
+            Preload = !Preload;
+        } else if(flag.equals("-w") || flag.equals("--warm-up")) {
+            WarmUp = !WarmUp;
+        } else if(flag.equals("-i") || flag.equals("--isolate")) {
+            Isolate = !Isolate;
         } else {
             throw new InvalidFlagException("'" + flag + "' is not a valid flag.");
         }
@@ -28,8 +28,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import Exom.Exceptions.CompilationException;
 import Exom.Exceptions.InvalidCommandException;
 import Exom.Exom;
+import Exom.Exomyte.EXCB;
+import Exom.Exomyte.EXCH;
+import Exom.Exomyte.EXCMCompiler;
+import Exom.Exomyte.EXMYRunner;
 import Exom.Objects.Command.CommandArgs;
 import Exom.Utils.ByteUtils;
 import Exom.Utils.Cryptography.Hash;
@@ -37,6 +42,7 @@ import Exom.Objects.Command.Command;
 import Exom.Objects.FunctionResponse;
 import Exom.Utils.StreamUtils;
 import Exom.Utils.StringUtils;
+import Exom.Utils.TimeUtils;
 
 /**
  * Contains Exom commands.
@@ -211,6 +217,167 @@ public class Commands {
                 }
             }));
 
+            List.add(new Command("EXMY", new String[] { "exomyte" }, "Runs EXMY Scripts in parallel", (input) -> {
+                try {
+                    StringBuilder res = new StringBuilder();
+                    String lwr = input.Args[0].toLowerCase();
+
+                    if(lwr.equals("-h") || lwr.equals("--help")) {
+                        res.append(FormatInfo("EXMY", null, "Runs EXMY Scripts in parallel"));
+                        res.append("\n\nArguments: ");
+                        res.append("\n[FILE/DIRECTORY]\n    Runs [FILE], or all .exmy files in [DIRECTORY]");
+                        res.append("\n--help, -h\n    Shows information about the command");
+                        res.append("\n--threads [COUNT], -t [COUNT]\n    Runs at most [COUNT] scripts at the same time");
+                    } else {
+                        int threads = EXMYRunner.DefaultThreads;
+                        int start = 0;
+                        if(lwr.equals("-t") || lwr.equals("--threads")) {
+                            threads = Integer.parseInt(input.Args[1]);
+                            start = 2;
+                        }
+
+                        java.util.List<String> scripts = EXMYRunner.Find(Arrays.copyOfRange(input.Args, start, input.Args.length));
+                        int failed = 0;
+
+                        for(EXMYRunner.Result result : new EXMYRunner(threads).Run(scripts)) {
+                            if(result.Failed())
+                                ++failed;
+
+                            res.append(result.Failed() ? "[FAILED] " : "[OK] ");
+                            res.append(result.Script);
+                            res.append(" - ");
+                            res.append(TimeUtils.GetTimeString(result.Time));
+                            if(result.Errors > 0)
+                                res.append(" - ").append(result.Errors).append(result.Errors != 1 ? " exceptions" : " exception");
+                            res.append("\n");
+                            res.append(result.Output);
+                            if(result.Failure != null)
+                                res.append(result.Failure).append("\n");
+                        }
+
+                        res.append("\n");
+                        res.append(scripts.size()).append(scripts.size() != 1 ? " scripts, " : " script, ");
+                        res.append(failed).append(" failed\n");
+                    }
+
+                    return new FunctionResponse(true, res.toString());
+                } catch (Exception ex) {
+                    return new FunctionResponse(false, ex.getMessage());
+                }
+            }));
+
+            List.add(new Command("EXCH", new String[] { "exomcommandhandler" }, "Regenerates EXCH files with the current generator", (input) -> {
+                try {
+                    StringBuilder res = new StringBuilder();
+                    String lwr = input.Args[0].toLowerCase();
+
+                    if(lwr.equals("-h") || lwr.equals("--help")) {
+                        res.append(FormatInfo("EXCH", null, "Regenerates EXCH files with the current generator"));
+                        res.append("\n\nArguments: ");
+                        res.append("\n[FILE]\n    Regenerates [FILE], if it was generated by an older version of Exom");
+                        res.append("\n--help, -h\n    Shows information about the command");
+                    }
+                    else {
+                        boolean first = true;
+                        for(String file : input.Args) {
+                            File fl = new File(file);
+                            if(!fl.exists() || fl.isDirectory())
+                                throw new FileNotFoundException("The file '" + file + "' does not exist.");
+                            if(first)
+                                first = false;
+                            else res.append("\n");
+
+                            res.append(StringUtils.FileName(file));
+                            res.append(EXCH.Regenerate(file) ? " - regenerated" : " - up to date");
+                        }
+                    }
+
+                    return new FunctionResponse(true, res.toString());
+                } catch (Exception ex) {
+                    return new FunctionResponse(false, ex.getMessage());
+                }
+            }));
+
+            List.add(new Command("EXCMC", new String[] { "excmcompiler" }, "Compiles EXCM and EXCH sources in parallel", (input) -> {
+                try {
+                    StringBuilder res = new StringBuilder();
+                    String lwr = input.Args[0].toLowerCase();
+
+                    if(lwr.equals("-h") || lwr.equals("--help")) {
+                        res.append(FormatInfo("EXCMC", null, "Compiles EXCM and EXCH sources in parallel"));
+                        res.append("\n\nArguments: ");
+                        res.append("\n[FILE/DIRECTORY]\n    Compiles [FILE], or all .java files in [DIRECTORY] (Name.exch.java to Name.exch, and Name.java to Name.excm)");
+                        res.append("\n--help, -h\n    Shows information about the command");
+                        res.append("\n--threads [COUNT], -t [COUNT]\n    Runs at most [COUNT] compiler tasks at the same time");
+                        res.append("\n--force, -f\n    Compiles the sources which did not change since they were last compiled");
+                    } else {
+                        int threads = EXCMCompiler.DefaultThreads;
+                        boolean force = false;
+                        int start = 0;
+                        while(start < input.Args.length) {
+                            String arg = input.Args[start].toLowerCase();
+                            if(arg.equals("-t") || arg.equals("--threads")) {
+                                threads = Integer.parseInt(input.Args[start + 1]);
+                                start += 2;
+                            } else if(arg.equals("-f") || arg.equals("--force")) {
+                                force = true;
+                                ++start;
+                            } else break;
+                        }
+
+                        java.util.List<EXCMCompiler.Unit> units = EXCMCompiler.Find(Arrays.copyOfRange(input.Args, start, input.Args.length));
+                        int[] counts = new int[3];
+
+                        for(EXCMCompiler.Result result : new EXCMCompiler(threads).Compile(units, force)) {
+                            ++counts[result.Status];
+                            res.append(result.Status == EXCMCompiler.Result.COMPILED ? "[COMPILED] " : result.Status == EXCMCompiler.Result.SKIPPED ? "[SKIPPED] " : "[FAILED] ");
+                            res.append(new File(result.Unit.Path, result.Unit.FileName()).getPath());
+                            res.append("\n");
+                            if(result.Error instanceof CompilationException)
+                                res.append(((CompilationException) result.Error).GetErrors()).append("\n");
+                            else if(result.Error != null)
+                                res.append(result.Error).append("\n");
+                        }
+
+                        res.append("\n");
+                        res.append(units.size()).append(units.size() != 1 ? " units, " : " unit, ");
+                        res.append(counts[EXCMCompiler.Result.COMPILED]).append(" compiled, ");
+                        res.append(counts[EXCMCompiler.Result.SKIPPED]).append(" skipped, ");
+                        res.append(counts[EXCMCompiler.Result.FAILED]).append(" failed\n");
+                    }
+
+                    return new FunctionResponse(true, res.toString());
+                } catch (Exception ex) {
+                    return new FunctionResponse(false, ex.getMessage());
+                }
+            }));
+
+            List.add(new Command("EXCB", new String[] { "exomcommandbundle" }, "Packs EXCM files into an EXCB", (input) -> {
+                try {
+                    StringBuilder res = new StringBuilder();
+                    String lwr = input.Args[0].toLowerCase();
+
+                    if(lwr.equals("-h") || lwr.equals("--help")) {
+                        res.append(FormatInfo("EXCB", null, "Packs EXCM files into an EXCB"));
+                        res.append("\n\nArguments: ");
+                        res.append("\n[OUTPUT] [FILE/DIRECTORY]\n    Packs [FILE], or all .excm files in [DIRECTORY], into the [OUTPUT] bundle");
+                        res.append("\n--help, -h\n    Shows information about the command");
+                    }
+                    else {
+                        if(input.Args.length < 2)
+                            throw new IllegalArgumentException("Expected a bundle and at least one EXCM file or directory.");
+
+                        int count = EXCB.Write(input.Args[0], Arrays.copyOfRange(input.Args, 1, input.Args.length));
+                        res.append(StringUtils.FileName(input.Args[0]));
+                        res.append(" - ").append(count).append(count != 1 ? " EXCMs" : " EXCM");
+                    }
+
+                    return new FunctionResponse(true, res.toString());
+                } catch (Exception ex) {
+                    return new FunctionResponse(false, ex.getMessage());
+                }
+            }));
+
             Initialized = true;
         }
     }
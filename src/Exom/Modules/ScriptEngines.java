@@ -46,14 +46,14 @@ public class ScriptEngines {
 	/**
 	 * Whether or not this module has been initialized.
 	 */
-	public static boolean Initialized = false;
+	public static volatile boolean Initialized = false;
 
 	/**
 	 * Initializes this module.
 	 *
 	 * @since 1.0
 	 */
-	public static void Initialize() {
+	public static synchronized void Initialize() {
 		if(!Initialized) {
 			JavaScript = new ScriptEngineManager().getEngineByName("JavaScript");
 			Initialized = true;
@@ -22,23 +22,46 @@
 
 package Exom.Utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
 import javax.tools.StandardJavaFileManager;
 import javax.tools.ToolProvider;
 
+import Exom.Exceptions.CompilationException;
+
 /**
  * Contains methods used for Java Class interaction.
  * 
@@ -49,7 +72,55 @@ import javax.tools.ToolProvider;
 public class ClassUtils {
 
 	/**
-	 * Compiles a Java Class.
+	 * The maximum number of classes kept in the cache. When the cache is full, the least recently used class is
+	 * evicted, and can be unloaded once it is no longer used.
+	 *
+	 * @since 1.0
+	 */
+	public static int CacheCapacity = 256;
+	/**
+	 * The loaded classes, by the canonical path of their file (and their name, if it was given).
+	 */
+	private static final Map<String, LoadedClass> Cache = Collections.synchronizedMap(new LinkedHashMap<String, LoadedClass>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LoadedClass> eldest) {
+			if(size() <= CacheCapacity)
+				return false;
+
+			Evictions.incrementAndGet();
+			return true;
+		}
+	});
+	/**
+	 * The number of loads served from the cache.
+	 */
+	private static final AtomicLong Hits = new AtomicLong();
+	/**
+	 * The number of loads which defined a class.
+	 */
+	private static final AtomicLong Misses = new AtomicLong();
+	/**
+	 * The number of classes evicted from the cache.
+	 */
+	private static final AtomicLong Evictions = new AtomicLong();
+	/**
+	 * Guards the compiler, which is not thread safe.
+	 */
+	private static final Object CompilerLock = new Object();
+	/**
+	 * The compiler, created by the first compilation.
+	 */
+	private static JavaCompiler Compiler;
+	/**
+	 * The file manager of the compiler, used to find the classes referenced by the compiled sources.
+	 */
+	private static StandardJavaFileManager FileManager;
+
+	/**
+	 * Compiles a Java Class. The source and the class are kept in memory, and only the class file is written, so
+	 * nothing is left behind if the compilation fails. One compiler is reused for all compilations.
 	 * 
 	 * @param source The code of the class.
 	 * @param path The path where to compile the class to.
@@ -58,41 +129,151 @@ public class ClassUtils {
 	 * 
 	 * @throws IOException 
 	 * @throws UnsupportedEncodingException 
+	 * @throws CompilationException If the source code is invalid. The exception contains the diagnostics.
 	 *
 	 * @since 1.0
 	 */
 	public static void Compile(String source, String path, String name, String ext) throws UnsupportedEncodingException, IOException {
-		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-		if(compiler == null)
-			throw new NullPointerException("Compilation Exception: Exom was not ran with JDK");
-		
+		Save(Compile(source, name), path, name, ext);
+	}
+	
+	/**
+	 * Writes a compiled Java Class to a file. The file is replaced atomically, so it is never read half written.
+	 * 
+	 * @param data The bytes of the class.
+	 * @param path The path where to write the class to.
+	 * @param name The name of the class.
+	 * @param ext The extension of the class.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Save(byte[] data, String path, String name, String ext) throws IOException {
 		if(path.endsWith("/") || path.endsWith("\\"))
 			path = path.substring(0, path.length() - 1);
 		
-		FileOutputStream writef = new FileOutputStream(path + "/" + name + ".java");
-		writef.write(source.getBytes(StandardCharsets.UTF_8));
-		writef.close();
-		
-		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
-		StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
-		Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromStrings(Arrays.asList(path + "/" + name + ".java"));
-		JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, compilationUnits);
-		boolean success = task.call();
-		fileManager.close();
-		
-		File javaFile = new File(path + "/" + name + ".java");
-		File classFile = new File(path + "/" + name + ".class");
 		File extFile = new File(path + "/" + name + "." + ext);
+		File temp = File.createTempFile(extFile.getName(), ".tmp", extFile.getAbsoluteFile().getParentFile());
+		try {
+			Files.write(temp.toPath(), data);
+			try {
+				Files.move(temp.toPath(), extFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(IOException ex) {
+				Files.move(temp.toPath(), extFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			temp.delete();
+		}
+	}
+	
+	/**
+	 * Compiles a Java Class in memory.
+	 * 
+	 * @param source The code of the class.
+	 * @param name The name of the class.
+	 * 
+	 * @return The bytes of the class.
+	 * 
+	 * @throws IOException 
+	 * @throws CompilationException If the source code is invalid. The exception contains the diagnostics.
+	 *
+	 * @since 1.0
+	 */
+	public static byte[] Compile(String source, String name) throws IOException {
+		synchronized(CompilerLock) {
+			if(Compiler == null) {
+				Compiler = ToolProvider.getSystemJavaCompiler();
+				if(Compiler == null)
+					throw new NullPointerException("Compilation Exception: Exom was not ran with JDK");
+				FileManager = Compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+			}
+			
+			DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+			MemoryFileManager fileManager = new MemoryFileManager(FileManager);
+			JavaFileObject unit = new SourceFile(name, source);
+			
+			boolean success = Compiler.getTask(null, fileManager, diagnostics, null, null, Arrays.asList(unit)).call();
+			ByteArrayOutputStream data = fileManager.Classes.get(name);
+			
+			if(!success || data == null)
+				throw new CompilationException("Compilation Exception: Invalid source code", diagnostics.getDiagnostics());
+			return data.toByteArray();
+		}
+	}
+	
+	/**
+	 * Compiles many Java Classes in memory, with one compiler task. The classes are compiled by a new compiler, so
+	 * batches can be compiled in parallel.
+	 * 
+	 * Units which do not compile are reported, and the other units are compiled again without them.
+	 * 
+	 * @param sources The code of the classes, by name.
+	 * @param errors The map to which the exceptions of the classes which could not be compiled are added.
+	 * 
+	 * @return The bytes of the compiled classes, by name.
+	 * 
+	 * @throws IOException 
+	 *
+	 * @since 1.0
+	 */
+	public static Map<String, byte[]> Compile(Map<String, String> sources, Map<String, CompilationException> errors) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null)
+			throw new NullPointerException("Compilation Exception: Exom was not ran with JDK");
 		
-		javaFile.delete();
-		
-		if(success == false)
-			throw new IllegalArgumentException("Compilation Exception: Invalid source code");
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		Map<String, String> pending = new LinkedHashMap<String, String>(sources);
 		
-		if(extFile.exists())
-			extFile.delete();
+		try(StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			while(!pending.isEmpty()) {
+				DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+				MemoryFileManager fileManager = new MemoryFileManager(standardFileManager);
+				List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+				for(Map.Entry<String, String> entry : pending.entrySet())
+					units.add(new SourceFile(entry.getKey(), entry.getValue()));
+				
+				if(compiler.getTask(null, fileManager, diagnostics, null, null, units).call()) {
+					for(String name : pending.keySet()) {
+						ByteArrayOutputStream data = fileManager.Classes.get(name);
+						if(data == null)
+							errors.put(name, new CompilationException("Compilation Exception: Invalid source code", diagnostics.getDiagnostics()));
+						else classes.put(name, data.toByteArray());
+					}
+					break;
+				}
+				
+				Map<String, List<Diagnostic<? extends JavaFileObject>>> failed = new HashMap<String, List<Diagnostic<? extends JavaFileObject>>>();
+				for(Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+					if(diagnostic.getKind() != Diagnostic.Kind.ERROR || !(diagnostic.getSource() instanceof SourceFile))
+						continue;
+					
+					String name = ((SourceFile) diagnostic.getSource()).Name;
+					List<Diagnostic<? extends JavaFileObject>> unitDiagnostics = failed.get(name);
+					if(unitDiagnostics == null) {
+						unitDiagnostics = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+						failed.put(name, unitDiagnostics);
+					}
+					unitDiagnostics.add(diagnostic);
+				}
+				
+				if(failed.isEmpty()) {
+					// The errors do not belong to a unit, so every unit fails.
+					for(String name : pending.keySet())
+						errors.put(name, new CompilationException("Compilation Exception: Invalid source code", diagnostics.getDiagnostics()));
+					break;
+				}
+				
+				for(Map.Entry<String, List<Diagnostic<? extends JavaFileObject>>> entry : failed.entrySet()) {
+					errors.put(entry.getKey(), new CompilationException("Compilation Exception: Invalid source code", entry.getValue()));
+					pending.remove(entry.getKey());
+				}
+			}
+		}
 		
-		classFile.renameTo(extFile);
+		return classes;
 	}
 	
 	/**
@@ -143,7 +324,7 @@ public class ClassUtils {
 	}
 	
 	/**
-	 * Loads a Java Class from a file.
+	 * Loads a Java Class from a file. Classes are cached until their file changes.
 	 * 
 	 * @param classFile The Java Class file to load from.
 	 * 
@@ -154,11 +335,11 @@ public class ClassUtils {
 	 * @since 1.0
 	 */
 	public static java.lang.Class<?> Load(String classFile) throws ClassNotFoundException {
-		return new ClassUtils().new ByteLoader().Load(classFile);
+		return Cached(classFile, null).Type;
 	}
 	
 	/**
-	 * Loads a Java Class from a file.
+	 * Loads a Java Class from a file. Classes are cached until their file changes.
 	 * 
 	 * @param classFile The Java Class file to load from.
 	 * @param className The name of the Java Class.
@@ -170,7 +351,195 @@ public class ClassUtils {
 	 * @since 1.0
 	 */
 	public static java.lang.Class<?> Load(String classFile, String className) throws ClassNotFoundException {
-		return new ClassUtils().new ByteLoader().Load(classFile, className);
+		return Cached(classFile, className).Type;
+	}
+	
+	/**
+	 * Returns a handle to a public static method from a Java Class file. Handles are cached with their class, so
+	 * they are only looked up once for each version of the file.
+	 * 
+	 * Unlike Run, invoking the handle with invokeExact does not box the arguments in an array.
+	 * 
+	 * @param classFile The Java Class file.
+	 * @param method The name of the method.
+	 * @param type The type of the method.
+	 * 
+	 * @return The method handle.
+	 * 
+	 * @throws ClassNotFoundException 
+	 * @throws NoSuchMethodException 
+	 * @throws IllegalAccessException 
+	 *
+	 * @since 1.0
+	 */
+	public static MethodHandle GetMethod(String classFile, String method, MethodType type) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+		LoadedClass loaded = Cached(classFile, null);
+		String key = method + type.toMethodDescriptorString();
+		
+		MethodHandle handle = loaded.Methods.get(key);
+		if(handle == null) {
+			handle = MethodHandles.publicLookup().findStatic(loaded.Type, method, type);
+			loaded.Methods.put(key, handle);
+		}
+		return handle;
+	}
+	
+	/**
+	 * Returns the number of loads served from the class cache.
+	 * 
+	 * @return The number of hits.
+	 *
+	 * @since 1.0
+	 */
+	public static long GetCacheHits() {
+		return Hits.get();
+	}
+	
+	/**
+	 * Returns the number of loads which were not served from the class cache, because the class was not cached or
+	 * its file changed.
+	 * 
+	 * @return The number of misses.
+	 *
+	 * @since 1.0
+	 */
+	public static long GetCacheMisses() {
+		return Misses.get();
+	}
+	
+	/**
+	 * Returns the number of classes evicted from the class cache because it was full.
+	 * 
+	 * @return The number of evictions.
+	 *
+	 * @since 1.0
+	 */
+	public static long GetCacheEvictions() {
+		return Evictions.get();
+	}
+	
+	/**
+	 * Loads a Java Class from a file, or returns it from the cache if its file did not change since it was loaded.
+	 * Each class is defined by its own loader, so it can be unloaded after it is evicted.
+	 * 
+	 * @param classFile The Java Class file to load from.
+	 * @param className The name of the Java Class, or null to use the name of the file.
+	 * 
+	 * @return The Java Class.
+	 * 
+	 * @throws ClassNotFoundException 
+	 */
+	private static LoadedClass Cached(String classFile, String className) throws ClassNotFoundException {
+		String key;
+		long modified;
+		long size;
+		try {
+			Path file = Paths.get(classFile);
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			key = className == null ? file.toRealPath().toString() : file.toRealPath() + "\n" + className;
+			modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+			size = attributes.size();
+		}
+		catch(Exception ex) {
+			throw new ClassNotFoundException();
+		}
+
+		LoadedClass loaded = Cache.get(key);
+		if(loaded != null && loaded.Modified == modified && loaded.Size == size) {
+			Hits.incrementAndGet();
+			return loaded;
+		}
+		
+		Misses.incrementAndGet();
+		ByteLoader loader = new ClassUtils().new ByteLoader();
+		java.lang.Class<?> type = className == null ? loader.Load(classFile) : loader.Load(classFile, className);
+		loaded = new LoadedClass(type, modified, size);
+		Cache.put(key, loaded);
+		return loaded;
+	}
+	
+	/**
+	 * Represents a cached Java Class, and the state of its file when it was loaded.
+	 */
+	private static class LoadedClass {
+		
+		/**
+		 * The Java Class.
+		 */
+		final java.lang.Class<?> Type;
+		/**
+		 * The last modification time of the file, in nanoseconds.
+		 */
+		final long Modified;
+		/**
+		 * The size of the file.
+		 */
+		final long Size;
+		/**
+		 * The method handles looked up in the Java Class, by name and descriptor.
+		 */
+		final Map<String, MethodHandle> Methods;
+		
+		LoadedClass(java.lang.Class<?> type, long modified, long size) {
+			Type = type;
+			Modified = modified;
+			Size = size;
+			Methods = new ConcurrentHashMap<String, MethodHandle>();
+		}
+	}
+	
+	/**
+	 * Represents a Java source file kept in memory.
+	 */
+	private static class SourceFile extends SimpleJavaFileObject {
+		
+		/**
+		 * The name of the class.
+		 */
+		final String Name;
+		/**
+		 * The code of the class.
+		 */
+		final String Source;
+		
+		SourceFile(String name, String source) {
+			super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+			Name = name;
+			Source = source;
+		}
+		
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return Source;
+		}
+	}
+	
+	/**
+	 * Represents a file manager which keeps the compiled classes in memory.
+	 */
+	private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		
+		/**
+		 * The bytes of the compiled classes, by name.
+		 */
+		final Map<String, ByteArrayOutputStream> Classes;
+		
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+			Classes = new HashMap<String, ByteArrayOutputStream>();
+		}
+		
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					ByteArrayOutputStream data = new ByteArrayOutputStream();
+					Classes.put(className, data);
+					return data;
+				}
+			};
+		}
 	}
 	
 	/**
@@ -227,5 +596,19 @@ public class ClassUtils {
 				throw new ClassNotFoundException();
 			}
 		}
+		
+		/**
+		 * Defines a Java Class from its bytes.
+		 * 
+		 * @param data The bytes of the Java Class.
+		 * @param className The name of the Java Class.
+		 * 
+		 * @return The Java Class.
+		 *
+		 * @since 1.0
+		 */
+		public java.lang.Class<?> Define(byte[] data, String className) {
+			return defineClass(className, data, 0, data.length);
+		}
 	}
 }
@@ -0,0 +1,318 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Utils.Cryptography;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Transforms the chunks of a file in parallel, on a fork-join pool. Every chunk except the last one has a fixed size
+ * in the input and in the output, so each thread reads, transforms and writes whole batches of chunks at their own
+ * offsets, in any order.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+class ChunkedFile {
+
+    /**
+     * The number of bytes which a thread reads at once.
+     */
+    private static final int BATCH_BYTES = 1 << 20;
+    /**
+     * The largest number of bytes which the buffers of all the threads take. Fewer threads are used when the chunks
+     * are large.
+     */
+    private static final long MAX_BUFFER_BYTES = 1 << 28;
+
+    /**
+     * The file to read from.
+     */
+    private final FileChannel in;
+    /**
+     * The offset of the first chunk in the input.
+     */
+    private final long inputOffset;
+    /**
+     * The size of the chunks, from the first one.
+     */
+    private final long inputSize;
+    /**
+     * The file to write to.
+     */
+    private final FileChannel out;
+    /**
+     * The offset of the first chunk in the output.
+     */
+    private final long outputOffset;
+    /**
+     * The number of chunks.
+     */
+    private final long chunks;
+    /**
+     * The size of a chunk in the input.
+     */
+    private final int inputChunk;
+    /**
+     * The size of a chunk in the output, except for the last chunk.
+     */
+    private final int outputChunk;
+    /**
+     * The number of chunks of a batch.
+     */
+    private final int batchChunks;
+    /**
+     * The transform and the buffers of each thread.
+     */
+    private final ThreadLocal<Worker> workers;
+    /**
+     * The first exception thrown by a batch. The remaining batches are skipped.
+     */
+    private final AtomicReference<Exception> failure;
+
+    /**
+     * Initializes a new instance of the ChunkedFile class.
+     */
+    private ChunkedFile(FileChannel in, long inputOffset, long inputSize, FileChannel out, long outputOffset, long chunks, int inputChunk, int outputChunk, Supplier<Transform> transforms) {
+        this.in = in;
+        this.inputOffset = inputOffset;
+        this.inputSize = inputSize;
+        this.out = out;
+        this.outputOffset = outputOffset;
+        this.chunks = chunks;
+        this.inputChunk = inputChunk;
+        this.outputChunk = outputChunk;
+        batchChunks = Math.max(1, BATCH_BYTES / Math.max(inputChunk, outputChunk));
+        workers = ThreadLocal.withInitial(() -> new Worker(transforms.get()));
+        failure = new AtomicReference<Exception>();
+    }
+
+    /**
+     * Transforms the chunks of a file, and waits for all of them.
+     * 
+     * @param in The file to read from.
+     * @param inputOffset The offset of the first chunk in the input.
+     * @param inputSize The size of the chunks, from the first one.
+     * @param out The file to write to.
+     * @param outputOffset The offset of the first chunk in the output.
+     * @param chunks The number of chunks.
+     * @param inputChunk The size of a chunk in the input.
+     * @param outputChunk The size of a chunk in the output, except for the last chunk.
+     * @param threads The largest number of threads. Fewer threads are used if their buffers would take too much
+     * memory.
+     * @param transforms Creates the transform of each thread.
+     * 
+     * @throws IOException If the files cannot be read or written, or a chunk is corrupted.
+     * @throws GeneralSecurityException If a chunk cannot be transformed.
+     *
+     * @since 1.0
+     */
+    static void Run(FileChannel in, long inputOffset, long inputSize, FileChannel out, long outputOffset, long chunks, int inputChunk, int outputChunk, int threads, Supplier<Transform> transforms) throws IOException, GeneralSecurityException {
+        if(threads < 1)
+            throw new IllegalArgumentException("The number of threads must be positive");
+
+        ChunkedFile file = new ChunkedFile(in, inputOffset, inputSize, out, outputOffset, chunks, inputChunk, outputChunk, transforms);
+        long workerBytes = (long) file.batchChunks * (inputChunk + outputChunk);
+        ForkJoinPool pool = new ForkJoinPool((int) Math.max(1, Math.min(threads, MAX_BUFFER_BYTES / workerBytes)));
+        try {
+            pool.invoke(file.new Batches(0, (chunks + file.batchChunks - 1) / file.batchChunks));
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        Exception failure = file.failure.get();
+        if(failure instanceof IOException)
+            throw (IOException) failure;
+        if(failure instanceof GeneralSecurityException)
+            throw (GeneralSecurityException) failure;
+        if(failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+    }
+
+    /**
+     * Reads from a channel, at a position, until a buffer is full or the channel ends.
+     * 
+     * @param channel The channel to read from.
+     * @param buffer The buffer to fill.
+     * @param position The position to read at.
+     * 
+     * @throws IOException 
+     *
+     * @since 1.0
+     */
+    static void ReadFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                break;
+            position += read;
+        }
+    }
+
+    /**
+     * Writes a whole buffer to a channel, at a position.
+     * 
+     * @param channel The channel to write to.
+     * @param buffer The buffer to write.
+     * @param position The position to write at.
+     * 
+     * @throws IOException 
+     *
+     * @since 1.0
+     */
+    static void WriteFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    /**
+     * Transforms a batch of chunks.
+     */
+    private void Run(long batch) throws IOException, GeneralSecurityException {
+        long first = batch * batchChunks;
+        int count = (int) Math.min(batchChunks, chunks - first);
+        int length = (int) Math.min((long) count * inputChunk, inputSize - first * inputChunk);
+
+        Worker worker = workers.get();
+        ByteBuffer input = ByteBuffer.wrap(worker.Input, 0, length);
+        ReadFully(in, input, inputOffset + first * inputChunk);
+        if(input.hasRemaining())
+            throw new EOFException("The input file changed while it was read");
+
+        int written = 0;
+        for(int u = 0; u < count; u++) {
+            long index = first + u;
+            int offset = u * inputChunk;
+            boolean last = index == chunks - 1;
+            int result = worker.Transform.Run(index, last, worker.Input, offset, Math.min(inputChunk, length - offset), worker.Output, written);
+            if(result != outputChunk && !last)
+                throw new IOException("The chunk " + index + " is corrupted");
+            written += result;
+        }
+
+        WriteFully(out, ByteBuffer.wrap(worker.Output, 0, written), outputOffset + first * outputChunk);
+    }
+
+    /**
+     * Represents the transformation of a chunk.
+     * 
+     * @author UnexomWid
+     *
+     * @since 1.0
+     */
+    interface Transform {
+
+        /**
+         * Transforms a chunk.
+         * 
+         * @param index The index of the chunk.
+         * @param last Whether or not the chunk is the last one.
+         * @param input The input.
+         * @param offset The offset of the chunk in the input.
+         * @param length The length of the chunk.
+         * @param output The buffer to write the transformed chunk to.
+         * @param outputOffset The offset in the output.
+         * 
+         * @return The length of the transformed chunk.
+         * 
+         * @throws GeneralSecurityException 
+         *
+         * @since 1.0
+         */
+        int Run(long index, boolean last, byte[] input, int offset, int length, byte[] output, int outputOffset) throws GeneralSecurityException;
+    }
+
+    /**
+     * Represents a range of batches, which is split between the threads of the pool.
+     */
+    private class Batches extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The first batch.
+         */
+        private final long from;
+        /**
+         * The batch after the last one.
+         */
+        private final long to;
+
+        Batches(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Batches(from, middle), new Batches(middle, to));
+                return;
+            }
+            if(to == from || failure.get() != null)
+                return;
+
+            try {
+                Run(from);
+            }
+            catch(Exception ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+
+    /**
+     * Represents the transform and the buffers of a thread.
+     */
+    private class Worker {
+
+        /**
+         * The transform of the thread.
+         */
+        final Transform Transform;
+        /**
+         * The input of a batch.
+         */
+        final byte[] Input;
+        /**
+         * The output of a batch. Transforms may need one more block than their output, before padding is removed.
+         */
+        final byte[] Output;
+
+        Worker(Transform transform) {
+            Transform = transform;
+            Input = new byte[batchChunks * inputChunk];
+            Output = new byte[batchChunks * outputChunk + 16];
+        }
+    }
+}
@@ -23,13 +23,20 @@
 package Exom.Utils.Cryptography;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 
 import Exom.Utils.*;
 
@@ -40,6 +47,8 @@ import java.util.Arrays;
 /**
  * Contains methods used for encrypting and decrypting bytes with the Exom Encryption Algorithm.
  * 
+ * The decryption methods also accept EXEA2 data, which they pass to EXEA2.
+ * 
  * @author UnexomWid
  *
  * @since 1.0
@@ -50,6 +59,21 @@ public class EXEA {
 	 * The EXEA magic bytes.
 	 */
     public static final byte[] EXEA_MAGIC = StringUtils.ToBytes("EXEA");
+    /**
+     * The default number of threads which encrypt and decrypt files.
+     *
+	 * @since 1.0
+     */
+    public static int DefaultThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of chunks which are mapped at once, when a file channel is encrypted or decrypted.
+     */
+    private static final int MAP_CHUNKS = 4096;
+    /**
+     * The minimum size of the file channels which are mapped instead of read.
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
 
     /**
      * Encrypts a byte array.
@@ -102,14 +126,14 @@ public class EXEA {
 	 * @since 1.0
      */
 	public static void Encrypt(InputStream in, OutputStream out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
-		byte[] buffer = new byte[8192];
+		EXEASession session = new EXEASession(key);
+		byte[] buffer = new byte[EXEASession.CHUNK_SIZE];
+		byte[] encoded = new byte[EXEASession.ENCRYPTED_CHUNK_SIZE];
 		int count = 0;
 		out.write(EXEA.EXEA_MAGIC);
 		
-		while((count = in.read(buffer)) != -1) {
-			byte[] encoded = EXEA.RawEncrypt(count == 8192 ? buffer : Arrays.copyOfRange(buffer, 0, count), key);
-			out.write(encoded);
-		}
+		while((count = Read(in, buffer)) > 0)
+			out.write(encoded, 0, session.Encrypt(buffer, 0, count, encoded, 0));
 	}
 	
 	/**
@@ -163,112 +187,310 @@ public class EXEA {
 	 * @since 1.0
      */
 	public static void Decrypt(InputStream in, OutputStream out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
-		byte[] buffer = new byte[8208];
+		EXEASession session = new EXEASession(key);
+		byte[] buffer = new byte[EXEASession.ENCRYPTED_CHUNK_SIZE];
+		byte[] decoded = new byte[EXEASession.ENCRYPTED_CHUNK_SIZE];
 		int count = 0;
 		
 		byte[] shouldBeMagic = new byte[EXEA_MAGIC.length];
-		in.read(shouldBeMagic);
+		Read(in, shouldBeMagic);
+		if (Arrays.equals(shouldBeMagic, EXEA2.MAGIC)) {
+			EXEA2.DecryptBody(in, out, key);
+			return;
+		}
         if (!Arrays.equals(shouldBeMagic, EXEA_MAGIC)) 
             throw new IllegalArgumentException("Initial bytes from input do not match EXEA_MAGIC.");
 	
-		while((count = in.read(buffer)) != -1) {
-			byte[] encoded = count == 8208 ? buffer : Arrays.copyOfRange(buffer, 0, count);
-			byte[] decoded = EXEA.RawDecrypt(encoded, key);
-			out.write(decoded);
-		}
+		while((count = Read(in, buffer)) > 0)
+			out.write(decoded, 0, session.Decrypt(buffer, 0, count, decoded, 0));
 	}
 	
 	/**
-     * Encrypts a byte array.
-     * 
-     * @param plain The byte array to encrypt.
-     * @param password The key to encrypt with.
-     * 
-     * @return The encrypted byte array.
-     * 
+	 * Encrypts a file in parallel, with the default number of threads.
+	 * 
+	 * @param input The file to encrypt.
+	 * @param output The file to write to.
+	 * @param key The key to encrypt with.
+	 * 
+	 * @throws IOException 
+	 * @throws BadPaddingException 
+	 * @throws IllegalBlockSizeException 
+	 * @throws InvalidAlgorithmParameterException 
+	 * @throws NoSuchPaddingException 
 	 * @throws NoSuchAlgorithmException 
+	 * @throws InvalidKeyException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Encrypt(String input, String output, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Encrypt(input, output, key, DefaultThreads);
+	}
+	/**
+	 * Encrypts a file in parallel. Each chunk is encrypted independently and written at its own offset, so the
+	 * output is the same as the output of the stream version.
+	 * 
+	 * @param input The file to encrypt.
+	 * @param output The file to write to.
+	 * @param key The key to encrypt with.
+	 * @param threads The number of threads.
+	 * 
+	 * @throws IOException 
+	 * @throws BadPaddingException 
+	 * @throws IllegalBlockSizeException 
+	 * @throws InvalidAlgorithmParameterException 
 	 * @throws NoSuchPaddingException 
+	 * @throws NoSuchAlgorithmException 
+	 * @throws InvalidKeyException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Encrypt(String input, String output, String key, int threads) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Transform(input, output, new EXEASession(key), threads, true);
+	}
+	
+	/**
+	 * Decrypts a file in parallel, with the default number of threads.
+	 * 
+	 * @param input The file to decrypt.
+	 * @param output The file to write to.
+	 * @param key The key to decrypt with.
+	 * 
+	 * @throws IOException 
+	 * @throws BadPaddingException 
+	 * @throws IllegalBlockSizeException 
 	 * @throws InvalidAlgorithmParameterException 
+	 * @throws NoSuchPaddingException 
+	 * @throws NoSuchAlgorithmException 
 	 * @throws InvalidKeyException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Decrypt(String input, String output, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Decrypt(input, output, key, DefaultThreads);
+	}
+	/**
+	 * Decrypts a file in parallel. Each chunk is decrypted independently and written at its own offset. EXEA2
+	 * files are decrypted by EXEA2.
+	 * 
+	 * @param input The file to decrypt.
+	 * @param output The file to write to.
+	 * @param key The key to decrypt with.
+	 * @param threads The number of threads.
+	 * 
+	 * @throws IOException 
 	 * @throws BadPaddingException 
 	 * @throws IllegalBlockSizeException 
+	 * @throws InvalidAlgorithmParameterException 
+	 * @throws NoSuchPaddingException 
+	 * @throws NoSuchAlgorithmException 
+	 * @throws InvalidKeyException 
 	 *
 	 * @since 1.0
-     */
-    private static byte[] RawEncrypt(byte[] plain, String password) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
-    	final MessageDigest md = MessageDigest.getInstance("MD5");
-		
-        final byte[] pass = StringUtils.ToBytes(password);
-        final byte[] salt = Arrays.copyOfRange(md.digest(pass), 0, 8);
-
-        final byte[] passAndSalt = ArrayUtils.Concat(pass, salt);
-        byte[] hash = new byte[0];
-        byte[] keyAndIv = new byte[0];
-        for (int i = 0; i < 3 && keyAndIv.length < 48; i++) {
-            final byte[] hashData = ArrayUtils.Concat(hash, passAndSalt);
-            hash = md.digest(hashData);
-            keyAndIv = ArrayUtils.Concat(keyAndIv, hash);
-        }
-
-        final byte[] keyValue = Arrays.copyOfRange(keyAndIv, 0, 32);
-        final byte[] iv = Arrays.copyOfRange(keyAndIv, 32, 48);
-        final SecretKeySpec key = new SecretKeySpec(keyValue, "AES");
-
-        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
-        byte[] data = cipher.doFinal(plain);
-        //data = ArrayUtils.Concat(EXEA_MAGIC, data);
-        return data;
-    }
-    /**
-     * Decrypts a byte array.
-     * 
-     * @param encrypted The byte array to decrypt.
-     * @param password The key to decrypt with.
-     * 
-     * @return The decrypted byte array.
-     * 
-     * @throws NoSuchAlgorithmException 
-     * @throws NoSuchPaddingException 
-     * @throws InvalidAlgorithmParameterException 
-     * @throws InvalidKeyException 
-     * @throws BadPaddingException 
-     * @throws IllegalBlockSizeException 
-     *
+	 */
+	public static void Decrypt(String input, String output, String key, int threads) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		if(EXEA2.IsEXEA2(input)) {
+			EXEA2.Decrypt(input, output, key, threads);
+			return;
+		}
+		Transform(input, output, new EXEASession(key), threads, false);
+	}
+	
+	/**
+	 * Encrypts bytes from a channel and writes them to another channel. The chunks go through reusable direct
+	 * buffers, and large file channels are mapped, so no memory is allocated for each chunk.
+	 * 
+	 * @param in The channel to encrypt from.
+	 * @param out The channel to write to.
+	 * @param key The key to encrypt with.
+	 * 
+	 * @throws IOException 
+	 * @throws BadPaddingException 
+	 * @throws IllegalBlockSizeException 
+	 * @throws InvalidAlgorithmParameterException 
+	 * @throws NoSuchPaddingException 
+	 * @throws NoSuchAlgorithmException 
+	 * @throws InvalidKeyException 
+	 *
 	 * @since 1.0
-     */
-    private  static byte[] RawDecrypt(byte[] encrypted, String password) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
-        /*final byte[] shouldBeMagic = Arrays.copyOfRange(encrypted, 0, EXEA_MAGIC.length);
-        if (!Arrays.equals(shouldBeMagic, EXEA_MAGIC)) 
-        {
-            throw new IllegalArgumentException("Initial bytes from input do not match EXOM_MAGIC.");
-        }*/
-        
-        final MessageDigest md = MessageDigest.getInstance("MD5");
-
-        final byte[] pass = StringUtils.ToBytes(password);
-        final byte[] salt = Arrays.copyOfRange(md.digest(pass), 0, 8);
-
-        final byte[] passAndSalt = ArrayUtils.Concat(pass, salt);
-
-        byte[] hash = new byte[0];
-        byte[] keyAndIv = new byte[0];
-        for (int i = 0; i < 3 && keyAndIv.length < 48; i++) {
-            final byte[] hashData = ArrayUtils.Concat(hash, passAndSalt);
-            hash = md.digest(hashData);
-            keyAndIv = ArrayUtils.Concat(keyAndIv, hash);
-        }
-
-        final byte[] keyValue = Arrays.copyOfRange(keyAndIv, 0, 32);
-        final SecretKeySpec key = new SecretKeySpec(keyValue, "AES");
-
-        final byte[] iv = Arrays.copyOfRange(keyAndIv, 32, 48);
-
-        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
-        //final byte[] clear = cipher.doFinal(encrypted, EXEA_MAGIC.length, encrypted.length - EXEA_MAGIC.length);
-        final byte[] clear = cipher.doFinal(encrypted);
-        
-        return clear;
-    }
+	 */
+	public static void Encrypt(ReadableByteChannel in, WritableByteChannel out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		Transform(in, out, new EXEASession(key), true);
+	}
+	
+	/**
+	 * Decrypts bytes from a channel and writes them to another channel. The chunks go through reusable direct
+	 * buffers, and large file channels are mapped, so no memory is allocated for each chunk. EXEA2 data is
+	 * decrypted as a stream.
+	 * 
+	 * @param in The channel to decrypt from.
+	 * @param out The channel to write to.
+	 * @param key The key to decrypt with.
+	 * 
+	 * @throws IOException 
+	 * @throws BadPaddingException 
+	 * @throws IllegalBlockSizeException 
+	 * @throws InvalidAlgorithmParameterException 
+	 * @throws NoSuchPaddingException 
+	 * @throws NoSuchAlgorithmException 
+	 * @throws InvalidKeyException 
+	 *
+	 * @since 1.0
+	 */
+	public static void Decrypt(ReadableByteChannel in, WritableByteChannel out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		ByteBuffer magic = ByteBuffer.allocate(EXEA_MAGIC.length);
+		ReadFully(in, magic);
+		if (Arrays.equals(magic.array(), EXEA2.MAGIC)) {
+			EXEA2.DecryptBody(Channels.newInputStream(in), Channels.newOutputStream(out), key);
+			return;
+		}
+		if (!Arrays.equals(magic.array(), EXEA_MAGIC)) 
+            throw new IllegalArgumentException("Initial bytes from input do not match EXEA_MAGIC.");
+		Transform(in, out, new EXEASession(key), false);
+	}
+	
+	/**
+	 * Encrypts or decrypts a channel, one chunk at a time. File channels which are large enough are mapped, a
+	 * window of chunks at a time, from their position.
+	 */
+	private static void Transform(ReadableByteChannel in, WritableByteChannel out, EXEASession session, boolean encrypt) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		int inputSize = encrypt ? EXEASession.CHUNK_SIZE : EXEASession.ENCRYPTED_CHUNK_SIZE;
+		ByteBuffer output = ByteBuffer.allocateDirect(EXEASession.ENCRYPTED_CHUNK_SIZE);
+		
+		if(encrypt) {
+			output.put(EXEA_MAGIC);
+			output.flip();
+			WriteFully(out, output);
+		}
+		
+		if(in instanceof FileChannel && ((FileChannel) in).size() - ((FileChannel) in).position() >= MAP_THRESHOLD) {
+			FileChannel file = (FileChannel) in;
+			long position = file.position();
+			long end = file.size();
+			while(position < end) {
+				long window = Math.min(end - position, (long) MAP_CHUNKS * inputSize);
+				MappedByteBuffer input = file.map(FileChannel.MapMode.READ_ONLY, position, window);
+				while(input.hasRemaining()) {
+					input.limit(input.position() + Math.min(input.capacity() - input.position(), inputSize));
+					Transform(session, encrypt, input, output, out);
+					input.limit(input.capacity());
+				}
+				position += window;
+			}
+			file.position(end);
+			return;
+		}
+		
+		ByteBuffer input = ByteBuffer.allocateDirect(inputSize);
+		while(true) {
+			input.clear();
+			ReadFully(in, input);
+			if(input.position() == 0)
+				break;
+			input.flip();
+			Transform(session, encrypt, input, output, out);
+		}
+	}
+	
+	/**
+	 * Encrypts or decrypts one chunk, and writes it to a channel.
+	 */
+	private static void Transform(EXEASession session, boolean encrypt, ByteBuffer input, ByteBuffer output, WritableByteChannel out) throws IOException, InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		output.clear();
+		if(encrypt)
+			session.Encrypt(input, output);
+		else session.Decrypt(input, output);
+		output.flip();
+		WriteFully(out, output);
+	}
+	
+	/**
+	 * Encrypts or decrypts a file on a fork-join pool. Each thread has its own copy of the session.
+	 */
+	private static void Transform(String input, String output, EXEASession session, int threads, boolean encrypt) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+		if(threads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive");
+		
+		Path source = Paths.get(input);
+		Path target = Paths.get(output);
+		if(Files.exists(target) && Files.isSameFile(source, target))
+			throw new IllegalArgumentException("The input and output files must be different");
+		
+		try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			int header = EXEA_MAGIC.length;
+			if(encrypt) {
+				ChunkedFile.WriteFully(out, ByteBuffer.wrap(EXEA_MAGIC), 0);
+				long size = in.size();
+				long chunks = (size + EXEASession.CHUNK_SIZE - 1) / EXEASession.CHUNK_SIZE;
+				ChunkedFile.Run(in, 0, size, out, header, chunks, EXEASession.CHUNK_SIZE, EXEASession.ENCRYPTED_CHUNK_SIZE, threads, () -> {
+					EXEASession copy = Copy(session);
+					return (index, last, data, offset, length, result, resultOffset) -> copy.Encrypt(data, offset, length, result, resultOffset);
+				});
+			}
+			else {
+				ByteBuffer magic = ByteBuffer.allocate(header);
+				ChunkedFile.ReadFully(in, magic, 0);
+				if (!Arrays.equals(magic.array(), EXEA_MAGIC)) 
+		            throw new IllegalArgumentException("Initial bytes from input do not match EXEA_MAGIC.");
+				long size = in.size() - header;
+				long chunks = (size + EXEASession.ENCRYPTED_CHUNK_SIZE - 1) / EXEASession.ENCRYPTED_CHUNK_SIZE;
+				ChunkedFile.Run(in, header, size, out, 0, chunks, EXEASession.ENCRYPTED_CHUNK_SIZE, EXEASession.CHUNK_SIZE, threads, () -> {
+					EXEASession copy = Copy(session);
+					return (index, last, data, offset, length, result, resultOffset) -> copy.Decrypt(data, offset, length, result, resultOffset);
+				});
+			}
+		}
+		catch(BadPaddingException | IllegalBlockSizeException | InvalidKeyException | InvalidAlgorithmParameterException ex) {
+			throw ex;
+		}
+		catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Returns a copy of a session, for another thread.
+	 */
+	private static EXEASession Copy(EXEASession session) {
+		try {
+			return session.Copy();
+		}
+		catch(GeneralSecurityException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Reads from a channel until a buffer is full or the channel ends.
+	 */
+	private static void ReadFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+	}
+	
+	/**
+	 * Writes a whole buffer to a channel.
+	 */
+	private static void WriteFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+	}
+	
+	/**
+	 * Reads from a stream until a buffer is full, or the stream ends. Chunks are always read whole, even from
+	 * streams which return fewer bytes than requested.
+	 * 
+	 * @param in The stream to read from.
+	 * @param buffer The buffer to fill.
+	 * 
+	 * @return The number of bytes read, which is less than the length of the buffer only at the end of the stream.
+	 * 
+	 * @throws IOException 
+	 */
+	static int Read(InputStream in, byte[] buffer) throws IOException {
+		int count = 0;
+		int read;
+		while(count < buffer.length && (read = in.read(buffer, count, buffer.length - count)) != -1)
+			count += read;
+		return count;
+	}
 }
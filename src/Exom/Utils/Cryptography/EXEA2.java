@@ -0,0 +1,733 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Utils.Cryptography;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import Exom.Utils.StringUtils;
+
+/**
+ * Contains methods used for encrypting and decrypting bytes with the second version of the Exom Encryption
+ * Algorithm.
+ * 
+ * An EXEA2 file starts with a header which records the version, the cipher mode (AES-GCM or AES-CTR), the chunk
+ * size, and the salt, iterations and random nonce of the file. The key is derived from the password with PBKDF2.
+ * Each chunk is encrypted independently, with a nonce made of the file nonce and the index of the chunk, so chunks
+ * can be encrypted and decrypted in parallel, or one at a time at any position. Each chunk is also authenticated
+ * together with the header, its index and whether or not it is the last chunk, so reordered, altered and truncated
+ * files are rejected, and so are files whose cipher mode was changed. AES-GCM chunks carry their GCM tag, and AES-CTR
+ * chunks carry an HMAC-SHA256 tag, with a key derived from the AES key.
+ * 
+ * EXEA.Decrypt detects EXEA2 data, so both versions can be decrypted in the same way.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXEA2 {
+
+    /**
+     * The EXEA2 magic bytes.
+     *
+     * @since 1.0
+     */
+    public static final byte[] MAGIC = StringUtils.ToBytes("EXE2");
+    /**
+     * The version of the format.
+     *
+     * @since 1.0
+     */
+    public static final byte VERSION = 2;
+    /**
+     * The AES-GCM mode, which authenticates each chunk.
+     *
+     * @since 1.0
+     */
+    public static final byte GCM = 1;
+    /**
+     * The AES-CTR mode, which authenticates each chunk with HMAC-SHA256.
+     *
+     * @since 1.0
+     */
+    public static final byte CTR = 3;
+    /**
+     * The smallest chunk size.
+     *
+     * @since 1.0
+     */
+    public static final int MIN_CHUNK_SIZE = 4096;
+    /**
+     * The largest chunk size. The chunk size is read from the header, and decryption keeps a few chunks in memory
+     * for each thread, so it is kept small.
+     *
+     * @since 1.0
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 24;
+    /**
+     * The size of the header: the magic bytes, the version, the mode, the chunk size, the iterations, the salt and
+     * the nonce.
+     *
+     * @since 1.0
+     */
+    public static final int HEADER_SIZE = 4 + 1 + 1 + 4 + 4 + 16 + 8;
+
+    /**
+     * The default chunk size.
+     *
+     * @since 1.0
+     */
+    public static int DefaultChunkSize = 1 << 20;
+    /**
+     * The default number of PBKDF2 iterations.
+     *
+     * @since 1.0
+     */
+    public static int DefaultIterations = 65536;
+
+    /**
+     * The size of the authentication tag of the chunks.
+     */
+    private static final int TAG_SIZE = 16;
+    /**
+     * The info from which the HMAC key of AES-CTR files is derived.
+     */
+    private static final byte[] MAC_INFO = StringUtils.ToBytes("EXEA2 CTR HMAC");
+    /**
+     * The largest number of PBKDF2 iterations which is accepted from a header.
+     */
+    private static final int MAX_ITERATIONS = 1 << 24;
+    /**
+     * The additional data of the last chunk.
+     */
+    private static final byte[] LAST = { 1 };
+    /**
+     * The additional data of the other chunks.
+     */
+    private static final byte[] NOT_LAST = { 0 };
+    /**
+     * The source of the salts and nonces.
+     */
+    private static final SecureRandom Random = new SecureRandom();
+
+    /**
+     * Encrypts bytes from a stream and writes them to another stream, with AES-GCM and the default chunk size.
+     * 
+     * @param in The stream to encrypt from.
+     * @param out The stream to write to.
+     * @param key The key to encrypt with.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Encrypt(InputStream in, OutputStream out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Encrypt(in, out, key, GCM, DefaultChunkSize);
+    }
+    /**
+     * Encrypts bytes from a stream and writes them to another stream.
+     * 
+     * @param in The stream to encrypt from.
+     * @param out The stream to write to.
+     * @param key The key to encrypt with.
+     * @param mode The cipher mode (GCM or CTR).
+     * @param chunkSize The size of the plain chunks.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Encrypt(InputStream in, OutputStream out, String key, byte mode, int chunkSize) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Header header = Header.Create(mode, chunkSize);
+        ChunkCipher cipher = new ChunkCipher(header, Key(key, header), Cipher.ENCRYPT_MODE);
+        out.write(header.Bytes);
+
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] encoded = new byte[header.EncryptedChunkSize()];
+
+        int count = EXEA.Read(in, current);
+        if(count == 0) {
+            out.write(encoded, 0, cipher.Run(0, true, current, 0, 0, encoded, 0));
+            return;
+        }
+
+        for(long index = 0; ; index++) {
+            int nextCount = count == chunkSize ? EXEA.Read(in, next) : 0;
+            boolean last = nextCount == 0;
+            out.write(encoded, 0, cipher.Run(index, last, current, 0, count, encoded, 0));
+            if(last)
+                break;
+
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            count = nextCount;
+        }
+    }
+
+    /**
+     * Decrypts bytes from a stream and writes them to another stream.
+     * 
+     * @param in The stream to decrypt from.
+     * @param out The stream to write to.
+     * @param key The key to decrypt with.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException If the data was altered or truncated, or the key is wrong.
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Decrypt(InputStream in, OutputStream out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        byte[] magic = new byte[MAGIC.length];
+        EXEA.Read(in, magic);
+        if(!Arrays.equals(magic, MAGIC))
+            throw new IllegalArgumentException("Initial bytes from input do not match the EXEA2 magic.");
+        DecryptBody(in, out, key);
+    }
+
+    /**
+     * Decrypts the rest of EXEA2 data from a stream, after its magic bytes were read.
+     * 
+     * @param in The stream to decrypt from, after the magic bytes.
+     * @param out The stream to write to.
+     * @param key The key to decrypt with.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     */
+    static void DecryptBody(InputStream in, OutputStream out, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        byte[] bytes = new byte[HEADER_SIZE];
+        System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+        byte[] rest = new byte[HEADER_SIZE - MAGIC.length];
+        if(EXEA.Read(in, rest) != rest.length)
+            throw new IllegalArgumentException("The EXEA2 header is truncated.");
+        System.arraycopy(rest, 0, bytes, MAGIC.length, rest.length);
+
+        Header header = Header.Parse(bytes);
+        ChunkCipher cipher = new ChunkCipher(header, Key(key, header), Cipher.DECRYPT_MODE);
+
+        int chunkSize = header.EncryptedChunkSize();
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] decoded = new byte[chunkSize];
+
+        int count = EXEA.Read(in, current);
+        if(count == 0)
+            throw new AEADBadTagException("The EXEA2 data is truncated");
+
+        for(long index = 0; ; index++) {
+            int nextCount = count == chunkSize ? EXEA.Read(in, next) : 0;
+            boolean last = nextCount == 0;
+            out.write(decoded, 0, cipher.Run(index, last, current, 0, count, decoded, 0));
+            if(last)
+                break;
+
+            byte[] swap = current;
+            current = next;
+            next = swap;
+            count = nextCount;
+        }
+    }
+
+    /**
+     * Encrypts a file in parallel, with AES-GCM, the default chunk size and the default number of threads.
+     * 
+     * @param input The file to encrypt.
+     * @param output The file to write to.
+     * @param key The key to encrypt with.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Encrypt(String input, String output, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Encrypt(input, output, key, GCM, DefaultChunkSize, EXEA.DefaultThreads);
+    }
+    /**
+     * Encrypts a file in parallel. The output is the same as the output of the stream version with the same salt
+     * and nonce.
+     * 
+     * @param input The file to encrypt.
+     * @param output The file to write to.
+     * @param key The key to encrypt with.
+     * @param mode The cipher mode (GCM or CTR).
+     * @param chunkSize The size of the plain chunks.
+     * @param threads The number of threads.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Encrypt(String input, String output, String key, byte mode, int chunkSize, int threads) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Header header = Header.Create(mode, chunkSize);
+        SecretKeySpec secret = Key(key, header);
+        Transform(input, output, threads, (in, out) -> {
+            ChunkedFile.WriteFully(out, ByteBuffer.wrap(header.Bytes), 0);
+            long size = in.size();
+            long chunks = size == 0 ? 1 : (size + chunkSize - 1) / chunkSize;
+            ChunkedFile.Run(in, 0, size, out, HEADER_SIZE, chunks, chunkSize, header.EncryptedChunkSize(), threads, () -> Cipher(header, secret, Cipher.ENCRYPT_MODE));
+        });
+    }
+
+    /**
+     * Decrypts a file in parallel, with the default number of threads.
+     * 
+     * @param input The file to decrypt.
+     * @param output The file to write to.
+     * @param key The key to decrypt with.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException 
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Decrypt(String input, String output, String key) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Decrypt(input, output, key, EXEA.DefaultThreads);
+    }
+    /**
+     * Decrypts a file in parallel.
+     * 
+     * @param input The file to decrypt.
+     * @param output The file to write to.
+     * @param key The key to decrypt with.
+     * @param threads The number of threads.
+     * 
+     * @throws IOException 
+     * @throws BadPaddingException If the data was altered or truncated, or the key is wrong.
+     * @throws IllegalBlockSizeException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws NoSuchPaddingException 
+     * @throws NoSuchAlgorithmException 
+     * @throws InvalidKeyException 
+     *
+     * @since 1.0
+     */
+    public static void Decrypt(String input, String output, String key, int threads) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        Transform(input, output, threads, (in, out) -> {
+            Header header = Header.Read(in);
+            SecretKeySpec secret = Key(key, header);
+            long size = in.size() - HEADER_SIZE;
+            long chunks = (size + header.EncryptedChunkSize() - 1) / header.EncryptedChunkSize();
+            if(chunks == 0)
+                throw new AEADBadTagException("The EXEA2 data is truncated");
+            ChunkedFile.Run(in, HEADER_SIZE, size, out, 0, chunks, header.EncryptedChunkSize(), header.ChunkSize, threads, () -> Cipher(header, secret, Cipher.DECRYPT_MODE));
+        });
+    }
+
+    /**
+     * Returns whether or not a file starts with the EXEA2 magic bytes.
+     * 
+     * @param file The file.
+     * 
+     * @return Whether or not the file is an EXEA2 file.
+     * 
+     * @throws IOException 
+     *
+     * @since 1.0
+     */
+    public static boolean IsEXEA2(String file) throws IOException {
+        try(FileChannel in = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            ChunkedFile.ReadFully(in, magic, 0);
+            return Arrays.equals(magic.array(), MAGIC);
+        }
+    }
+
+    /**
+     * Returns the chunk layout and the decryption of an EXEA2 file, for readers which decrypt single chunks.
+     * 
+     * @param file The EXEA2 file, whose position is ignored.
+     * @param key The key to decrypt with.
+     * 
+     * @return The size of the header, of the plain chunks and of the encrypted chunks, and the decryption.
+     * 
+     * @throws IOException 
+     * @throws GeneralSecurityException 
+     */
+    static Layout Open(FileChannel file, String key) throws IOException, GeneralSecurityException {
+        Header header = Header.Read(file);
+        return new Layout(header.ChunkSize, header.EncryptedChunkSize(), new ChunkCipher(header, Key(key, header), Cipher.DECRYPT_MODE));
+    }
+
+    /**
+     * Opens the files of a parallel transformation, and rethrows the exceptions of the chunks with the declared types.
+     */
+    private static void Transform(String input, String output, int threads, FileTransform transform) throws IOException, InvalidKeyException, NoSuchAlgorithmException, NoSuchPaddingException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        if(threads < 1)
+            throw new IllegalArgumentException("The number of threads must be positive");
+
+        Path source = Paths.get(input);
+        Path target = Paths.get(output);
+        if(Files.exists(target) && Files.isSameFile(source, target))
+            throw new IllegalArgumentException("The input and output files must be different");
+
+        try(FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transform.Run(in, out);
+        }
+        catch(BadPaddingException | IllegalBlockSizeException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchPaddingException ex) {
+            throw ex;
+        }
+        catch(GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Derives the key of a file from a password, with PBKDF2 and the salt and iterations of the header.
+     */
+    private static SecretKeySpec Key(String password, Header header) throws NoSuchAlgorithmException, InvalidKeyException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), header.Salt, header.Iterations, 256);
+        try {
+            byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(key, "AES");
+        }
+        catch(InvalidKeySpecException ex) {
+            throw new InvalidKeyException("The key cannot be derived", ex);
+        }
+        finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * Returns a new chunk cipher, for another thread.
+     */
+    private static ChunkCipher Cipher(Header header, SecretKeySpec key, int mode) {
+        try {
+            return new ChunkCipher(header, key, mode);
+        }
+        catch(GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Represents the work done on the opened files of a parallel transformation.
+     */
+    private interface FileTransform {
+        void Run(FileChannel in, FileChannel out) throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * Represents the chunk layout and the decryption of an EXEA2 file.
+     * 
+     * @author UnexomWid
+     *
+     * @since 1.0
+     */
+    static class Layout {
+
+        /**
+         * The size of the plain chunks.
+         *
+         * @since 1.0
+         */
+        final int ChunkSize;
+        /**
+         * The size of the encrypted chunks.
+         *
+         * @since 1.0
+         */
+        final int EncryptedChunkSize;
+        /**
+         * The decryption of the chunks.
+         *
+         * @since 1.0
+         */
+        final ChunkedFile.Transform Decrypt;
+
+        Layout(int chunkSize, int encryptedChunkSize, ChunkedFile.Transform decrypt) {
+            ChunkSize = chunkSize;
+            EncryptedChunkSize = encryptedChunkSize;
+            Decrypt = decrypt;
+        }
+    }
+
+    /**
+     * Represents the header of an EXEA2 file.
+     */
+    private static class Header {
+
+        /**
+         * The cipher mode.
+         */
+        final byte Mode;
+        /**
+         * The size of the plain chunks.
+         */
+        final int ChunkSize;
+        /**
+         * The number of PBKDF2 iterations.
+         */
+        final int Iterations;
+        /**
+         * The PBKDF2 salt.
+         */
+        final byte[] Salt;
+        /**
+         * The nonce of the file.
+         */
+        final byte[] Nonce;
+        /**
+         * The bytes of the header, which are authenticated with each chunk.
+         */
+        final byte[] Bytes;
+
+        private Header(byte[] bytes) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            buffer.position(MAGIC.length);
+            if(buffer.get() != VERSION)
+                throw new IllegalArgumentException("The EXEA2 version is not supported.");
+            Mode = buffer.get();
+            ChunkSize = buffer.getInt();
+            Iterations = buffer.getInt();
+            Salt = new byte[16];
+            buffer.get(Salt);
+            Nonce = new byte[8];
+            buffer.get(Nonce);
+            Bytes = bytes;
+
+            if(Mode != GCM && Mode != CTR)
+                throw new IllegalArgumentException("The EXEA2 cipher mode is not supported.");
+            if(ChunkSize < MIN_CHUNK_SIZE || ChunkSize > MAX_CHUNK_SIZE)
+                throw new IllegalArgumentException("The EXEA2 chunk size must be between " + MIN_CHUNK_SIZE + " and " + MAX_CHUNK_SIZE + ".");
+            if(Iterations < 1 || Iterations > MAX_ITERATIONS)
+                throw new IllegalArgumentException("The EXEA2 header is not valid.");
+        }
+
+        /**
+         * Creates the header of a new file, with a random salt and nonce.
+         */
+        static Header Create(byte mode, int chunkSize) {
+            byte[] salt = new byte[16];
+            byte[] nonce = new byte[8];
+            Random.nextBytes(salt);
+            Random.nextBytes(nonce);
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            buffer.put(MAGIC).put(VERSION).put(mode).putInt(chunkSize).putInt(DefaultIterations).put(salt).put(nonce);
+            return new Header(buffer.array());
+        }
+
+        /**
+         * Parses a header.
+         */
+        static Header Parse(byte[] bytes) {
+            if(bytes.length != HEADER_SIZE || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC))
+                throw new IllegalArgumentException("Initial bytes from input do not match the EXEA2 magic.");
+            return new Header(bytes);
+        }
+
+        /**
+         * Reads the header from the start of a file.
+         */
+        static Header Read(FileChannel file) throws IOException {
+            ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE);
+            ChunkedFile.ReadFully(file, bytes, 0);
+            if(bytes.hasRemaining())
+                throw new IllegalArgumentException("The EXEA2 header is truncated.");
+            return Parse(bytes.array());
+        }
+
+        /**
+         * Returns the size of the encrypted chunks.
+         */
+        int EncryptedChunkSize() {
+            return ChunkSize + TAG_SIZE;
+        }
+    }
+
+    /**
+     * Encrypts or decrypts the chunks of a file, each with the nonce of its index. Each thread has its own.
+     */
+    private static class ChunkCipher implements ChunkedFile.Transform {
+
+        /**
+         * The header of the file.
+         */
+        private final Header header;
+        /**
+         * The key of the file.
+         */
+        private final SecretKeySpec key;
+        /**
+         * Whether to encrypt or to decrypt.
+         */
+        private final int mode;
+        /**
+         * The cipher.
+         */
+        private final Cipher cipher;
+        /**
+         * The nonce of the current chunk: the nonce of the file, the index of the chunk and, with AES-CTR, the
+         * counter of the first block.
+         */
+        private final byte[] iv;
+        /**
+         * The HMAC of the AES-CTR chunks. Null for AES-GCM.
+         */
+        private final Mac mac;
+        /**
+         * The index and the last flag of the current chunk, which are authenticated with AES-CTR.
+         */
+        private final ByteBuffer position;
+
+        ChunkCipher(Header header, SecretKeySpec key, int mode) throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+            this.header = header;
+            this.key = key;
+            this.mode = mode;
+            cipher = Cipher.getInstance(header.Mode == GCM ? "AES/GCM/NoPadding" : "AES/CTR/NoPadding");
+            iv = new byte[header.Mode == GCM ? 12 : 16];
+            System.arraycopy(header.Nonce, 0, iv, 0, header.Nonce.length);
+
+            if(header.Mode == GCM) {
+                mac = null;
+                position = null;
+            }
+            else {
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+                byte[] macKey = mac.doFinal(MAC_INFO);
+                mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+                position = ByteBuffer.allocate(9);
+            }
+        }
+
+        @Override
+        public int Run(long index, boolean last, byte[] input, int offset, int length, byte[] output, int outputOffset) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+            if(index < 0 || index > 0xFFFFFFFFL)
+                throw new IllegalBlockSizeException("The EXEA2 data has too many chunks");
+            iv[8] = (byte) (index >>> 24);
+            iv[9] = (byte) (index >>> 16);
+            iv[10] = (byte) (index >>> 8);
+            iv[11] = (byte) index;
+
+            try {
+                if(header.Mode == GCM) {
+                    cipher.init(mode, key, new GCMParameterSpec(TAG_SIZE * 8, iv));
+                    cipher.updateAAD(header.Bytes);
+                    cipher.updateAAD(last ? LAST : NOT_LAST);
+                    return cipher.doFinal(input, offset, length, output, outputOffset);
+                }
+
+                cipher.init(mode, key, new IvParameterSpec(iv));
+                if(mode == Cipher.ENCRYPT_MODE) {
+                    int count = cipher.doFinal(input, offset, length, output, outputOffset);
+                    System.arraycopy(Tag(index, last, output, outputOffset, count), 0, output, outputOffset + count, TAG_SIZE);
+                    return count + TAG_SIZE;
+                }
+
+                int count = length - TAG_SIZE;
+                if(count < 0 || !MessageDigest.isEqual(Arrays.copyOf(Tag(index, last, input, offset, count), TAG_SIZE), Arrays.copyOfRange(input, offset + count, offset + length)))
+                    throw new AEADBadTagException("The EXEA2 data was altered, or the key is wrong");
+                return cipher.doFinal(input, offset, count, output, outputOffset);
+            }
+            catch(ShortBufferException ex) {
+                throw new IllegalArgumentException("The output is too small for the chunk", ex);
+            }
+        }
+
+        /**
+         * Returns the HMAC of an AES-CTR chunk, over the header, the index of the chunk, whether or not it is the
+         * last chunk, and the encrypted bytes.
+         */
+        private byte[] Tag(long index, boolean last, byte[] data, int offset, int length) {
+            position.clear();
+            position.putLong(index).put(last ? LAST : NOT_LAST).flip();
+
+            mac.update(header.Bytes);
+            mac.update(position);
+            mac.update(data, offset, length);
+            return mac.doFinal();
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Utils.Cryptography;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * Reads the plain bytes of an EXEA or EXEA2 file at any position. Since every chunk has a fixed size and is
+ * encrypted independently, a read only decrypts the chunks which cover it. The most recently used chunks are kept
+ * decrypted.
+ * 
+ * The reader is read-only, and its methods are synchronized.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXEAReader implements SeekableByteChannel {
+
+    /**
+     * The default number of decrypted chunks to keep. Each one takes the size of an encrypted chunk, which is
+     * larger for EXEA2 files.
+     *
+     * @since 1.0
+     */
+    public static int DefaultCacheChunks = 16;
+
+    /**
+     * The largest number of bytes which the decrypted chunks take. Fewer chunks are kept when the chunks are large.
+     */
+    private static final long MAX_CACHE_BYTES = 1 << 26;
+
+    /**
+     * The EXEA file.
+     */
+    private final FileChannel channel;
+    /**
+     * Decrypts the chunks.
+     */
+    private final ChunkedFile.Transform decrypt;
+    /**
+     * The number of bytes before the first chunk.
+     */
+    private final int header;
+    /**
+     * The size of the plain chunks.
+     */
+    private final int chunkSize;
+    /**
+     * The size of the encrypted chunks.
+     */
+    private final int encryptedChunkSize;
+    /**
+     * The number of chunks.
+     */
+    private final long chunks;
+    /**
+     * The number of plain bytes.
+     */
+    private final long size;
+    /**
+     * The number of plain bytes of the last chunk.
+     */
+    private int last;
+    /**
+     * The decrypted chunks, by index, from the least recently used. Each buffer has room for an encrypted chunk,
+     * so it can be reused after it is evicted.
+     */
+    private final LinkedHashMap<Long, byte[]> cache;
+    /**
+     * The number of decrypted chunks to keep.
+     */
+    private int cacheChunks;
+    /**
+     * The buffer of the encrypted chunks.
+     */
+    private final byte[] encrypted;
+    /**
+     * The buffer of the chunk which was evicted last, reused for the next chunk. Null if there is none.
+     */
+    private byte[] spare;
+    /**
+     * The position of the reader, in plain bytes.
+     */
+    private long position;
+
+    /**
+     * Initializes a new instance of the EXEAReader class, which keeps the default number of decrypted chunks.
+     * 
+     * @param file The EXEA file.
+     * @param key The key to decrypt with.
+     * 
+     * @throws IOException If the file is not an EXEA file, or the key is wrong.
+     * @throws NoSuchAlgorithmException 
+     * @throws NoSuchPaddingException 
+     *
+     * @since 1.0
+     */
+    public EXEAReader(String file, String key) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException {
+        this(file, key, DefaultCacheChunks);
+    }
+    /**
+     * Initializes a new instance of the EXEAReader class. The last chunk is decrypted, to find the number of plain
+     * bytes.
+     * 
+     * @param file The EXEA file.
+     * @param key The key to decrypt with.
+     * @param cacheChunks The number of decrypted chunks to keep. Fewer chunks are kept if they would take too much
+     * memory.
+     * 
+     * @throws IOException If the file is not an EXEA or EXEA2 file, or the key is wrong.
+     * @throws NoSuchAlgorithmException 
+     * @throws NoSuchPaddingException 
+     *
+     * @since 1.0
+     */
+    public EXEAReader(String file, String key, int cacheChunks) throws IOException, NoSuchAlgorithmException, NoSuchPaddingException {
+        if(cacheChunks < 1)
+            throw new IllegalArgumentException("The number of cached chunks must be positive");
+
+        cache = new LinkedHashMap<Long, byte[]>(cacheChunks * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                if(size() <= EXEAReader.this.cacheChunks)
+                    return false;
+                spare = eldest.getValue();
+                return true;
+            }
+        };
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(EXEA.EXEA_MAGIC.length);
+            ChunkedFile.ReadFully(channel, magic, 0);
+            if(Arrays.equals(magic.array(), EXEA.EXEA_MAGIC)) {
+                EXEASession session = new EXEASession(key);
+                decrypt = (index, last, input, offset, length, output, outputOffset) -> session.Decrypt(input, offset, length, output, outputOffset);
+                header = EXEA.EXEA_MAGIC.length;
+                chunkSize = EXEASession.CHUNK_SIZE;
+                encryptedChunkSize = EXEASession.ENCRYPTED_CHUNK_SIZE;
+            }
+            else if(Arrays.equals(magic.array(), EXEA2.MAGIC)) {
+                EXEA2.Layout layout;
+                try {
+                    layout = EXEA2.Open(channel, key);
+                }
+                catch(NoSuchAlgorithmException | NoSuchPaddingException ex) {
+                    throw ex;
+                }
+                catch(GeneralSecurityException ex) {
+                    throw new IOException("The key cannot be derived", ex);
+                }
+                decrypt = layout.Decrypt;
+                header = EXEA2.HEADER_SIZE;
+                chunkSize = layout.ChunkSize;
+                encryptedChunkSize = layout.EncryptedChunkSize;
+                if(channel.size() == header)
+                    throw new IOException("The EXEA2 file '" + file + "' is truncated");
+            }
+            else throw new IOException("The file '" + file + "' is not an EXEA file");
+
+            this.cacheChunks = (int) Math.max(1, Math.min(cacheChunks, MAX_CACHE_BYTES / encryptedChunkSize));
+            encrypted = new byte[encryptedChunkSize];
+            long length = channel.size() - header;
+            chunks = (length + encryptedChunkSize - 1) / encryptedChunkSize;
+            if(chunks > 0)
+                Chunk(chunks - 1);
+            size = chunks == 0 ? 0 : (chunks - 1) * chunkSize + last;
+        }
+        catch(IOException | NoSuchAlgorithmException | NoSuchPaddingException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        position = 0;
+    }
+
+    /**
+     * Reads plain bytes at the position of the reader, and advances the position.
+     * 
+     * @param dst The buffer to read into.
+     * 
+     * @return The number of bytes read, or -1 if the position is at the end.
+     * 
+     * @throws IOException If a chunk cannot be read or decrypted.
+     *
+     * @since 1.0
+     */
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int read = Read(position, dst);
+        if(read > 0)
+            position += read;
+        return read;
+    }
+
+    /**
+     * Reads plain bytes at a position, without changing the position of the reader. Only the chunks which cover
+     * the bytes are decrypted.
+     * 
+     * @param position The position of the first byte, in plain bytes.
+     * @param dst The buffer to read into.
+     * 
+     * @return The number of bytes read, or -1 if the position is at the end.
+     * 
+     * @throws IOException If a chunk cannot be read or decrypted.
+     *
+     * @since 1.0
+     */
+    public synchronized int Read(long position, ByteBuffer dst) throws IOException {
+        if(!channel.isOpen())
+            throw new ClosedChannelException();
+        if(position < 0)
+            throw new IllegalArgumentException("The position cannot be negative");
+        if(position >= size)
+            return -1;
+
+        int read = 0;
+        while(dst.hasRemaining() && position < size) {
+            long index = position / chunkSize;
+            byte[] chunk = Chunk(index);
+            int offset = (int) (position % chunkSize);
+            int length = index == chunks - 1 ? last : chunkSize;
+            int count = Math.min(dst.remaining(), length - offset);
+            dst.put(chunk, offset, count);
+            position += count;
+            read += count;
+        }
+        return read;
+    }
+    /**
+     * Reads plain bytes at a position, without changing the position of the reader.
+     * 
+     * @param position The position of the first byte, in plain bytes.
+     * @param buffer The array to read into.
+     * @param offset The offset in the array.
+     * @param length The maximum number of bytes to read.
+     * 
+     * @return The number of bytes read, or -1 if the position is at the end.
+     * 
+     * @throws IOException If a chunk cannot be read or decrypted.
+     *
+     * @since 1.0
+     */
+    public int Read(long position, byte[] buffer, int offset, int length) throws IOException {
+        return Read(position, ByteBuffer.wrap(buffer, offset, length));
+    }
+
+    /**
+     * The reader is read-only.
+     * 
+     * @throws NonWritableChannelException 
+     *
+     * @since 1.0
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Returns the position of the reader, in plain bytes.
+     * 
+     * @return The position.
+     *
+     * @since 1.0
+     */
+    @Override
+    public synchronized long position() throws IOException {
+        if(!channel.isOpen())
+            throw new ClosedChannelException();
+        return position;
+    }
+
+    /**
+     * Sets the position of the reader, in plain bytes. Positions after the end are allowed, and reading at them
+     * returns -1.
+     * 
+     * @param newPosition The new position.
+     * 
+     * @return This reader.
+     *
+     * @since 1.0
+     */
+    @Override
+    public synchronized EXEAReader position(long newPosition) throws IOException {
+        if(!channel.isOpen())
+            throw new ClosedChannelException();
+        if(newPosition < 0)
+            throw new IllegalArgumentException("The position cannot be negative");
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * Returns the number of plain bytes of the file.
+     * 
+     * @return The size.
+     *
+     * @since 1.0
+     */
+    @Override
+    public long size() throws IOException {
+        if(!channel.isOpen())
+            throw new ClosedChannelException();
+        return size;
+    }
+
+    /**
+     * The reader is read-only.
+     * 
+     * @throws NonWritableChannelException 
+     *
+     * @since 1.0
+     */
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * Returns whether or not the reader is open.
+     * 
+     * @return Whether or not the reader is open.
+     *
+     * @since 1.0
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the reader and its file, and drops the decrypted chunks.
+     *
+     * @since 1.0
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+        cache.clear();
+        spare = null;
+    }
+
+    /**
+     * Returns a decrypted chunk, from the cache or from the file.
+     */
+    private byte[] Chunk(long index) throws IOException {
+        byte[] chunk = cache.get(index);
+        if(chunk != null)
+            return chunk;
+
+        long start = header + index * encryptedChunkSize;
+        int length = (int) Math.min(encryptedChunkSize, channel.size() - start);
+        ByteBuffer buffer = ByteBuffer.wrap(encrypted, 0, length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, start + buffer.position()) < 0)
+                throw new EOFException("The EXEA file ended inside chunk " + index);
+        }
+
+        byte[] plain = spare != null ? spare : new byte[encryptedChunkSize];
+        spare = null;
+        int decoded;
+        try {
+            decoded = decrypt.Run(index, index == chunks - 1, encrypted, 0, length, plain, 0);
+        }
+        catch(GeneralSecurityException ex) {
+            spare = plain;
+            throw new IOException("The EXEA chunk " + index + " cannot be decrypted", ex);
+        }
+        if(index == chunks - 1)
+            last = decoded;
+        else if(decoded != chunkSize) {
+            spare = plain;
+            throw new IOException("The EXEA chunk " + index + " is corrupted");
+        }
+
+        cache.put(index, plain);
+        return plain;
+    }
+}
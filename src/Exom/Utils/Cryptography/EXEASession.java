@@ -0,0 +1,323 @@
+/**
+ * Exom-Legacy (https://github.com/UnexomWid/Exom-Legacy)
+ *
+ * This project is licensed under the MIT license.
+ * Copyright (c) 2017-2019 UnexomWid (https://uw.exom.dev)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and
+ * associated documentation files (the "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the
+ * following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package Exom.Utils.Cryptography;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import Exom.Utils.StringUtils;
+
+/**
+ * Encrypts and decrypts EXEA chunks with a key which is derived once. The session keeps one Cipher, which is only
+ * initialized again when it switches between encryption and decryption, so chunks are written to the caller's
+ * buffers without any setup or allocation. Buffers which are not backed by arrays, such as direct and mapped
+ * buffers, go through two arrays of the session.
+ * 
+ * A session is not thread-safe. Threads which share a key should use copies of the same session.
+ * 
+ * @author UnexomWid
+ *
+ * @since 1.0
+ */
+public class EXEASession {
+
+    /**
+     * The size of a plain chunk.
+     *
+     * @since 1.0
+     */
+    public static final int CHUNK_SIZE = 8192;
+    /**
+     * The size of an encrypted chunk, for a full plain chunk.
+     *
+     * @since 1.0
+     */
+    public static final int ENCRYPTED_CHUNK_SIZE = CHUNK_SIZE + 16;
+
+    /**
+     * The AES key.
+     */
+    private final SecretKeySpec key;
+    /**
+     * The initialization vector, which is the same for every chunk.
+     */
+    private final IvParameterSpec iv;
+    /**
+     * The cipher.
+     */
+    private final Cipher cipher;
+    /**
+     * The mode for which the cipher was initialized, or 0 if it was not initialized.
+     */
+    private int mode;
+    /**
+     * The input of chunks from buffers which are not backed by arrays. Null until it is needed.
+     */
+    private byte[] input;
+    /**
+     * The output of chunks to buffers which are not backed by arrays. Null until it is needed.
+     */
+    private byte[] output;
+
+    /**
+     * Initializes a new instance of the EXEASession class, and derives the key and the initialization vector from a
+     * password.
+     * 
+     * @param password The password.
+     * 
+     * @throws NoSuchAlgorithmException 
+     * @throws NoSuchPaddingException 
+     *
+     * @since 1.0
+     */
+    public EXEASession(String password) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        final MessageDigest md = MessageDigest.getInstance("MD5");
+
+        final byte[] pass = StringUtils.ToBytes(password);
+        md.update(pass);
+        final byte[] salt = Arrays.copyOf(md.digest(), 8);
+
+        final byte[] keyAndIv = new byte[48];
+        byte[] hash = new byte[0];
+        for(int u = 0; u < keyAndIv.length; u += hash.length) {
+            md.update(hash);
+            md.update(pass);
+            md.update(salt);
+            hash = md.digest();
+            System.arraycopy(hash, 0, keyAndIv, u, hash.length);
+        }
+
+        key = new SecretKeySpec(keyAndIv, 0, 32, "AES");
+        iv = new IvParameterSpec(keyAndIv, 32, 16);
+        cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        mode = 0;
+    }
+    /**
+     * Initializes a new instance of the EXEASession class, with the key of another session.
+     */
+    private EXEASession(EXEASession session) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        key = session.key;
+        iv = session.iv;
+        cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        mode = 0;
+    }
+
+    /**
+     * Returns a new session with the same key, and its own Cipher.
+     * 
+     * @return The new session.
+     * 
+     * @throws NoSuchAlgorithmException 
+     * @throws NoSuchPaddingException 
+     *
+     * @since 1.0
+     */
+    public EXEASession Copy() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        return new EXEASession(this);
+    }
+
+    /**
+     * Encrypts a chunk of at most CHUNK_SIZE bytes.
+     * 
+     * @param input The plain bytes.
+     * @param offset The offset of the chunk in the input.
+     * @param length The length of the chunk.
+     * @param output The buffer to write the encrypted chunk to.
+     * @param outputOffset The offset in the output.
+     * 
+     * @return The length of the encrypted chunk.
+     * 
+     * @throws IllegalArgumentException If the output is too small for the encrypted chunk.
+     * @throws InvalidKeyException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws IllegalBlockSizeException 
+     * @throws BadPaddingException 
+     *
+     * @since 1.0
+     */
+    public int Encrypt(byte[] input, int offset, int length, byte[] output, int outputOffset) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        return Run(Cipher.ENCRYPT_MODE, input, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Decrypts a chunk which was encrypted by Encrypt.
+     * 
+     * @param input The encrypted bytes.
+     * @param offset The offset of the chunk in the input.
+     * @param length The length of the chunk.
+     * @param output The buffer to write the plain chunk to.
+     * @param outputOffset The offset in the output.
+     * 
+     * @return The length of the plain chunk.
+     * 
+     * @throws IllegalArgumentException If the output is too small for the plain chunk.
+     * @throws InvalidKeyException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws IllegalBlockSizeException If the chunk is not valid.
+     * @throws BadPaddingException If the chunk is not valid, or the key is wrong.
+     *
+     * @since 1.0
+     */
+    public int Decrypt(byte[] input, int offset, int length, byte[] output, int outputOffset) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        return Run(Cipher.DECRYPT_MODE, input, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Encrypts a chunk of at most CHUNK_SIZE bytes, from the remaining bytes of a buffer. The positions of both
+     * buffers are advanced.
+     * 
+     * @param input The plain bytes.
+     * @param output The buffer to write the encrypted chunk to.
+     * 
+     * @return The length of the encrypted chunk.
+     * 
+     * @throws IllegalArgumentException If the chunk is too large, or the output is too small for it.
+     * @throws InvalidKeyException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws IllegalBlockSizeException 
+     * @throws BadPaddingException 
+     *
+     * @since 1.0
+     */
+    public int Encrypt(ByteBuffer input, ByteBuffer output) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        return Run(Cipher.ENCRYPT_MODE, input, output);
+    }
+
+    /**
+     * Decrypts a chunk which was encrypted by Encrypt, from the remaining bytes of a buffer. The positions of both
+     * buffers are advanced.
+     * 
+     * @param input The encrypted bytes.
+     * @param output The buffer to write the plain chunk to.
+     * 
+     * @return The length of the plain chunk.
+     * 
+     * @throws IllegalArgumentException If the chunk is too large, or the output is too small for it.
+     * @throws InvalidKeyException 
+     * @throws InvalidAlgorithmParameterException 
+     * @throws IllegalBlockSizeException If the chunk is not valid.
+     * @throws BadPaddingException If the chunk is not valid, or the key is wrong.
+     *
+     * @since 1.0
+     */
+    public int Decrypt(ByteBuffer input, ByteBuffer output) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        return Run(Cipher.DECRYPT_MODE, input, output);
+    }
+
+    /**
+     * Encrypts or decrypts a chunk between buffers. The JCE copies buffers which are not backed by arrays into new
+     * arrays, so they are copied to the arrays of the session instead.
+     */
+    private int Run(int mode, ByteBuffer input, ByteBuffer output) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        int length = input.remaining();
+        if(length > ENCRYPTED_CHUNK_SIZE || (mode == Cipher.ENCRYPT_MODE && length > CHUNK_SIZE))
+            throw new IllegalArgumentException("The chunk is too large");
+        if(mode == Cipher.ENCRYPT_MODE && output.remaining() < length - length % 16 + 16)
+            throw new IllegalArgumentException("The output is too small for the chunk");
+
+        byte[] in;
+        int inOffset;
+        if(input.hasArray()) {
+            in = input.array();
+            inOffset = input.arrayOffset() + input.position();
+        }
+        else {
+            if(this.input == null)
+                this.input = new byte[ENCRYPTED_CHUNK_SIZE];
+            in = this.input;
+            inOffset = 0;
+            int position = input.position();
+            input.get(in, 0, length);
+            input.position(position);
+        }
+
+        byte[] out;
+        int outOffset;
+        boolean direct = !output.hasArray() || output.isReadOnly() || output.remaining() < length;
+        if(direct) {
+            if(this.output == null)
+                this.output = new byte[ENCRYPTED_CHUNK_SIZE + 16];
+            out = this.output;
+            outOffset = 0;
+        }
+        else {
+            out = output.array();
+            outOffset = output.arrayOffset() + output.position();
+        }
+
+        int written = Run(mode, in, inOffset, length, out, outOffset);
+        if(written > output.remaining())
+            throw new IllegalArgumentException("The output is too small for the chunk");
+
+        input.position(input.position() + length);
+        if(direct)
+            output.put(out, 0, written);
+        else output.position(output.position() + written);
+        return written;
+    }
+
+    /**
+     * Encrypts or decrypts a chunk. The cipher is only initialized when the mode changes, since it resets itself
+     * after each chunk. A chunk which fails leaves the cipher to be initialized again.
+     * 
+     * Only the last block goes through doFinal, since the JCE copies the whole input of a padded doFinal into a new
+     * array. The rest of the chunk goes through update, which writes straight to the output.
+     */
+    private int Run(int mode, byte[] input, int offset, int length, byte[] output, int outputOffset) throws InvalidKeyException, InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        if(this.mode != mode) {
+            this.mode = 0;
+            cipher.init(mode, key, iv);
+            this.mode = mode;
+        }
+
+        int tail;
+        if(mode == Cipher.ENCRYPT_MODE)
+            tail = length % 16;
+        else tail = length % 16 == 0 ? Math.min(length, 16) : length;
+
+        try {
+            int written = cipher.update(input, offset, length - tail, output, outputOffset);
+            return written + cipher.doFinal(input, offset + length - tail, tail, output, outputOffset + written);
+        }
+        catch(ShortBufferException ex) {
+            this.mode = 0;
+            throw new IllegalArgumentException("The output is too small for the chunk", ex);
+        }
+        catch(IllegalBlockSizeException | BadPaddingException ex) {
+            this.mode = 0;
+            throw ex;
+        }
+    }
+}